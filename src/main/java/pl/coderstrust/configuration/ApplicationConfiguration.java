@@ -4,9 +4,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ServerAddress;
 import com.mongodb.WriteConcern;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.file.Paths;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,11 +24,19 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.mongodb.MongoDbFactory;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
-import pl.coderstrust.helpers.FileHelper;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import pl.coderstrust.database.invoice.InvoiceRecordCodec;
+import pl.coderstrust.helpers.SegmentedFileHelper;
+import pl.coderstrust.service.InvoiceCache;
+import pl.coderstrust.service.InvoicePdfCache;
 
 @Configuration
-@EnableConfigurationProperties({InFileDatabaseProperties.class, MongoDatabaseProperties.class})
-@PropertySource(factory = YamlPropertySourceFactory.class, value = {"classpath:in-file-database.yml", "classpath:mongo-database.yml"})
+@EnableScheduling
+@EnableConfigurationProperties({InFileDatabaseProperties.class, MongoDatabaseProperties.class, HibernateDatabaseProperties.class,
+    InvoiceCacheProperties.class, InvoicePdfCacheProperties.class})
+@PropertySource(factory = YamlPropertySourceFactory.class, value = {"classpath:in-file-database.yml", "classpath:mongo-database.yml",
+    "classpath:hibernate-database.yml", "classpath:invoice-cache.yml",
+    "classpath:invoice-pdf-cache.yml"})
 public class ApplicationConfiguration {
 
   @Autowired
@@ -27,6 +45,15 @@ public class ApplicationConfiguration {
   @Autowired
   private MongoDatabaseProperties mongoDatabaseProperties;
 
+  @Autowired
+  private HibernateDatabaseProperties hibernateDatabaseProperties;
+
+  @Autowired
+  private InvoiceCacheProperties invoiceCacheProperties;
+
+  @Autowired
+  private InvoicePdfCacheProperties invoicePdfCacheProperties;
+
   @Bean
   @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-file")
   public ObjectMapper getObjectMapper() {
@@ -38,14 +65,80 @@ public class ApplicationConfiguration {
 
   @Bean
   @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-file")
-  public FileHelper getFileHelper() {
-    return new FileHelper(inFileDatabaseProperties.getDatabaseFilePath());
+  public SegmentedFileHelper getSegmentedFileHelper() {
+    return new SegmentedFileHelper(inFileDatabaseProperties.getDatabaseFilePath(), inFileDatabaseProperties.getMaxSegmentSize());
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-file")
+  public InvoiceRecordCodec getInvoiceRecordCodec(ObjectMapper mapper) {
+    return inFileDatabaseProperties.getRecordFormat().createCodec(mapper);
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "hibernate")
+  public HikariDataSource dataSource() {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(hibernateDatabaseProperties.getUrl());
+    dataSource.setUsername(hibernateDatabaseProperties.getUsername());
+    dataSource.setPassword(hibernateDatabaseProperties.getPassword());
+    dataSource.setPoolName(hibernateDatabaseProperties.getPoolName());
+    dataSource.setMaximumPoolSize(hibernateDatabaseProperties.getMaximumPoolSize());
+    dataSource.setMinimumIdle(hibernateDatabaseProperties.getMinimumIdle());
+    dataSource.setConnectionTimeout(hibernateDatabaseProperties.getConnectionTimeout());
+    dataSource.setIdleTimeout(hibernateDatabaseProperties.getIdleTimeout());
+    dataSource.setMaxLifetime(hibernateDatabaseProperties.getMaxLifetime());
+    dataSource.setLeakDetectionThreshold(hibernateDatabaseProperties.getLeakDetectionThreshold());
+    hibernateDatabaseProperties.getDataSourceProperties().forEach(dataSource::addDataSourceProperty);
+    return dataSource;
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "pl.coderstrust.hibernate-cache", havingValue = "enabled")
+  public HibernatePropertiesCustomizer hibernateCacheCustomizer() {
+    return properties -> {
+      properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+      properties.put(AvailableSettings.USE_QUERY_CACHE, true);
+      properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+    };
+  }
+
+  @Bean
+  public InvoiceCache invoiceCache(@Value("${pl.coderstrust.database:}") String database, ObjectProvider<MeterRegistry> meterRegistry) {
+    if (!invoiceCacheProperties.isEnabledFor(database)) {
+      return InvoiceCache.disabled();
+    }
+    InvoiceCache invoiceCache = InvoiceCache.of(invoiceCacheProperties.getMaximumSize(), invoiceCacheProperties.getExpireAfterWrite());
+    meterRegistry.ifAvailable(invoiceCache::bindTo);
+    return invoiceCache;
+  }
+
+  @Bean
+  public InvoicePdfCache invoicePdfCache(ObjectProvider<MeterRegistry> meterRegistry) throws IOException {
+    if (!invoicePdfCacheProperties.isEnabled()) {
+      return InvoicePdfCache.disabled();
+    }
+    String spillDirectory = invoicePdfCacheProperties.getSpillDirectory();
+    InvoicePdfCache invoicePdfCache = spillDirectory == null || spillDirectory.isEmpty()
+        ? InvoicePdfCache.of(invoicePdfCacheProperties.getMaximumWeight())
+        : InvoicePdfCache.of(invoicePdfCacheProperties.getMaximumWeight(), Paths.get(spillDirectory), invoicePdfCacheProperties.getMaximumSpillSize());
+    meterRegistry.ifAvailable(invoicePdfCache::bindTo);
+    return invoicePdfCache;
   }
 
   @Bean
   @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "mongodb")
   public MongoClient mongoClient() {
-    return new MongoClient(mongoDatabaseProperties.getHost(), mongoDatabaseProperties.getPort());
+    MongoClientOptions options = MongoClientOptions.builder()
+        .connectionsPerHost(mongoDatabaseProperties.getConnectionsPerHost())
+        .minConnectionsPerHost(mongoDatabaseProperties.getMinConnectionsPerHost())
+        .threadsAllowedToBlockForConnectionMultiplier(mongoDatabaseProperties.getThreadsAllowedToBlockForConnectionMultiplier())
+        .maxWaitTime(mongoDatabaseProperties.getMaxWaitTime())
+        .connectTimeout(mongoDatabaseProperties.getConnectTimeout())
+        .socketTimeout(mongoDatabaseProperties.getSocketTimeout())
+        .serverSelectionTimeout(mongoDatabaseProperties.getServerSelectionTimeout())
+        .build();
+    return new MongoClient(new ServerAddress(mongoDatabaseProperties.getHost(), mongoDatabaseProperties.getPort()), options);
   }
 
   @Bean
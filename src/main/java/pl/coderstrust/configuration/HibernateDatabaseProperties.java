@@ -0,0 +1,25 @@
+package pl.coderstrust.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("hibernate-database")
+public class HibernateDatabaseProperties {
+
+  private String url;
+  private String username;
+  private String password;
+  private String poolName = "invoices";
+  private int maximumPoolSize = 10;
+  private int minimumIdle = 2;
+  private long connectionTimeout = 30000;
+  private long idleTimeout = 600000;
+  private long maxLifetime = 1800000;
+  private long leakDetectionThreshold;
+  private Map<String, String> dataSourceProperties = new HashMap<>();
+}
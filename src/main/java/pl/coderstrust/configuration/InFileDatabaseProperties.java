@@ -3,6 +3,8 @@ package pl.coderstrust.configuration;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import pl.coderstrust.database.invoice.RecordFormat;
+import pl.coderstrust.helpers.FsyncPolicy;
 
 @ConfigurationProperties("in-file-database")
 public class InFileDatabaseProperties {
@@ -10,4 +12,36 @@ public class InFileDatabaseProperties {
   @Getter
   @Setter
   private String databaseFilePath;
+
+  @Getter
+  @Setter
+  private double garbageRatioThreshold = 0.5;
+
+  @Getter
+  @Setter
+  private long compactionInterval = 60000;
+
+  @Getter
+  @Setter
+  private long maxSegmentSize = 16 * 1024 * 1024;
+
+  @Getter
+  @Setter
+  private boolean memoryMappedReads;
+
+  @Getter
+  @Setter
+  private FsyncPolicy fsyncPolicy = FsyncPolicy.EVERY_WRITE;
+
+  @Getter
+  @Setter
+  private long fsyncInterval = 1000;
+
+  @Getter
+  @Setter
+  private RecordFormat recordFormat = RecordFormat.JSON;
+
+  @Getter
+  @Setter
+  private long indexCheckpointInterval = 10000;
 }
@@ -0,0 +1,21 @@
+package pl.coderstrust.configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("invoice-cache")
+public class InvoiceCacheProperties {
+
+  private long maximumSize = 10000;
+  private long expireAfterWrite = 600000;
+  private Map<String, Boolean> backends = new HashMap<>();
+
+  public boolean isEnabledFor(String database) {
+    return backends.getOrDefault(database, true);
+  }
+}
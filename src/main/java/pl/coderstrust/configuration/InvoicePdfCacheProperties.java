@@ -0,0 +1,16 @@
+package pl.coderstrust.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@ConfigurationProperties("invoice-pdf-cache")
+public class InvoicePdfCacheProperties {
+
+  private boolean enabled = true;
+  private long maximumWeight = 64 * 1024 * 1024;
+  private String spillDirectory;
+  private long maximumSpillSize = 512 * 1024 * 1024;
+}
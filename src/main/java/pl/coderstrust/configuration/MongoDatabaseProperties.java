@@ -13,4 +13,11 @@ public class MongoDatabaseProperties {
   private String collectionName;
   private String host;
   private int port;
+  private int connectionsPerHost = 100;
+  private int minConnectionsPerHost;
+  private int threadsAllowedToBlockForConnectionMultiplier = 5;
+  private int maxWaitTime = 120000;
+  private int connectTimeout = 10000;
+  private int socketTimeout;
+  private int serverSelectionTimeout = 30000;
 }
@@ -0,0 +1,23 @@
+package pl.coderstrust.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import pl.coderstrust.model.Invoice;
+
+@Data
+@AllArgsConstructor
+public class BatchItemResult {
+  private final int index;
+
+  private final int status;
+
+  private final Invoice invoice;
+
+  private final List<String> errors;
+
+  public BatchItemResult(int index, int status, Invoice invoice) {
+    this(index, status, invoice, new ArrayList<>());
+  }
+}
@@ -1,14 +1,24 @@
 package pl.coderstrust.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.itextpdf.text.pdf.PdfBody;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,12 +34,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 import pl.coderstrust.model.validators.InvoiceValidator;
 import pl.coderstrust.service.InvoicePdfService;
 import pl.coderstrust.service.InvoiceService;
+import pl.coderstrust.service.ServiceOperationException;
 
 @Slf4j
 @RestController
@@ -38,37 +52,125 @@ import pl.coderstrust.service.InvoiceService;
 @CrossOrigin
 public class InvoiceController {
 
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 10000;
+  private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
   private final InvoiceService invoiceService;
 
   private final InvoicePdfService invoicePdfService;
 
+  private final ObjectWriter invoiceWriter;
+
+  private final ObjectReader invoiceReader;
+
   @Autowired
-  public InvoiceController(@NonNull InvoiceService invoiceService, @NonNull InvoicePdfService invoicePdfService) {
+  public InvoiceController(@NonNull InvoiceService invoiceService, @NonNull InvoicePdfService invoicePdfService, @NonNull ObjectMapper mapper) {
     this.invoiceService = invoiceService;
     this.invoicePdfService = invoicePdfService;
+    this.invoiceWriter = mapper.writerFor(Invoice.class)
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    this.invoiceReader = mapper.readerFor(Invoice.class);
   }
 
   @GetMapping
   @ApiOperation(
       value = "Get all invoices",
-      notes = "Get all invoices from database",
+      notes = "Get all invoices from database or one page of invoices ordered by id when limit or cursor is passed",
       response = Invoice.class,
       responseContainer = "List")
   @ApiResponses(value = {
       @ApiResponse(code = 200, message = "OK", response = Invoice.class),
+      @ApiResponse(code = 400, message = "Passed limit or cursor is invalid.", response = ErrorMessage.class),
       @ApiResponse(code = 500, message = "Internal server error.", response = ErrorMessage.class)})
-  public ResponseEntity<?> getAll() {
+  public ResponseEntity<?> getAll(
+      @ApiParam(value = "Maximum number of invoices to return. All invoices are returned when neither limit nor cursor is passed.")
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @ApiParam(value = "Id of the last invoice from the previous page.") @RequestParam(value = "cursor", required = false) String cursor) {
     try {
-      log.info("Getting all invoices");
-      log.debug(String.format("Getting all invoices"));
+      if (limit == null && cursor == null) {
+        log.info("Getting all invoices");
+        log.debug(String.format("Getting all invoices"));
 
-      return new ResponseEntity<>(invoiceService.getAllInvoices(), HttpStatus.OK);
+        return new ResponseEntity<>(invoiceService.getAllInvoices(), HttpStatus.OK);
+      }
+      int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+      if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+        log.debug(String.format("Invalid page size: %d", pageSize));
+        return new ResponseEntity<>(new ErrorMessage(String.format("Limit must be between 1 and %d.", MAX_PAGE_SIZE)), HttpStatus.BAD_REQUEST);
+      }
+      log.info(String.format("Getting page of invoices after id: %s", cursor));
+      return new ResponseEntity<>(invoiceService.getInvoicesPage(cursor, pageSize), HttpStatus.OK);
+    } catch (IllegalArgumentException e) {
+      log.debug(String.format("Invalid cursor: %s", cursor));
+      return new ResponseEntity<>(new ErrorMessage("Passed cursor is invalid."), HttpStatus.BAD_REQUEST);
     } catch (Exception e) {
       log.error(String.format("Internal server error while getting invoices."));
       return new ResponseEntity<>(new ErrorMessage("Internal server error while getting invoices."), HttpStatus.INTERNAL_SERVER_ERROR);
     }
   }
 
+  @GetMapping("/summary")
+  @ApiOperation(
+      value = "Get summaries of all invoices",
+      notes = "Get id, dates, parties and totals of all invoices or of one page of invoices ordered by id when limit or cursor is passed",
+      response = InvoiceSummary.class,
+      responseContainer = "List")
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "OK", response = InvoiceSummary.class),
+      @ApiResponse(code = 400, message = "Passed limit or cursor is invalid.", response = ErrorMessage.class),
+      @ApiResponse(code = 500, message = "Internal server error.", response = ErrorMessage.class)})
+  public ResponseEntity<?> getSummaries(
+      @ApiParam(value = "Maximum number of summaries to return. All summaries are returned when neither limit nor cursor is passed.")
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @ApiParam(value = "Id of the last invoice from the previous page.") @RequestParam(value = "cursor", required = false) String cursor) {
+    try {
+      if (limit == null && cursor == null) {
+        log.info("Getting all invoice summaries");
+        return new ResponseEntity<>(invoiceService.getAllInvoiceSummaries(), HttpStatus.OK);
+      }
+      int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+      if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+        log.debug(String.format("Invalid page size: %d", pageSize));
+        return new ResponseEntity<>(new ErrorMessage(String.format("Limit must be between 1 and %d.", MAX_PAGE_SIZE)), HttpStatus.BAD_REQUEST);
+      }
+      log.info(String.format("Getting page of invoice summaries after id: %s", cursor));
+      return new ResponseEntity<>(invoiceService.getInvoiceSummariesPage(cursor, pageSize), HttpStatus.OK);
+    } catch (IllegalArgumentException e) {
+      log.debug(String.format("Invalid cursor: %s", cursor));
+      return new ResponseEntity<>(new ErrorMessage("Passed cursor is invalid."), HttpStatus.BAD_REQUEST);
+    } catch (Exception e) {
+      log.error("Internal server error while getting invoice summaries.");
+      return new ResponseEntity<>(new ErrorMessage("Internal server error while getting invoice summaries."), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  @GetMapping(value = "/stream", produces = APPLICATION_NDJSON_VALUE)
+  @ApiOperation(
+      value = "Stream all invoices",
+      notes = "Stream all invoices from database as newline delimited JSON without loading them all into memory")
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "OK")})
+  public ResponseEntity<StreamingResponseBody> stream() {
+    log.info("Streaming all invoices");
+    StreamingResponseBody body = outputStream -> {
+      try {
+        invoiceService.streamAllInvoices(invoice -> {
+          invoiceWriter.writeValue(outputStream, invoice);
+          outputStream.write('\n');
+        });
+      } catch (ServiceOperationException e) {
+        log.error("Internal server error while streaming invoices.");
+        throw new IOException("Internal server error while streaming invoices.", e);
+      }
+    };
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.setContentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE));
+    return new ResponseEntity<>(body, responseHeaders, HttpStatus.OK);
+  }
+
   @GetMapping("/{invoiceId}")
   @ApiOperation(
       value = "Get invoice by id.",
@@ -129,6 +231,64 @@ public class InvoiceController {
     }
   }
 
+  @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+  @ApiOperation(
+      value = "Add or update invoices.",
+      notes = "Add invoices without id and update invoices with id passed as JSON array or newline delimited JSON. Result is reported per invoice.",
+      response = BatchItemResult.class,
+      responseContainer = "List")
+  @ApiResponses(value = {
+      @ApiResponse(code = 200, message = "OK", response = BatchItemResult.class),
+      @ApiResponse(code = 400, message = "Passed data is invalid.", response = ErrorMessage.class),
+      @ApiResponse(code = 500, message = "Internal server error.", response = ErrorMessage.class)})
+  public ResponseEntity<?> addOrUpdateAll(@ApiParam(value = "Invoices to be added or updated.", required = true) InputStream body) {
+    List<Invoice> invoices;
+    try (MappingIterator<Invoice> iterator = invoiceReader.readValues(body)) {
+      invoices = iterator.readAll();
+    } catch (IOException e) {
+      log.debug("Passed invoices could not be parsed.", e);
+      return new ResponseEntity<>(new ErrorMessage("Passed invoices could not be parsed."), HttpStatus.BAD_REQUEST);
+    }
+    if (invoices.size() > MAX_BATCH_SIZE) {
+      log.debug(String.format("Too many invoices passed: %d", invoices.size()));
+      return new ResponseEntity<>(new ErrorMessage(String.format("At most %d invoices can be passed at once.", MAX_BATCH_SIZE)), HttpStatus.BAD_REQUEST);
+    }
+    try {
+      log.info(String.format("Adding or updating %d invoices", invoices.size()));
+      List<BatchItemResult> results = new ArrayList<>(Collections.nCopies(invoices.size(), null));
+      List<Invoice> invoicesToSave = new ArrayList<>();
+      List<Integer> indexesToSave = new ArrayList<>();
+      for (int i = 0; i < invoices.size(); i++) {
+        Invoice invoice = invoices.get(i);
+        boolean isUpdate = invoice != null && invoice.getId() != null;
+        List<String> resultOfValidation = InvoiceValidator.validateInvoice(invoice, isUpdate);
+        if (resultOfValidation.size() > 0) {
+          results.set(i, new BatchItemResult(i, HttpStatus.BAD_REQUEST.value(), invoice, resultOfValidation));
+        } else if (isUpdate && !invoiceService.invoiceExists(invoice.getId())) {
+          results.set(i, new BatchItemResult(i, HttpStatus.NOT_FOUND.value(), invoice, Collections.singletonList("Invoice not found.")));
+        } else {
+          invoicesToSave.add(invoice);
+          indexesToSave.add(i);
+        }
+      }
+      List<Integer> statuses = indexesToSave.stream()
+          .map(i -> invoices.get(i).getId() == null ? HttpStatus.CREATED.value() : HttpStatus.OK.value())
+          .collect(Collectors.toList());
+      if (!invoicesToSave.isEmpty()) {
+        List<Invoice> savedInvoices = invoiceService.saveInvoices(invoicesToSave);
+        savedInvoices.forEach(savedInvoice -> invoicePdfService.evictPdf(savedInvoice.getId()));
+        for (int i = 0; i < savedInvoices.size(); i++) {
+          results.set(indexesToSave.get(i), new BatchItemResult(indexesToSave.get(i), statuses.get(i), savedInvoices.get(i)));
+        }
+      }
+      log.debug(String.format("Saved %d of %d passed invoices", invoicesToSave.size(), invoices.size()));
+      return new ResponseEntity<>(results, HttpStatus.OK);
+    } catch (Exception e) {
+      log.error("Internal server error while saving passed invoices.");
+      return new ResponseEntity<>(new ErrorMessage("Internal server error while saving passed invoices."), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+  }
+
   @PutMapping("/{invoiceId}")
   @ApiOperation(
       value = "Update invoice.",
@@ -164,6 +324,7 @@ public class InvoiceController {
 
       log.debug(String.format("Invoice successfully updated: %s", invoice));
       invoiceService.updateInvoice(invoice);
+      invoicePdfService.evictPdf(invoiceId);
       return new ResponseEntity<>(invoice, HttpStatus.OK);
     } catch (Exception e) {
       log.error(String.format("Internal server error while updating specified invoice. Invoice: %s", invoice));
@@ -192,6 +353,7 @@ public class InvoiceController {
 
       log.debug(String.format("Deleting invoice with id: %s", invoiceId));
       invoiceService.deleteInvoice(invoiceId);
+      invoicePdfService.evictPdf(invoiceId);
       return new ResponseEntity<>(optionalInvoice.get(), HttpStatus.OK);
     } catch (Exception e) {
       log.error(String.format("Internal server error while deleting specified invoice."));
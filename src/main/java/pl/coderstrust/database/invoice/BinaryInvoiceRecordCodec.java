@@ -0,0 +1,328 @@
+package pl.coderstrust.database.invoice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NonNull;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.model.AccountNumber;
+import pl.coderstrust.model.Address;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.ContactDetails;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceEntry;
+import pl.coderstrust.model.InvoiceType;
+import pl.coderstrust.model.UnitType;
+import pl.coderstrust.model.Vat;
+
+public class BinaryInvoiceRecordCodec implements InvoiceRecordCodec {
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final byte INVOICE_RECORD = 1;
+  private static final byte TOMBSTONE_RECORD = 2;
+  private static final int NULL = -1;
+
+  @Override
+  public RecordFraming getFraming() {
+    return RecordFraming.LENGTH_PREFIXED;
+  }
+
+  @Override
+  public byte[] encodeInvoice(@NonNull Invoice invoice) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+    DataOutputStream output = new DataOutputStream(bytes);
+    writeHeader(output, INVOICE_RECORD, invoice.getId());
+    writeEnum(output, invoice.getType());
+    writeDate(output, invoice.getIssueDate());
+    writeDate(output, invoice.getDueDate());
+    writeCompany(output, invoice.getSeller());
+    writeCompany(output, invoice.getBuyer());
+    writeEntries(output, invoice.getEntries());
+    writeDecimal(output, invoice.getTotalNetValue());
+    writeDecimal(output, invoice.getTotalGrossValue());
+    writeString(output, invoice.getComments());
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public byte[] encodeTombstone(@NonNull String id) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    writeHeader(output, TOMBSTONE_RECORD, id);
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public InvoiceRecordHeader readHeader(@NonNull ByteBuffer record) throws IOException {
+    ByteBuffer input = record.duplicate();
+    try {
+      byte type = readRecordType(input);
+      String id = readString(input);
+      if (id == null) {
+        return null;
+      }
+      if (type == TOMBSTONE_RECORD) {
+        return new InvoiceRecordHeader(id, true);
+      }
+      readEnum(input, InvoiceType.values());
+      return new InvoiceRecordHeader(id, false, readDate(input));
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new IOException("Invoice record is malformed", e);
+    }
+  }
+
+  @Override
+  public Invoice decodeInvoice(@NonNull ByteBuffer record) throws IOException {
+    ByteBuffer input = record.duplicate();
+    try {
+      if (readRecordType(input) != INVOICE_RECORD) {
+        throw new IOException("Record does not contain an invoice");
+      }
+      Invoice invoice = new Invoice();
+      invoice.setId(readString(input));
+      invoice.setType(readEnum(input, InvoiceType.values()));
+      invoice.setIssueDate(readDate(input));
+      invoice.setDueDate(readDate(input));
+      invoice.setSeller(readCompany(input));
+      invoice.setBuyer(readCompany(input));
+      invoice.setEntries(readEntries(input));
+      invoice.setTotalNetValue(readDecimal(input));
+      invoice.setTotalGrossValue(readDecimal(input));
+      invoice.setComments(readString(input));
+      return invoice;
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new IOException("Invoice record is malformed", e);
+    }
+  }
+
+  private void writeHeader(DataOutputStream output, byte type, String id) throws IOException {
+    output.writeByte(FORMAT_VERSION);
+    output.writeByte(type);
+    writeString(output, id);
+  }
+
+  private byte readRecordType(ByteBuffer input) throws IOException {
+    byte version = input.get();
+    if (version != FORMAT_VERSION) {
+      throw new IOException(String.format("Unsupported invoice record version: %d", version));
+    }
+    byte type = input.get();
+    if (type != INVOICE_RECORD && type != TOMBSTONE_RECORD) {
+      throw new IOException(String.format("Unsupported invoice record type: %d", type));
+    }
+    return type;
+  }
+
+  private void writeCompany(DataOutputStream output, Company company) throws IOException {
+    output.writeBoolean(company != null);
+    if (company == null) {
+      return;
+    }
+    writeString(output, company.getId());
+    writeString(output, company.getName());
+    writeString(output, company.getTaxIdentificationNumber());
+    AccountNumber accountNumber = company.getAccountNumber();
+    output.writeBoolean(accountNumber != null);
+    if (accountNumber != null) {
+      writeString(output, accountNumber.getId());
+      writeString(output, accountNumber.getIbanNumber());
+      writeString(output, accountNumber.getLocalNumber());
+    }
+    ContactDetails contactDetails = company.getContactDetails();
+    output.writeBoolean(contactDetails != null);
+    if (contactDetails != null) {
+      writeString(output, contactDetails.getId());
+      writeString(output, contactDetails.getEmail());
+      writeString(output, contactDetails.getPhoneNumber());
+      writeString(output, contactDetails.getWebsite());
+      writeAddress(output, contactDetails.getAddress());
+    }
+  }
+
+  private Company readCompany(ByteBuffer input) {
+    if (!readBoolean(input)) {
+      return null;
+    }
+    Company company = new Company();
+    company.setId(readString(input));
+    company.setName(readString(input));
+    company.setTaxIdentificationNumber(readString(input));
+    if (readBoolean(input)) {
+      AccountNumber accountNumber = new AccountNumber();
+      accountNumber.setId(readString(input));
+      accountNumber.setIbanNumber(readString(input));
+      accountNumber.setLocalNumber(readString(input));
+      company.setAccountNumber(accountNumber);
+    }
+    if (readBoolean(input)) {
+      ContactDetails contactDetails = new ContactDetails();
+      contactDetails.setId(readString(input));
+      contactDetails.setEmail(readString(input));
+      contactDetails.setPhoneNumber(readString(input));
+      contactDetails.setWebsite(readString(input));
+      contactDetails.setAddress(readAddress(input));
+      company.setContactDetails(contactDetails);
+    }
+    return company;
+  }
+
+  private void writeAddress(DataOutputStream output, Address address) throws IOException {
+    output.writeBoolean(address != null);
+    if (address != null) {
+      writeString(output, address.getId());
+      writeString(output, address.getStreet());
+      writeString(output, address.getNumber());
+      writeString(output, address.getPostalCode());
+      writeString(output, address.getCity());
+      writeString(output, address.getCountry());
+    }
+  }
+
+  private Address readAddress(ByteBuffer input) {
+    if (!readBoolean(input)) {
+      return null;
+    }
+    return new Address(readString(input), readString(input), readString(input), readString(input), readString(input), readString(input));
+  }
+
+  private void writeEntries(DataOutputStream output, List<InvoiceEntry> entries) throws IOException {
+    if (entries == null) {
+      output.writeInt(NULL);
+      return;
+    }
+    output.writeInt(entries.size());
+    for (InvoiceEntry entry : entries) {
+      output.writeBoolean(entry != null);
+      if (entry != null) {
+        writeString(output, entry.getId());
+        writeString(output, entry.getItem());
+        writeLong(output, entry.getQuantity());
+        writeEnum(output, entry.getUnit());
+        writeDecimal(output, entry.getPrice());
+        writeEnum(output, entry.getVatRate());
+        writeDecimal(output, entry.getNetValue());
+        writeDecimal(output, entry.getGrossValue());
+      }
+    }
+  }
+
+  private List<InvoiceEntry> readEntries(ByteBuffer input) {
+    int size = input.getInt();
+    if (size == NULL) {
+      return null;
+    }
+    if (size < 0 || size > input.remaining()) {
+      throw new IllegalArgumentException("Invalid number of invoice entries");
+    }
+    List<InvoiceEntry> entries = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      if (!readBoolean(input)) {
+        entries.add(null);
+        continue;
+      }
+      InvoiceEntry entry = new InvoiceEntry();
+      entry.setId(readString(input));
+      entry.setItem(readString(input));
+      entry.setQuantity(readLong(input));
+      entry.setUnit(readEnum(input, UnitType.values()));
+      entry.setPrice(readDecimal(input));
+      entry.setVatRate(readEnum(input, Vat.values()));
+      entry.setNetValue(readDecimal(input));
+      entry.setGrossValue(readDecimal(input));
+      entries.add(entry);
+    }
+    return entries;
+  }
+
+  private void writeString(DataOutputStream output, String value) throws IOException {
+    if (value == null) {
+      output.writeInt(NULL);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private String readString(ByteBuffer input) {
+    int length = input.getInt();
+    if (length == NULL) {
+      return null;
+    }
+    if (length < 0 || length > input.remaining()) {
+      throw new IllegalArgumentException("Invalid string length");
+    }
+    byte[] bytes = new byte[length];
+    input.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void writeEnum(DataOutputStream output, Enum<?> value) throws IOException {
+    output.writeByte(value == null ? NULL : value.ordinal());
+  }
+
+  private <T extends Enum<T>> T readEnum(ByteBuffer input, T[] values) {
+    byte ordinal = input.get();
+    return ordinal == NULL ? null : values[ordinal];
+  }
+
+  private void writeDate(DataOutputStream output, LocalDate date) throws IOException {
+    output.writeBoolean(date != null);
+    if (date != null) {
+      output.writeLong(date.toEpochDay());
+    }
+  }
+
+  private LocalDate readDate(ByteBuffer input) {
+    return readBoolean(input) ? LocalDate.ofEpochDay(input.getLong()) : null;
+  }
+
+  private void writeLong(DataOutputStream output, Long value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeLong(value);
+    }
+  }
+
+  private Long readLong(ByteBuffer input) {
+    return readBoolean(input) ? input.getLong() : null;
+  }
+
+  private void writeDecimal(DataOutputStream output, BigDecimal value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      byte[] unscaledValue = value.unscaledValue().toByteArray();
+      output.writeInt(value.scale());
+      output.writeInt(unscaledValue.length);
+      output.write(unscaledValue);
+    }
+  }
+
+  private BigDecimal readDecimal(ByteBuffer input) {
+    if (!readBoolean(input)) {
+      return null;
+    }
+    int scale = input.getInt();
+    int length = input.getInt();
+    if (length < 1 || length > input.remaining()) {
+      throw new IllegalArgumentException("Invalid decimal length");
+    }
+    byte[] unscaledValue = new byte[length];
+    input.get(unscaledValue);
+    return new BigDecimal(new BigInteger(unscaledValue), scale);
+  }
+
+  private boolean readBoolean(ByteBuffer input) {
+    return input.get() != 0;
+  }
+}
@@ -0,0 +1,111 @@
+package pl.coderstrust.database.invoice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.model.Company;
+
+@Slf4j
+@ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "hibernate")
+@Component
+public class HibernateCompanyMigrator {
+
+  private static final int REMOVAL_BATCH_SIZE = 500;
+
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+
+  @Autowired
+  public HibernateCompanyMigrator(@NonNull EntityManager entityManager, @NonNull PlatformTransactionManager transactionManager) {
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void migrateOnStartup() {
+    try {
+      int removedCompanies = migrate();
+      if (removedCompanies > 0) {
+        log.info(String.format("Removed %d duplicated companies from hibernate invoice database", removedCompanies));
+      }
+    } catch (DatabaseOperationException e) {
+      log.error("An error occurred during removing duplicated companies from hibernate invoice database", e);
+    }
+  }
+
+  public int migrate() throws DatabaseOperationException {
+    try {
+      return transactionTemplate.execute(status -> {
+        // Companies used to be unique per tax identification number, now companies with different details may share it.
+        entityManager.createNativeQuery("alter table company drop constraint if exists company_tax_identification_number_uk").executeUpdate();
+        return collapseDuplicates(hashCompanies());
+      });
+    } catch (PersistenceException | TransactionException e) {
+      throw new DatabaseOperationException("Encountered problems while removing duplicated companies.", e);
+    }
+  }
+
+  private Map<String, List<String>> hashCompanies() {
+    Map<String, String> keptIds = new HashMap<>();
+    entityManager.createQuery("select company.detailsHash, company.id from Company company where company.detailsHash is not null", Object[].class)
+        .getResultList()
+        .forEach(row -> keptIds.put((String) row[0], (String) row[1]));
+    Map<String, List<String>> duplicateIds = new LinkedHashMap<>();
+    List<Company> companies = entityManager.createQuery("select company from Company company left join fetch company.accountNumber "
+        + "left join fetch company.contactDetails contactDetails left join fetch contactDetails.address where company.detailsHash is null "
+        + "order by company.id", Company.class)
+        .getResultList();
+    for (Company company : companies) {
+      String detailsHash = HibernateInvoiceDatabase.detailsHash(company);
+      String keptId = keptIds.putIfAbsent(detailsHash, company.getId());
+      if (keptId == null) {
+        company.setDetailsHash(detailsHash);
+      } else {
+        duplicateIds.computeIfAbsent(keptId, id -> new ArrayList<>()).add(company.getId());
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+    return duplicateIds;
+  }
+
+  private int collapseDuplicates(Map<String, List<String>> duplicateIds) {
+    int removedCompanies = 0;
+    for (Map.Entry<String, List<String>> duplicates : duplicateIds.entrySet()) {
+      Company keptCompany = entityManager.getReference(Company.class, duplicates.getKey());
+      List<String> ids = duplicates.getValue();
+      for (int start = 0; start < ids.size(); start += REMOVAL_BATCH_SIZE) {
+        List<String> batch = ids.subList(start, Math.min(start + REMOVAL_BATCH_SIZE, ids.size()));
+        for (String relation : new String[] {"seller", "buyer"}) {
+          entityManager.createQuery(String.format("update Invoice invoice set invoice.%1$s = :keptCompany where invoice.%1$s.id in :ids", relation))
+              .setParameter("keptCompany", keptCompany)
+              .setParameter("ids", batch)
+              .executeUpdate();
+        }
+        entityManager.createQuery("select company from Company company where company.id in :ids", Company.class)
+            .setParameter("ids", batch)
+            .getResultList()
+            .forEach(entityManager::remove);
+        entityManager.flush();
+        entityManager.clear();
+      }
+      removedCompanies += ids.size();
+    }
+    return removedCompanies;
+  }
+}
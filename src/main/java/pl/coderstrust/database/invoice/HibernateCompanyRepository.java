@@ -0,0 +1,21 @@
+package pl.coderstrust.database.invoice;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import pl.coderstrust.model.Company;
+
+public interface HibernateCompanyRepository extends JpaRepository<Company, String> {
+
+  List<Company> findAllByDetailsHashIn(Collection<String> detailsHashes);
+
+  @Query("select company from Company company where company.id in :ids "
+      + "and not exists (select invoice.id from Invoice invoice where invoice.seller = company or invoice.buyer = company)")
+  List<Company> findAllUnusedByIdIn(@Param("ids") Collection<String> ids);
+
+  @Query("select company from Company company "
+      + "where not exists (select invoice.id from Invoice invoice where invoice.seller = company or invoice.buyer = company)")
+  List<Company> findAllUnused();
+}
@@ -1,50 +1,100 @@
 package pl.coderstrust.database.invoice;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
 import lombok.NonNull;
-import lombok.Synchronized;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "hibernate")
 @Repository
 public class HibernateInvoiceDatabase implements InvoiceDatabase {
 
-  private HibernateInvoiceRepository hibernateInvoiceRepository;
+  private static final String ID_FIELD = "id";
+  private static final int MAX_SAVE_ATTEMPTS = 3;
+  private static final int STREAM_BATCH_SIZE = 100;
+
+  private final HibernateInvoiceRepository hibernateInvoiceRepository;
+  private final HibernateCompanyRepository hibernateCompanyRepository;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
 
   @Autowired
-  public HibernateInvoiceDatabase(HibernateInvoiceRepository hibernateInvoiceRepository) {
+  public HibernateInvoiceDatabase(HibernateInvoiceRepository hibernateInvoiceRepository, HibernateCompanyRepository hibernateCompanyRepository,
+      EntityManager entityManager, PlatformTransactionManager transactionManager) {
     this.hibernateInvoiceRepository = hibernateInvoiceRepository;
+    this.hibernateCompanyRepository = hibernateCompanyRepository;
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
-  @Synchronized
   @Override
   public Invoice save(@NonNull Invoice invoice) throws DatabaseOperationException {
     try {
-      return hibernateInvoiceRepository.save(invoice);
-    } catch (NonTransientDataAccessException e) {
+      return executeWithStoredCompanies(Collections.singletonList(invoice),
+          companies -> hibernateInvoiceRepository.save(copyWithStoredCompanies(invoice, companies)));
+    } catch (NonTransientDataAccessException | TransactionException e) {
       throw new DatabaseOperationException(String.format("Encountered problems saving invoice: %s", invoice), e);
     }
   }
 
-  @Synchronized
+  @Override
+  public Iterable<Invoice> saveAll(@NonNull Iterable<Invoice> invoices) throws DatabaseOperationException {
+    try {
+      return executeWithStoredCompanies(invoices, companies -> {
+        List<Invoice> invoicesToSave = new ArrayList<>();
+        for (Invoice invoice : invoices) {
+          invoicesToSave.add(copyWithStoredCompanies(invoice, companies));
+        }
+        return hibernateInvoiceRepository.saveAll(invoicesToSave);
+      });
+    } catch (NonTransientDataAccessException | TransactionException e) {
+      throw new DatabaseOperationException("Encountered problems saving invoices", e);
+    }
+  }
+
   @Override
   public Optional<Invoice> findById(@NonNull String id) throws DatabaseOperationException {
     try {
-      return hibernateInvoiceRepository.findById(id);
+      return hibernateInvoiceRepository.findDetailsById(id);
     } catch (NoSuchElementException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoice:, %s", id), e);
     }
   }
 
-  @Synchronized
   @Override
   public boolean existsById(@NonNull String id) throws DatabaseOperationException {
     try {
@@ -54,7 +104,6 @@ public class HibernateInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAll() throws DatabaseOperationException {
     try {
@@ -64,7 +113,25 @@ public class HibernateInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
+  @Transactional(readOnly = true)
+  @Override
+  public void streamAll(@NonNull InvoiceVisitor visitor) throws DatabaseOperationException {
+    try {
+      // Reading in keyset pages lets Hibernate batch fetch entries of a whole page instead of selecting them for every streamed invoice.
+      Pageable pageable = PageRequest.of(0, STREAM_BATCH_SIZE, Sort.by(ID_FIELD));
+      List<Invoice> page = hibernateInvoiceRepository.findAllBy(pageable);
+      while (!page.isEmpty()) {
+        for (Invoice invoice : page) {
+          visitor.visit(invoice);
+          entityManager.detach(invoice);
+        }
+        page = hibernateInvoiceRepository.findAllByIdGreaterThan(page.get(page.size() - 1).getId(), pageable);
+      }
+    } catch (NonTransientDataAccessException | IOException e) {
+      throw new DatabaseOperationException("Encountered problems while streaming invoices", e);
+    }
+  }
+
   @Override
   public long count() throws DatabaseOperationException {
     try {
@@ -74,49 +141,182 @@ public class HibernateInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public void deleteById(@NonNull String id) throws DatabaseOperationException {
     try {
-      hibernateInvoiceRepository.deleteById(id);
+      transactionTemplate.execute(status -> {
+        List<String> companyIds = hibernateInvoiceRepository.findById(id)
+            .map(invoice -> Stream.of(invoice.getSeller(), invoice.getBuyer()).filter(Objects::nonNull).map(Company::getId).collect(Collectors.toList()))
+            .orElse(Collections.emptyList());
+        hibernateInvoiceRepository.deleteById(id);
+        if (!companyIds.isEmpty()) {
+          hibernateCompanyRepository.deleteAll(hibernateCompanyRepository.findAllUnusedByIdIn(companyIds));
+        }
+        return null;
+      });
     } catch (EmptyResultDataAccessException e) {
       throw new DatabaseOperationException(String.format("There was no invoice in database with id %s", id), e);
+    } catch (NonTransientDataAccessException | TransactionException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while deleting invoice: %s", id), e);
     }
   }
 
-  @Synchronized
   @Override
   public void deleteAll() throws DatabaseOperationException {
     try {
-      hibernateInvoiceRepository.deleteAll();
-    } catch (NonTransientDataAccessException e) {
+      transactionTemplate.execute(status -> {
+        hibernateInvoiceRepository.deleteAll();
+        hibernateCompanyRepository.deleteAll(hibernateCompanyRepository.findAllUnused());
+        return null;
+      });
+    } catch (NonTransientDataAccessException | TransactionException e) {
       throw new DatabaseOperationException("Encountered problem while deleting invoices.", e);
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAllBySellerName(@NonNull String sellerName) throws DatabaseOperationException {
     try {
-      return hibernateInvoiceRepository.findAll()
-          .stream()
-          .filter(invoice -> invoice.getSeller().getName().equals(sellerName))
-          .collect(Collectors.toList());
+      return hibernateInvoiceRepository.findAllBySellerName(sellerName);
     } catch (NonTransientDataAccessException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with seller name: %s", sellerName), e);
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAllByBuyerName(@NonNull String buyerName) throws DatabaseOperationException {
     try {
-      return hibernateInvoiceRepository.findAll()
-          .stream()
-          .filter(invoice -> invoice.getBuyer().getName().equals(buyerName))
-          .collect(Collectors.toList());
+      return hibernateInvoiceRepository.findAllByBuyerName(buyerName);
     } catch (NonTransientDataAccessException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with buyer name: %s", buyerName), e);
     }
   }
+
+  @Override
+  public Iterable<Invoice> findAllByIssueDateBetween(@NonNull LocalDate startDate, @NonNull LocalDate endDate) throws DatabaseOperationException {
+    try {
+      return hibernateInvoiceRepository.findAllByIssueDateBetween(startDate, endDate);
+    } catch (NonTransientDataAccessException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices issued between %s and %s", startDate,
+          endDate), e);
+    }
+  }
+
+  @Override
+  public Iterable<Invoice> findPage(String afterId, int limit) throws DatabaseOperationException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    try {
+      Pageable pageable = PageRequest.of(0, limit, Sort.by(ID_FIELD));
+      if (afterId == null) {
+        return hibernateInvoiceRepository.findAllBy(pageable);
+      }
+      return hibernateInvoiceRepository.findAllByIdGreaterThan(afterId, pageable);
+    } catch (NonTransientDataAccessException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while reading page of invoices after id: %s", afterId), e);
+    }
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findAllSummaries() throws DatabaseOperationException {
+    try {
+      return hibernateInvoiceRepository.findSummaries(Pageable.unpaged());
+    } catch (NonTransientDataAccessException e) {
+      throw new DatabaseOperationException("Encountered problems while searching for invoice summaries.", e);
+    }
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findSummaryPage(String afterId, int limit) throws DatabaseOperationException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    try {
+      Pageable pageable = PageRequest.of(0, limit);
+      if (afterId == null) {
+        return hibernateInvoiceRepository.findSummaries(pageable);
+      }
+      return hibernateInvoiceRepository.findSummariesAfter(afterId, pageable);
+    } catch (NonTransientDataAccessException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while reading page of invoice summaries after id: %s", afterId), e);
+    }
+  }
+
+  private <T> T executeWithStoredCompanies(Iterable<Invoice> invoices, Function<Map<String, Company>, T> operation) {
+    // A transaction joined from the caller is already marked for rollback after a constraint violation, so only an own transaction is repeated.
+    int attempts = TransactionSynchronizationManager.isActualTransactionActive() ? 1 : MAX_SAVE_ATTEMPTS;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return transactionTemplate.execute(status -> operation.apply(findOrInsertCompanies(invoices)));
+      } catch (DataIntegrityViolationException e) {
+        // A concurrent save stored a company with the same details first, or an unused company was removed, the next attempt reads them again.
+        if (attempt >= attempts) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private Map<String, Company> findOrInsertCompanies(Iterable<Invoice> invoices) {
+    Map<String, Company> incomingCompanies = new LinkedHashMap<>();
+    for (Invoice invoice : invoices) {
+      Stream.of(invoice.getSeller(), invoice.getBuyer())
+          .filter(Objects::nonNull)
+          .forEach(company -> incomingCompanies.putIfAbsent(detailsHash(company), company));
+    }
+    Map<String, Company> companies = new HashMap<>();
+    if (incomingCompanies.isEmpty()) {
+      return companies;
+    }
+    hibernateCompanyRepository.findAllByDetailsHashIn(incomingCompanies.keySet()).forEach(company -> companies.put(company.getDetailsHash(), company));
+    List<Company> missingCompanies = incomingCompanies.entrySet().stream()
+        .filter(entry -> !companies.containsKey(entry.getKey()))
+        .map(entry -> copyWithDetailsHash(entry.getValue(), entry.getKey()))
+        .collect(Collectors.toList());
+    if (!missingCompanies.isEmpty()) {
+      hibernateCompanyRepository.saveAll(missingCompanies).forEach(company -> companies.put(company.getDetailsHash(), company));
+      // Flushed before the invoices, so a company inserted concurrently with the same details fails this attempt as a unique key violation.
+      hibernateCompanyRepository.flush();
+    }
+    return companies;
+  }
+
+  private static Company copyWithDetailsHash(Company company, String detailsHash) {
+    Company copy = copyWithoutIds(company);
+    copy.setDetailsHash(detailsHash);
+    return copy;
+  }
+
+  private static Company copyWithoutIds(Company company) {
+    Company copy = new Company(company);
+    copy.setId(null);
+    Optional.ofNullable(copy.getAccountNumber()).ifPresent(accountNumber -> accountNumber.setId(null));
+    Optional.ofNullable(copy.getContactDetails()).ifPresent(contactDetails -> {
+      contactDetails.setId(null);
+      Optional.ofNullable(contactDetails.getAddress()).ifPresent(address -> address.setId(null));
+    });
+    return copy;
+  }
+
+  static String detailsHash(Company company) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(copyWithoutIds(company).toString().getBytes(StandardCharsets.UTF_8));
+      return String.format("%064x", new BigInteger(1, digest));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  private Invoice copyWithStoredCompanies(Invoice invoice, Map<String, Company> companies) {
+    Invoice copy = new Invoice(invoice);
+    copy.setSeller(getStoredCompany(copy.getSeller(), companies));
+    copy.setBuyer(getStoredCompany(copy.getBuyer(), companies));
+    return copy;
+  }
+
+  private Company getStoredCompany(Company company, Map<String, Company> companies) {
+    // Companies are shared only when all their details are equal, so every invoice keeps the details it was saved with.
+    return company == null ? null : companies.get(detailsHash(company));
+  }
 }
@@ -1,7 +1,58 @@
 package pl.coderstrust.database.invoice;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import javax.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 public interface HibernateInvoiceRepository extends JpaRepository<Invoice, String> {
+
+  @EntityGraph(value = Invoice.DETAIL_GRAPH, type = EntityGraphType.LOAD)
+  @Query("select distinct invoice from Invoice invoice where invoice.id = :id")
+  Optional<Invoice> findDetailsById(@Param("id") String id);
+
+  @Override
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  List<Invoice> findAll();
+
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  @Query("select invoice from Invoice invoice where invoice.issueDate between :startDate and :endDate")
+  List<Invoice> findAllByIssueDateBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+  @Query("select invoice from Invoice invoice where invoice.seller.name = :sellerName order by invoice.id")
+  List<Invoice> findAllBySellerName(@Param("sellerName") String sellerName);
+
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+  @Query("select invoice from Invoice invoice where invoice.buyer.name = :buyerName order by invoice.id")
+  List<Invoice> findAllByBuyerName(@Param("buyerName") String buyerName);
+
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  List<Invoice> findAllBy(Pageable pageable);
+
+  @EntityGraph(value = Invoice.LIST_GRAPH, type = EntityGraphType.LOAD)
+  List<Invoice> findAllByIdGreaterThan(String id, Pageable pageable);
+
+  @Query("select new pl.coderstrust.model.InvoiceSummary(invoice.id, invoice.type, invoice.issueDate, invoice.dueDate, seller.name, buyer.name, "
+      + "invoice.totalNetValue, invoice.totalGrossValue, invoice.comments) from Invoice invoice left join invoice.seller seller left join invoice.buyer buyer "
+      + "order by invoice.id")
+  List<InvoiceSummary> findSummaries(Pageable pageable);
+
+  @Query("select new pl.coderstrust.model.InvoiceSummary(invoice.id, invoice.type, invoice.issueDate, invoice.dueDate, seller.name, buyer.name, "
+      + "invoice.totalNetValue, invoice.totalGrossValue, invoice.comments) from Invoice invoice left join invoice.seller seller left join invoice.buyer buyer "
+      + "where invoice.id > :afterId order by invoice.id")
+  List<InvoiceSummary> findSummariesAfter(@Param("afterId") String afterId, Pageable pageable);
 }
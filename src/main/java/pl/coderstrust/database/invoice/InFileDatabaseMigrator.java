@@ -0,0 +1,130 @@
+package pl.coderstrust.database.invoice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.helpers.FileAppender;
+import pl.coderstrust.helpers.FileHelper;
+import pl.coderstrust.helpers.FileHelperException;
+import pl.coderstrust.helpers.FsyncPolicy;
+import pl.coderstrust.helpers.SegmentedFileHelper;
+
+@Slf4j
+@AllArgsConstructor
+public class InFileDatabaseMigrator {
+
+  private static final String MIGRATION_FILE_SUFFIX = ".migration";
+
+  @NonNull
+  private final SegmentedFileHelper segmentedFileHelper;
+
+  @NonNull
+  private final InvoiceRecordCodec sourceCodec;
+
+  @NonNull
+  private final InvoiceRecordCodec targetCodec;
+
+  public static void main(String[] args) throws DatabaseOperationException {
+    if (args.length != 3) {
+      System.err.println("Usage: InFileDatabaseMigrator <database-file-path> <source-format> <target-format>");
+      System.exit(1);
+    }
+    RecordFormat sourceFormat = RecordFormat.valueOf(args[1].toUpperCase(Locale.ROOT));
+    RecordFormat targetFormat = RecordFormat.valueOf(args[2].toUpperCase(Locale.ROOT));
+    ApplicationConfiguration configuration = new ApplicationConfiguration();
+    InFileDatabaseMigrator migrator = new InFileDatabaseMigrator(new SegmentedFileHelper(args[0], Long.MAX_VALUE),
+        sourceFormat.createCodec(configuration.getObjectMapper()), targetFormat.createCodec(configuration.getObjectMapper()));
+    int migratedRecords = migrator.migrate();
+    log.info(String.format("Migrated %d records of %s from %s to %s format", migratedRecords, args[0], sourceFormat, targetFormat));
+  }
+
+  public int migrate() throws DatabaseOperationException {
+    try {
+      List<FileHelper> files = getDatabaseFiles();
+      if (files.isEmpty()) {
+        return 0;
+      }
+      FileHelper progressFile = segmentedFileHelper.getMigrationProgressFile();
+      int migratedRecords;
+      if (progressFile.exists()) {
+        // An earlier run converted every file and was interrupted while replacing them, the files not replaced yet are replaced below.
+        migratedRecords = Integer.parseInt(new String(progressFile.readAllBytes(), StandardCharsets.UTF_8).trim());
+      } else {
+        migratedRecords = convertFiles(files);
+        progressFile.writeAtomically(String.valueOf(migratedRecords).getBytes(StandardCharsets.UTF_8));
+      }
+      segmentedFileHelper.getIndexFile().delete();
+      for (FileHelper file : files) {
+        FileHelper migratedFile = getMigratedFile(file);
+        if (migratedFile.exists()) {
+          file.replaceWith(migratedFile.getFilePath());
+        }
+      }
+      progressFile.delete();
+      return migratedRecords;
+    } catch (IOException | FileHelperException | NumberFormatException e) {
+      throw new DatabaseOperationException("Encountered problems while migrating in-file invoice database.", e);
+    }
+  }
+
+  private List<FileHelper> getDatabaseFiles() throws IOException {
+    List<FileHelper> files = new ArrayList<>();
+    for (int number : segmentedFileHelper.listSegments()) {
+      files.add(segmentedFileHelper.getSegment(number));
+    }
+    if (files.isEmpty() && segmentedFileHelper.getLegacyFile().exists()) {
+      files.add(segmentedFileHelper.getLegacyFile());
+    }
+    return files;
+  }
+
+  private int convertFiles(List<FileHelper> files) throws IOException, FileHelperException {
+    // Every file is converted and checked before any of them is replaced, so a failure leaves the whole database in the source format.
+    int migratedRecords = 0;
+    boolean converted = false;
+    try {
+      for (FileHelper file : files) {
+        migratedRecords += convertFile(file);
+      }
+      converted = true;
+      return migratedRecords;
+    } finally {
+      if (!converted) {
+        files.forEach(file -> getMigratedFile(file).delete());
+      }
+    }
+  }
+
+  private int convertFile(FileHelper file) throws IOException, FileHelperException {
+    FileHelper migratedFile = getMigratedFile(file);
+    AtomicInteger migratedRecords = new AtomicInteger();
+    migratedFile.delete();
+    migratedFile.initialize();
+    try (FileAppender appender = migratedFile.openAppender(targetCodec.getFraming(), FsyncPolicy.OS, 0)) {
+      long endOffset = file.forEachRecord(sourceCodec.getFraming(), (offset, record) -> {
+        InvoiceRecordHeader header = sourceCodec.readHeader(record);
+        if (header == null) {
+          throw new IOException(String.format("Unreadable record at offset %d of %s", offset, file.getFilePath()));
+        }
+        appender.append(header.isTombstone() ? targetCodec.encodeTombstone(header.getId()) : targetCodec.encodeInvoice(sourceCodec.decodeInvoice(record)));
+        migratedRecords.incrementAndGet();
+      });
+      if (endOffset != file.size()) {
+        throw new IOException(String.format("Unreadable record at offset %d of %s", endOffset, file.getFilePath()));
+      }
+    }
+    return migratedRecords.get();
+  }
+
+  private FileHelper getMigratedFile(FileHelper file) {
+    return new FileHelper(file.getFilePath() + MIGRATION_FILE_SUFFIX);
+  }
+}
@@ -1,75 +1,463 @@
 package pl.coderstrust.database.invoice;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 import lombok.Synchronized;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
+import pl.coderstrust.configuration.InFileDatabaseProperties;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.helpers.FileAppender;
 import pl.coderstrust.helpers.FileHelper;
 import pl.coderstrust.helpers.FileHelperException;
+import pl.coderstrust.helpers.FsyncPolicy;
+import pl.coderstrust.helpers.MappedFile;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.helpers.RecordVisitor;
+import pl.coderstrust.helpers.RecoveryReport;
+import pl.coderstrust.helpers.SegmentedFileHelper;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
+import pl.coderstrust.model.InvoiceType;
 
+@Slf4j
 @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-file")
 @Repository
 public class InFileInvoiceDatabase implements InvoiceDatabase {
 
-  private FileHelper fileHelper;
-  private ObjectMapper mapper;
+  private static final String COMPACTION_FILE_SUFFIX = ".compaction";
+  private static final String QUARANTINE_FILE_SUFFIX = ".quarantine";
+  private static final int CHECKPOINT_VERSION = 3;
+  private static final int NULL = -1;
+  private static final int STREAM_BATCH_SIZE = 100;
+  private static final long FINGERPRINT_LENGTH = 4096;
+
+  private final Object compactionLock = new Object();
+  private final SegmentedFileHelper segmentedFileHelper;
+  private final InvoiceRecordCodec codec;
+  private final RecordFraming framing;
+  private final boolean memoryMappedReads;
+  private final FsyncPolicy fsyncPolicy;
+  private final long fsyncInterval;
+  private final FileHelper indexFile;
+  private final long indexCheckpointInterval;
+  private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+  private final TreeMap<String, RecordLocation> invoiceLocations = new TreeMap<>(new NumericIdComparator());
+  private final Map<String, LocalDate> issueDates = new HashMap<>();
+  private final TreeMap<LocalDate, Set<String>> issueDateIndex = new TreeMap<>();
+  private final Map<String, InvoiceSummary> summaries = new HashMap<>();
+  private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+  private Segment activeSegment;
+  private RecoveryReport recoveryReport;
+  private long generation;
+  private long recordsSinceCheckpoint;
   private int lastInvoiceId;
 
+  public InFileInvoiceDatabase(@NonNull SegmentedFileHelper segmentedFileHelper, @NonNull ObjectMapper mapper) throws DatabaseOperationException {
+    this(segmentedFileHelper, new JsonInvoiceRecordCodec(mapper), new InFileDatabaseProperties());
+  }
+
+  public InFileInvoiceDatabase(@NonNull SegmentedFileHelper segmentedFileHelper, @NonNull ObjectMapper mapper,
+      @NonNull InFileDatabaseProperties properties) throws DatabaseOperationException {
+    this(segmentedFileHelper, properties.getRecordFormat().createCodec(mapper), properties);
+  }
+
   @Autowired
-  public InFileInvoiceDatabase(@NonNull FileHelper fileHelper, @NonNull ObjectMapper mapper) throws DatabaseOperationException {
-    this.fileHelper = fileHelper;
-    this.mapper = mapper;
+  public InFileInvoiceDatabase(@NonNull SegmentedFileHelper segmentedFileHelper, @NonNull InvoiceRecordCodec codec,
+      @NonNull InFileDatabaseProperties properties) throws DatabaseOperationException {
+    this.segmentedFileHelper = segmentedFileHelper;
+    this.codec = codec;
+    this.framing = codec.getFraming();
+    this.memoryMappedReads = properties.isMemoryMappedReads();
+    this.fsyncPolicy = properties.getFsyncPolicy();
+    this.fsyncInterval = properties.getFsyncInterval();
+    this.indexFile = segmentedFileHelper.getIndexFile();
+    this.indexCheckpointInterval = properties.getIndexCheckpointInterval();
     try {
-      if (!fileHelper.exists()) {
-        fileHelper.initialize();
+      List<Integer> segmentNumbers = segmentedFileHelper.listSegments();
+      if (segmentNumbers.isEmpty()) {
+        segmentNumbers = Collections.singletonList(createFirstSegment());
       }
-      lastInvoiceId = getLastInvoiceId();
+      for (int number : segmentNumbers) {
+        segments.put(number, new Segment(number, segmentedFileHelper.getSegment(number)));
+      }
+      activeSegment = segments.lastEntry().getValue();
+      Map<Integer, Long> checkpointedSizes = loadCheckpoint();
+      long validRecords = 0;
+      long corruptRecords = 0;
+      long truncatedBytes = 0;
+      for (Segment segment : segments.values()) {
+        Long checkpointedSize = checkpointedSizes.get(segment.number);
+        if (checkpointedSize != null && checkpointedSize == segment.file.size()) {
+          continue;
+        }
+        RecoveryReport report = loadSegment(segment, checkpointedSize == null ? 0 : checkpointedSize);
+        validRecords += report.getValidRecords();
+        corruptRecords += report.getCorruptRecords();
+        truncatedBytes += report.getTruncatedBytes();
+      }
+      recoveryReport = new RecoveryReport(validRecords, corruptRecords, truncatedBytes, corruptRecords > 0);
+      log.info(String.format("Recovered in-file invoice database: %d valid records, %d corrupt records quarantined, %d bytes of torn tail truncated",
+          validRecords, corruptRecords, truncatedBytes));
     } catch (IOException | FileHelperException e) {
       throw new DatabaseOperationException("Encountered problems while initializing in-file invoice database.", e);
     }
   }
 
-  private int getLastInvoiceId() throws IOException {
-    String lastInvoiceAsJson = fileHelper.readLastLine();
-    if (lastInvoiceAsJson == null) {
-      return 0;
+  private int createFirstSegment() throws IOException, FileHelperException {
+    FileHelper segmentFile = segmentedFileHelper.getSegment(1);
+    FileHelper legacyFile = segmentedFileHelper.getLegacyFile();
+    if (legacyFile.exists()) {
+      segmentFile.replaceWith(legacyFile.getFilePath());
+    } else {
+      segmentFile.initialize();
+    }
+    return 1;
+  }
+
+  private Map<Integer, Long> loadCheckpoint() throws IOException {
+    if (!indexFile.exists()) {
+      return Collections.emptyMap();
+    }
+    try {
+      IndexCheckpoint checkpoint = decodeCheckpoint(indexFile.readAllBytes());
+      if (isConsistentWithSegments(checkpoint)) {
+        checkpoint.segments.forEach((number, state) -> {
+          Segment segment = segments.get(number);
+          segment.records = state.records;
+          segment.garbageRecords = state.garbageRecords;
+          segment.tombstones = state.tombstones;
+        });
+        invoiceLocations.putAll(checkpoint.invoiceLocations);
+        summaries.putAll(checkpoint.summaries);
+        checkpoint.summaries.forEach((id, summary) -> indexIssueDate(id, summary.getIssueDate()));
+        lastInvoiceId = checkpoint.lastInvoiceId;
+        log.info(String.format("Loaded index checkpoint of in-file invoice database with %d invoices", invoiceLocations.size()));
+        return checkpoint.segments.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().size));
+      }
+      log.warn("Index checkpoint does not match in-file invoice database segments, rebuilding index from database files");
+    } catch (IOException e) {
+      log.warn("Unable to read index checkpoint of in-file invoice database, rebuilding index from database files", e);
+    }
+    return Collections.emptyMap();
+  }
+
+  private boolean isConsistentWithSegments(IndexCheckpoint checkpoint) throws IOException {
+    if (checkpoint.segments.isEmpty()) {
+      return false;
+    }
+    int lastCheckpointedSegment = checkpoint.segments.lastKey();
+    for (Map.Entry<Integer, SegmentCheckpoint> entry : checkpoint.segments.entrySet()) {
+      Segment segment = segments.get(entry.getKey());
+      if (segment == null) {
+        return false;
+      }
+      long size = segment.file.size();
+      SegmentCheckpoint state = entry.getValue();
+      // Only the segment that was active at checkpoint time may have grown since.
+      if (size < state.size || (entry.getKey() != lastCheckpointedSegment && size != state.size)
+          || state.fingerprint != getFingerprint(segment.file, state.size)) {
+        return false;
+      }
+    }
+    return segments.keySet().stream().allMatch(number -> checkpoint.segments.containsKey(number) || number > lastCheckpointedSegment);
+  }
+
+  private RecoveryReport loadSegment(Segment segment, long startOffset) throws IOException {
+    Map<Long, RecoveredRecord> records = new LinkedHashMap<>();
+    RecoveryReport report = segment.file.recover(framing, startOffset, (offset, record) -> addRecord(records, offset, record),
+        segment.file.getFilePath() + QUARANTINE_FILE_SUFFIX);
+    if (report.isRewritten()) {
+      records.clear();
+      segment.file.forEachRecord(framing, startOffset, (offset, record) -> addRecord(records, offset, record));
+    }
+    records.forEach((offset, record) -> indexRecord(segment, offset, record));
+    return report;
+  }
+
+  private boolean addRecord(Map<Long, RecoveredRecord> records, long offset, ByteBuffer record) {
+    InvoiceRecordHeader header = readHeader(record.duplicate());
+    if (header == null) {
+      return false;
+    }
+    if (header.isTombstone()) {
+      records.put(offset, new RecoveredRecord(header.getId(), null));
+      return true;
+    }
+    // Summaries of recovered invoices are built here once, so listing them never needs to decode invoices again.
+    InvoiceSummary summary = readSummary(record);
+    if (summary == null) {
+      return false;
+    }
+    records.put(offset, new RecoveredRecord(header.getId(), summary));
+    return true;
+  }
+
+  private InvoiceSummary readSummary(ByteBuffer record) {
+    try {
+      return new InvoiceSummary(codec.decodeInvoice(record));
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private void indexRecord(Segment segment, long offset, RecoveredRecord record) {
+    if (record.summary == null) {
+      registerTombstone(segment, record.id);
+    } else {
+      registerInvoice(segment, record.id, offset, record.summary);
+    }
+  }
+
+  private InvoiceRecordHeader readHeader(ByteBuffer record) {
+    try {
+      InvoiceRecordHeader header = codec.readHeader(record);
+      if (header != null) {
+        Integer.parseInt(header.getId());
+      }
+      return header;
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private MappedFile getMappedFile(Segment segment) throws IOException {
+    if (!memoryMappedReads || segment == activeSegment) {
+      return null;
+    }
+    if (segment.mappedFile == null) {
+      segment.mappedFile = segment.file.map();
+    }
+    return segment.mappedFile;
+  }
+
+  private void registerInvoice(Segment segment, String id, long offset, InvoiceSummary summary) {
+    segment.records++;
+    markAsGarbage(invoiceLocations.put(id, new RecordLocation(segment.number, offset)));
+    summaries.put(id, summary);
+    unindexIssueDate(id);
+    indexIssueDate(id, summary.getIssueDate());
+    lastInvoiceId = Math.max(lastInvoiceId, Integer.parseInt(id));
+  }
+
+  private void registerTombstone(Segment segment, String id) {
+    segment.records++;
+    segment.tombstones++;
+    markAsGarbage(invoiceLocations.remove(id));
+    summaries.remove(id);
+    unindexIssueDate(id);
+    lastInvoiceId = Math.max(lastInvoiceId, Integer.parseInt(id));
+  }
+
+  private void markAsGarbage(RecordLocation location) {
+    if (location != null) {
+      segments.get(location.segment).garbageRecords++;
+    }
+  }
+
+  private void indexIssueDate(String id, LocalDate issueDate) {
+    if (issueDate != null) {
+      issueDates.put(id, issueDate);
+      issueDateIndex.computeIfAbsent(issueDate, date -> new HashSet<>()).add(id);
+    }
+  }
+
+  private void unindexIssueDate(String id) {
+    LocalDate issueDate = issueDates.remove(id);
+    if (issueDate != null) {
+      issueDateIndex.computeIfPresent(issueDate, (date, ids) -> {
+        ids.remove(id);
+        return ids.isEmpty() ? null : ids;
+      });
     }
-    Invoice lastInvoice = mapper.readValue(lastInvoiceAsJson, Invoice.class);
-    return Integer.parseInt(lastInvoice.getId());
   }
 
   @Override
-  @Synchronized
   public Invoice save(@NonNull Invoice invoice) throws DatabaseOperationException {
     Invoice invoiceToAddOrUpdate = new Invoice(invoice);
-    if (invoiceToAddOrUpdate.getId() != null && existsById(invoiceToAddOrUpdate.getId())) {
-      deleteById(invoiceToAddOrUpdate.getId());
-    } else {
-      invoiceToAddOrUpdate.setId(String.valueOf(getNextInvoiceId()));
-    }
     try {
-      fileHelper.writeLine(mapper.writeValueAsString(invoiceToAddOrUpdate));
-    } catch (IOException e) {
+      commit(Collections.singletonList(appendInvoice(invoiceToAddOrUpdate)));
+    } catch (IOException | FileHelperException e) {
       throw new DatabaseOperationException(String.format("Encountered problems saving invoice: %s", invoiceToAddOrUpdate), e);
     }
     return invoiceToAddOrUpdate;
   }
 
+  @Override
+  public Iterable<Invoice> saveAll(@NonNull Iterable<Invoice> invoices) throws DatabaseOperationException {
+    List<Invoice> invoicesToAddOrUpdate = new ArrayList<>();
+    invoices.forEach(invoice -> invoicesToAddOrUpdate.add(new Invoice(invoice)));
+    try {
+      commit(appendInvoices(invoicesToAddOrUpdate));
+    } catch (IOException | FileHelperException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems saving %d invoices", invoicesToAddOrUpdate.size()), e);
+    }
+    return invoicesToAddOrUpdate;
+  }
+
+  @Synchronized
+  private List<PendingWrite> appendInvoices(List<Invoice> invoices) throws IOException, FileHelperException {
+    List<PendingWrite> writes = new ArrayList<>();
+    for (Invoice invoice : invoices) {
+      writes.add(appendInvoice(invoice));
+    }
+    return writes;
+  }
+
+  @Synchronized
+  private PendingWrite appendInvoice(Invoice invoice) throws IOException, FileHelperException {
+    if (invoice.getId() == null || !invoiceLocations.containsKey(invoice.getId())) {
+      invoice.setId(String.valueOf(getNextInvoiceId()));
+    }
+    PendingWrite write = append(invoice.getId(), codec.encodeInvoice(invoice));
+    write.summary = new InvoiceSummary(invoice);
+    checkpointIfDue();
+    return write;
+  }
+
+  private PendingWrite append(String id, byte[] record) throws IOException, FileHelperException {
+    FileAppender appender = getAppender();
+    if (appender.size() >= segmentedFileHelper.getMaxSegmentSize()) {
+      rollOver();
+      appender = getAppender();
+    }
+    long offset = appender.size();
+    PendingWrite write = new PendingWrite(appender, activeSegment, id, offset, appender.append(record));
+    pendingWrites.add(write);
+    return write;
+  }
+
+  private void commit(List<PendingWrite> writes) throws IOException {
+    if (writes.isEmpty()) {
+      return;
+    }
+    // Only the sync to disk is shared by concurrent callers, every record is still written separately while holding the database lock.
+    PendingWrite lastWrite = writes.get(writes.size() - 1);
+    try {
+      lastWrite.appender.commit(lastWrite.endPosition);
+    } catch (IOException e) {
+      if (discardPendingWrites(writes)) {
+        throw e;
+      }
+      // A sync of another caller made these writes durable and registered them already.
+      return;
+    }
+    registerPendingWrites(lastWrite);
+  }
+
+  @Synchronized
+  private void registerPendingWrites(PendingWrite lastWrite) {
+    // A successful sync also covers every write appended before, registering them in append order keeps the latest record of each invoice.
+    if (!pendingWrites.contains(lastWrite)) {
+      return;
+    }
+    PendingWrite write;
+    do {
+      write = pendingWrites.poll();
+      register(write);
+    } while (write != lastWrite);
+  }
+
+  private void registerPendingWrites() {
+    while (!pendingWrites.isEmpty()) {
+      register(pendingWrites.poll());
+    }
+  }
+
+  private void register(PendingWrite write) {
+    if (write.summary == null) {
+      registerTombstone(write.segment, write.id);
+    } else {
+      registerInvoice(write.segment, write.id, write.offset, write.summary);
+    }
+  }
+
+  @Synchronized
+  private boolean discardPendingWrites(List<PendingWrite> writes) {
+    boolean discarded = false;
+    for (PendingWrite write : writes) {
+      if (pendingWrites.remove(write)) {
+        // The record stays in the segment file, it is counted as garbage so compaction removes it.
+        write.segment.records++;
+        write.segment.garbageRecords++;
+        discarded = true;
+      }
+    }
+    return discarded;
+  }
+
+  private void checkpointIfDue() throws IOException {
+    recordsSinceCheckpoint++;
+    if (indexCheckpointInterval > 0 && recordsSinceCheckpoint >= indexCheckpointInterval) {
+      writeCheckpoint();
+    }
+  }
+
+  private FileAppender getAppender() throws IOException {
+    if (activeSegment.appender == null) {
+      activeSegment.appender = activeSegment.file.openAppender(framing, fsyncPolicy, fsyncInterval);
+    }
+    return activeSegment.appender;
+  }
+
+  private void closeAppender() throws IOException {
+    if (activeSegment.appender != null) {
+      FileAppender appender = activeSegment.appender;
+      activeSegment.appender = null;
+      appender.close();
+    }
+  }
+
+  private void rollOver() throws IOException, FileHelperException {
+    closeAppender();
+    registerPendingWrites();
+    int number = activeSegment.number + 1;
+    FileHelper segmentFile = segmentedFileHelper.getSegment(number);
+    segmentFile.initialize();
+    activeSegment = new Segment(number, segmentFile);
+    segments.put(number, activeSegment);
+  }
+
   @Synchronized
   public Optional<Invoice> findById(@NonNull String id) throws DatabaseOperationException {
+    RecordLocation location = invoiceLocations.get(id);
+    if (location == null) {
+      return Optional.empty();
+    }
     try {
-      return getAllInvoices().stream()
-          .filter(invoice -> invoice != null && invoice.getId().equals(id))
-          .findFirst();
+      return Optional.of(readInvoice(location));
     } catch (IOException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoice:, %s", id), e);
     }
@@ -90,7 +478,7 @@ public class InFileInvoiceDatabase implements InvoiceDatabase {
   public Iterable<Invoice> findAllBySellerName(@NonNull String sellerName) throws DatabaseOperationException {
     try {
       return getAllInvoices().stream()
-          .filter(invoice -> invoice != null && invoice.getSeller().getName().equals(sellerName))
+          .filter(invoice -> invoice.getSeller().getName().equals(sellerName))
           .collect(Collectors.toList());
     } catch (IOException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with seller name: %s", sellerName), e);
@@ -102,7 +490,7 @@ public class InFileInvoiceDatabase implements InvoiceDatabase {
   public Iterable<Invoice> findAllByBuyerName(@NonNull String buyerName) throws DatabaseOperationException {
     try {
       return getAllInvoices().stream()
-          .filter(invoice -> invoice != null && invoice.getBuyer().getName().equals(buyerName))
+          .filter(invoice -> invoice.getBuyer().getName().equals(buyerName))
           .collect(Collectors.toList());
     } catch (IOException e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with buyer name: %s", buyerName), e);
@@ -111,71 +499,564 @@ public class InFileInvoiceDatabase implements InvoiceDatabase {
 
   @Override
   @Synchronized
-  public long count() throws DatabaseOperationException {
+  public Iterable<Invoice> findAllByIssueDateBetween(@NonNull LocalDate startDate, @NonNull LocalDate endDate) throws DatabaseOperationException {
     try {
-      if (fileHelper.isEmpty()) {
-        return 0L;
-      }
-      return (long) getAllInvoices().size();
+      List<RecordLocation> locations = issueDateIndex.subMap(startDate, true, endDate, true).values()
+          .stream()
+          .flatMap(Set::stream)
+          .map(invoiceLocations::get)
+          .sorted(Comparator.comparingInt((RecordLocation location) -> location.segment).thenComparingLong(location -> location.offset))
+          .collect(Collectors.toList());
+      return readInvoices(locations);
     } catch (IOException e) {
-      throw new DatabaseOperationException("Encountered problems while counting invoices.", e);
+      throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices issued between %s and %s", startDate,
+          endDate), e);
     }
   }
 
+  @Override
   @Synchronized
-  public void deleteById(@NonNull String id) throws DatabaseOperationException {
+  public Iterable<Invoice> findPage(String afterId, int limit) throws DatabaseOperationException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    try {
+      return readPage(afterId, limit);
+    } catch (IOException e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while reading page of invoices after id: %s", afterId), e);
+    }
+  }
+
+  @Override
+  @Synchronized
+  public Iterable<InvoiceSummary> findAllSummaries() throws DatabaseOperationException {
+    return invoiceLocations.keySet().stream()
+        .map(summaries::get)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  @Synchronized
+  public Iterable<InvoiceSummary> findSummaryPage(String afterId, int limit) throws DatabaseOperationException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    return (afterId == null ? invoiceLocations : invoiceLocations.tailMap(afterId, false)).keySet().stream()
+        .limit(limit)
+        .map(summaries::get)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void streamAll(@NonNull InvoiceVisitor visitor) throws DatabaseOperationException {
     try {
-      List<Invoice> invoices = getAllInvoices();
-      Optional<Invoice> invoice = invoices.stream()
-          .filter(i -> i.getId().equals(id))
-          .findFirst();
-      if (invoice.isPresent()) {
-        fileHelper.removeLine(invoices.indexOf(invoice.get()) + 1);
+      List<Invoice> page = readPage(null, STREAM_BATCH_SIZE);
+      while (!page.isEmpty()) {
+        for (Invoice invoice : page) {
+          visitor.visit(invoice);
+        }
+        page = readPage(page.get(page.size() - 1).getId(), STREAM_BATCH_SIZE);
+      }
+    } catch (IOException e) {
+      throw new DatabaseOperationException("Encountered problems while streaming invoices", e);
+    }
+  }
+
+  @Synchronized
+  private List<Invoice> readPage(String afterId, int limit) throws IOException {
+    List<RecordLocation> locations = (afterId == null ? invoiceLocations : invoiceLocations.tailMap(afterId, false)).values()
+        .stream()
+        .limit(limit)
+        .collect(Collectors.toList());
+    return readInvoices(locations);
+  }
+
+  private List<Invoice> readInvoices(List<RecordLocation> locations) throws IOException {
+    // Each segment is opened once and read in offset order instead of seeking through a freshly opened file per record.
+    Map<Integer, List<RecordLocation>> locationsBySegment = locations.stream()
+        .collect(Collectors.groupingBy(location -> location.segment, TreeMap::new, Collectors.toList()));
+    Map<RecordLocation, Invoice> invoices = new HashMap<>();
+    for (Map.Entry<Integer, List<RecordLocation>> entry : locationsBySegment.entrySet()) {
+      Segment segment = segments.get(entry.getKey());
+      long[] offsets = entry.getValue().stream().mapToLong(location -> location.offset).toArray();
+      RecordVisitor visitor = (offset, record) -> invoices.put(new RecordLocation(segment.number, offset), codec.decodeInvoice(record));
+      MappedFile mappedFile = getMappedFile(segment);
+      if (mappedFile != null) {
+        mappedFile.readRecords(framing, offsets, visitor);
       } else {
-        throw new DatabaseOperationException(String.format("There was no invoice in database with id %s", id));
+        segment.file.readRecords(framing, offsets, visitor);
       }
+    }
+    return locations.stream()
+        .map(invoices::get)
+        .collect(Collectors.toList());
+  }
+
+  private Invoice readInvoice(RecordLocation location) throws IOException {
+    Segment segment = segments.get(location.segment);
+    MappedFile mappedFile = getMappedFile(segment);
+    if (mappedFile != null) {
+      return codec.decodeInvoice(mappedFile.readRecord(framing, location.offset));
+    }
+    return codec.decodeInvoice(segment.file.readRecord(framing, location.offset));
+  }
+
+  @Override
+  @Synchronized
+  public long count() throws DatabaseOperationException {
+    return (long) invoiceLocations.size();
+  }
+
+  public void deleteById(@NonNull String id) throws DatabaseOperationException {
+    try {
+      commit(Collections.singletonList(appendTombstone(id)));
     } catch (IOException | FileHelperException e) {
       throw new DatabaseOperationException(String.format("Encountered problem while deleting invoice: %s", id), e);
     }
   }
 
+  @Synchronized
+  private PendingWrite appendTombstone(String id) throws DatabaseOperationException, IOException, FileHelperException {
+    if (!invoiceLocations.containsKey(id)) {
+      throw new DatabaseOperationException(String.format("There was no invoice in database with id %s", id));
+    }
+    PendingWrite write = append(id, codec.encodeTombstone(id));
+    checkpointIfDue();
+    return write;
+  }
+
   @Synchronized
   public boolean existsById(@NonNull String id) throws DatabaseOperationException {
+    return invoiceLocations.containsKey(id);
+  }
+
+  @Synchronized
+  public void deleteAll() throws DatabaseOperationException {
     try {
-      return getAllInvoices().stream()
-          .filter(Objects::nonNull)
-          .anyMatch(invoice -> invoice.getId().equals(id));
+      closeAppender();
+      indexFile.delete();
+      activeSegment.file.clear();
+      for (Segment segment : segments.headMap(activeSegment.number).values()) {
+        segment.file.delete();
+      }
+      segments.clear();
+      activeSegment = new Segment(activeSegment.number, activeSegment.file);
+      segments.put(activeSegment.number, activeSegment);
+      invoiceLocations.clear();
+      summaries.clear();
+      pendingWrites.clear();
+      issueDates.clear();
+      issueDateIndex.clear();
+      generation++;
     } catch (IOException e) {
-      throw new DatabaseOperationException(String.format("Encountered problems looking for invoice: %s", id), e);
+      throw new DatabaseOperationException("Encountered problem while deleting invoices.", e);
     }
   }
 
+  @PreDestroy
   @Synchronized
-  public void deleteAll() throws DatabaseOperationException {
+  public void close() throws DatabaseOperationException {
     try {
-      fileHelper.clear();
+      writeCheckpoint();
+      closeAppender();
     } catch (IOException e) {
-      throw new DatabaseOperationException("Encountered problem while deleting invoices.", e);
+      throw new DatabaseOperationException("Encountered problem while closing in-file invoice database.", e);
     }
   }
 
-  private Invoice deserializeJsonToInvoice(String json) {
+  @Synchronized
+  public void checkpoint() throws DatabaseOperationException {
     try {
-      return mapper.readValue(json, Invoice.class);
-    } catch (Exception e) {
-      System.err.println("Unsuccessful JSON deserialization.");
+      writeCheckpoint();
+    } catch (IOException e) {
+      throw new DatabaseOperationException("Encountered problem while writing index checkpoint of in-file invoice database.", e);
+    }
+  }
+
+  private void writeCheckpoint() throws IOException {
+    if (activeSegment.appender != null) {
+      activeSegment.appender.flush();
+    }
+    registerPendingWrites();
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(content);
+    output.writeInt(CHECKPOINT_VERSION);
+    output.writeUTF(framing.name());
+    output.writeInt(lastInvoiceId);
+    output.writeInt(segments.size());
+    for (Segment segment : segments.values()) {
+      long size = segment.appender != null ? segment.appender.size() : segment.file.size();
+      output.writeInt(segment.number);
+      output.writeLong(size);
+      output.writeLong(getFingerprint(segment.file, size));
+      output.writeLong(segment.records);
+      output.writeLong(segment.garbageRecords);
+      output.writeLong(segment.tombstones);
+    }
+    output.writeInt(invoiceLocations.size());
+    for (Map.Entry<String, RecordLocation> entry : invoiceLocations.entrySet()) {
+      output.writeUTF(entry.getKey());
+      output.writeInt(entry.getValue().segment);
+      output.writeLong(entry.getValue().offset);
+      writeSummary(output, summaries.get(entry.getKey()));
+    }
+    output.writeLong(checksum(content.toByteArray(), content.size()));
+    indexFile.writeAtomically(content.toByteArray());
+    recordsSinceCheckpoint = 0;
+  }
+
+  private IndexCheckpoint decodeCheckpoint(byte[] content) throws IOException {
+    int checksumOffset = content.length - Long.BYTES;
+    if (checksumOffset < 0 || ByteBuffer.wrap(content, checksumOffset, Long.BYTES).getLong() != checksum(content, checksumOffset)) {
+      throw new IOException("Index checkpoint checksum mismatch");
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, checksumOffset));
+    if (input.readInt() != CHECKPOINT_VERSION || !framing.name().equals(input.readUTF())) {
+      throw new IOException("Index checkpoint was written in a different format");
+    }
+    IndexCheckpoint checkpoint = new IndexCheckpoint(input.readInt());
+    int segmentCount = input.readInt();
+    for (int i = 0; i < segmentCount; i++) {
+      checkpoint.segments.put(input.readInt(), new SegmentCheckpoint(input.readLong(), input.readLong(), input.readLong(), input.readLong(),
+          input.readLong()));
+    }
+    int invoiceCount = input.readInt();
+    for (int i = 0; i < invoiceCount; i++) {
+      String id = input.readUTF();
+      checkpoint.invoiceLocations.put(id, new RecordLocation(input.readInt(), input.readLong()));
+      checkpoint.summaries.put(id, readSummary(input, id));
+    }
+    return checkpoint;
+  }
+
+  private void writeSummary(DataOutputStream output, InvoiceSummary summary) throws IOException {
+    output.writeByte(summary.getType() == null ? NULL : summary.getType().ordinal());
+    writeDate(output, summary.getIssueDate());
+    writeDate(output, summary.getDueDate());
+    writeString(output, summary.getSellerName());
+    writeString(output, summary.getBuyerName());
+    writeDecimal(output, summary.getTotalNetValue());
+    writeDecimal(output, summary.getTotalGrossValue());
+    writeString(output, summary.getComments());
+  }
+
+  private InvoiceSummary readSummary(DataInputStream input, String id) throws IOException {
+    byte type = input.readByte();
+    if (type != NULL && (type < 0 || type >= InvoiceType.values().length)) {
+      throw new IOException("Invalid invoice type in index checkpoint");
+    }
+    return new InvoiceSummary(id, type == NULL ? null : InvoiceType.values()[type], readDate(input), readDate(input), readString(input),
+        readString(input), readDecimal(input), readDecimal(input), readString(input));
+  }
+
+  private void writeString(DataOutputStream output, String value) throws IOException {
+    if (value == null) {
+      output.writeInt(NULL);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == NULL) {
       return null;
     }
+    if (length < 0 || length > input.available()) {
+      throw new IOException("Invalid string length in index checkpoint");
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
   }
 
-  private List<Invoice> getAllInvoices() throws IOException {
-    return fileHelper.readLines().stream()
-        .map(this::deserializeJsonToInvoice)
-        .filter(Objects::nonNull)
+  private void writeDate(DataOutputStream output, LocalDate date) throws IOException {
+    output.writeBoolean(date != null);
+    if (date != null) {
+      output.writeLong(date.toEpochDay());
+    }
+  }
+
+  private LocalDate readDate(DataInputStream input) throws IOException {
+    return input.readBoolean() ? LocalDate.ofEpochDay(input.readLong()) : null;
+  }
+
+  private void writeDecimal(DataOutputStream output, BigDecimal value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      byte[] unscaledValue = value.unscaledValue().toByteArray();
+      output.writeInt(value.scale());
+      output.writeInt(unscaledValue.length);
+      output.write(unscaledValue);
+    }
+  }
+
+  private BigDecimal readDecimal(DataInputStream input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    int scale = input.readInt();
+    int length = input.readInt();
+    if (length < 1 || length > input.available()) {
+      throw new IOException("Invalid decimal length in index checkpoint");
+    }
+    byte[] unscaledValue = new byte[length];
+    input.readFully(unscaledValue);
+    return new BigDecimal(new BigInteger(unscaledValue), scale);
+  }
+
+  private long getFingerprint(FileHelper file, long size) throws IOException {
+    return file.checksum(Math.max(0, size - FINGERPRINT_LENGTH), size);
+  }
+
+  private long checksum(byte[] content, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(content, 0, length);
+    return crc.getValue();
+  }
+
+  public RecoveryReport getRecoveryReport() {
+    return recoveryReport;
+  }
+
+  @Synchronized
+  public double getGarbageRatio() {
+    long records = 0;
+    long garbageRecords = 0;
+    for (Segment segment : segments.values()) {
+      records += segment.records;
+      garbageRecords += segment.garbageRecords + segment.tombstones;
+    }
+    return records == 0 ? 0 : (double) garbageRecords / records;
+  }
+
+  public int compact() throws DatabaseOperationException {
+    return compact(0);
+  }
+
+  @Synchronized("compactionLock")
+  public int compact(double garbageRatioThreshold) throws DatabaseOperationException {
+    try {
+      List<Integer> segmentsToCompact = selectSegmentsToCompact(garbageRatioThreshold);
+      for (int number : segmentsToCompact) {
+        compactSegment(number);
+      }
+      return segmentsToCompact.size();
+    } catch (IOException | FileHelperException e) {
+      throw new DatabaseOperationException("Encountered problems while compacting in-file invoice database.", e);
+    }
+  }
+
+  @Synchronized
+  private List<Integer> selectSegmentsToCompact(double garbageRatioThreshold) throws IOException, FileHelperException {
+    if (isWorthCompacting(activeSegment, garbageRatioThreshold)) {
+      rollOver();
+    }
+    return segments.values().stream()
+        .filter(segment -> segment != activeSegment && isWorthCompacting(segment, garbageRatioThreshold))
+        .map(segment -> segment.number)
         .collect(Collectors.toList());
   }
 
+  private boolean isWorthCompacting(Segment segment, double garbageRatioThreshold) {
+    long reclaimableRecords = segment.garbageRecords + (segment.number == segments.firstKey() ? segment.tombstones : 0);
+    return reclaimableRecords > 0 && (double) reclaimableRecords / segment.records >= garbageRatioThreshold;
+  }
+
+  private void compactSegment(int number) throws IOException, FileHelperException {
+    CompactionSnapshot snapshot = takeCompactionSnapshot(number);
+    if (snapshot == null) {
+      return;
+    }
+    FileHelper compactedFile = new FileHelper(snapshot.segmentFile.getFilePath() + COMPACTION_FILE_SUFFIX);
+    try {
+      compactedFile.delete();
+      compactedFile.initialize();
+      List<Long> sourceOffsets = new ArrayList<>();
+      List<Long> compactedOffsets = new ArrayList<>();
+      copyLiveRecords(snapshot, compactedFile, sourceOffsets, compactedOffsets);
+      finishCompaction(snapshot, compactedFile, sourceOffsets, compactedOffsets);
+    } finally {
+      compactedFile.delete();
+    }
+  }
+
+  @Synchronized
+  private CompactionSnapshot takeCompactionSnapshot(int number) {
+    Segment segment = segments.get(number);
+    if (segment == null || segment == activeSegment) {
+      return null;
+    }
+    Map<Long, String> liveRecords = new TreeMap<>();
+    invoiceLocations.forEach((id, location) -> {
+      if (location.segment == number) {
+        liveRecords.put(location.offset, id);
+      }
+    });
+    // Tombstones may only be dropped when no older segment can still hold a version of the deleted invoice.
+    boolean keepTombstones = number != segments.firstKey();
+    return new CompactionSnapshot(number, segment.file, liveRecords, keepTombstones, String.valueOf(lastInvoiceId), generation);
+  }
+
+  private void copyLiveRecords(CompactionSnapshot snapshot, FileHelper compactedFile, List<Long> sourceOffsets,
+      List<Long> compactedOffsets) throws IOException {
+    try (FileAppender appender = compactedFile.openAppender(framing, FsyncPolicy.OS, 0)) {
+      snapshot.segmentFile.forEachRecord(framing, (offset, record) -> {
+        if (snapshot.liveRecords.containsKey(offset) || isTombstoneToKeep(snapshot, record)) {
+          sourceOffsets.add(offset);
+          compactedOffsets.add(appender.size());
+          byte[] bytes = new byte[record.remaining()];
+          record.get(bytes);
+          appender.append(bytes);
+        }
+      });
+    }
+  }
+
+  private boolean isTombstoneToKeep(CompactionSnapshot snapshot, ByteBuffer record) {
+    InvoiceRecordHeader header = readHeader(record);
+    if (header == null || !header.isTombstone()) {
+      return false;
+    }
+    // The tombstone of the highest invoice id is the only record left that carries the id high-water mark when rebuilding index from files.
+    return snapshot.keepTombstones || snapshot.highWaterMarkId.equals(header.getId());
+  }
+
+  @Synchronized
+  private void finishCompaction(CompactionSnapshot snapshot, FileHelper compactedFile, List<Long> sourceOffsets,
+      List<Long> compactedOffsets) throws IOException {
+    Segment segment = segments.get(snapshot.segmentNumber);
+    if (snapshot.generation != generation || segment == null) {
+      return;
+    }
+    if (sourceOffsets.isEmpty()) {
+      segment.file.delete();
+      segments.remove(snapshot.segmentNumber);
+      writeCheckpoint();
+      return;
+    }
+    segment.file.replaceWith(compactedFile.getFilePath());
+    segment.mappedFile = null;
+    segment.records = sourceOffsets.size();
+    segment.garbageRecords = 0;
+    segment.tombstones = 0;
+    for (int i = 0; i < sourceOffsets.size(); i++) {
+      String id = snapshot.liveRecords.get(sourceOffsets.get(i));
+      if (id == null) {
+        // A high-water mark tombstone kept in the first segment is not counted, so it does not trigger compaction on its own.
+        if (snapshot.keepTombstones) {
+          segment.tombstones++;
+        }
+      } else if (new RecordLocation(segment.number, sourceOffsets.get(i)).equals(invoiceLocations.get(id))) {
+        invoiceLocations.put(id, new RecordLocation(segment.number, compactedOffsets.get(i)));
+      } else {
+        segment.garbageRecords++;
+      }
+    }
+    writeCheckpoint();
+  }
+
+  private List<Invoice> getAllInvoices() throws IOException {
+    Map<Integer, Set<Long>> liveOffsets = new HashMap<>();
+    invoiceLocations.values().forEach(location -> liveOffsets.computeIfAbsent(location.segment, segment -> new HashSet<>()).add(location.offset));
+    try {
+      return segments.values().parallelStream()
+          .filter(segment -> liveOffsets.containsKey(segment.number))
+          .map(segment -> readLiveInvoices(segment, liveOffsets.get(segment.number)))
+          .flatMap(List::stream)
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private List<Invoice> readLiveInvoices(Segment segment, Set<Long> liveOffsets) {
+    List<Invoice> invoices = new ArrayList<>();
+    try {
+      MappedFile mappedFile = getMappedFile(segment);
+      if (mappedFile != null) {
+        mappedFile.forEachRecord(framing, (offset, record) -> {
+          if (liveOffsets.contains(offset)) {
+            invoices.add(codec.decodeInvoice(record));
+          }
+        });
+      } else {
+        segment.file.forEachRecord(framing, (offset, record) -> {
+          if (liveOffsets.contains(offset)) {
+            invoices.add(codec.decodeInvoice(record));
+          }
+        });
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return invoices;
+  }
+
   private int getNextInvoiceId() {
     return ++lastInvoiceId;
   }
+
+  @RequiredArgsConstructor
+  private static class Segment {
+    private final int number;
+    private final FileHelper file;
+    private long records;
+    private long garbageRecords;
+    private long tombstones;
+    private MappedFile mappedFile;
+    private FileAppender appender;
+  }
+
+  @RequiredArgsConstructor
+  private static class PendingWrite {
+    private final FileAppender appender;
+    private final Segment segment;
+    private final String id;
+    private final long offset;
+    private final long endPosition;
+    private InvoiceSummary summary;
+  }
+
+  @AllArgsConstructor
+  private static class RecoveredRecord {
+    private final String id;
+    private final InvoiceSummary summary;
+  }
+
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  private static class RecordLocation {
+    private final int segment;
+    private final long offset;
+  }
+
+  @RequiredArgsConstructor
+  private static class IndexCheckpoint {
+    private final int lastInvoiceId;
+    private final TreeMap<Integer, SegmentCheckpoint> segments = new TreeMap<>();
+    private final Map<String, RecordLocation> invoiceLocations = new HashMap<>();
+    private final Map<String, InvoiceSummary> summaries = new HashMap<>();
+  }
+
+  @AllArgsConstructor
+  private static class SegmentCheckpoint {
+    private final long size;
+    private final long fingerprint;
+    private final long records;
+    private final long garbageRecords;
+    private final long tombstones;
+  }
+
+  @AllArgsConstructor
+  private static class CompactionSnapshot {
+    private final int segmentNumber;
+    private final FileHelper segmentFile;
+    private final Map<Long, String> liveRecords;
+    private final boolean keepTombstones;
+    private final String highWaterMarkId;
+    private final long generation;
+  }
 }
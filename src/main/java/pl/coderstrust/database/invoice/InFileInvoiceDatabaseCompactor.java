@@ -0,0 +1,37 @@
+package pl.coderstrust.database.invoice;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.coderstrust.configuration.InFileDatabaseProperties;
+import pl.coderstrust.database.DatabaseOperationException;
+
+@Slf4j
+@ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-file")
+@Component
+public class InFileInvoiceDatabaseCompactor {
+
+  private final InFileInvoiceDatabase database;
+  private final InFileDatabaseProperties properties;
+
+  @Autowired
+  public InFileInvoiceDatabaseCompactor(@NonNull InFileInvoiceDatabase database, @NonNull InFileDatabaseProperties properties) {
+    this.database = database;
+    this.properties = properties;
+  }
+
+  @Scheduled(fixedDelayString = "${in-file-database.compaction-interval:60000}")
+  public void compactIfNeeded() {
+    try {
+      int compactedSegments = database.compact(properties.getGarbageRatioThreshold());
+      if (compactedSegments > 0) {
+        log.info(String.format("Compacted %d segment(s) of in-file invoice database. Garbage ratio: %.2f", compactedSegments, database.getGarbageRatio()));
+      }
+    } catch (DatabaseOperationException e) {
+      log.error("An error occurred during compacting in-file invoice database", e);
+    }
+  }
+}
@@ -1,53 +1,81 @@
 package pl.coderstrust.database.invoice;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @NoArgsConstructor
 @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "in-memory")
 @Repository
 public class InMemoryInvoiceDatabase implements InvoiceDatabase {
 
-  private static int lastInvoiceId = 1;
-  private List<Invoice> invoices = Collections.synchronizedList(new ArrayList<>());
+  private static final Comparator<Invoice> BY_ID = Comparator.comparingLong(invoice -> Long.parseLong(invoice.getId()));
+
+  private final AtomicLong lastInvoiceId = new AtomicLong();
+  private final Map<String, Invoice> invoices = new ConcurrentHashMap<>();
+  private final Map<String, InvoiceSummary> summaries = new ConcurrentHashMap<>();
+  private final NavigableSet<String> ids = new ConcurrentSkipListSet<>(new NumericIdComparator());
+  private final Map<String, Set<String>> sellerNameIndex = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> buyerNameIndex = new ConcurrentHashMap<>();
+  private final NavigableMap<LocalDate, Set<String>> issueDateIndex = new ConcurrentSkipListMap<>();
 
   @Override
   public boolean existsById(@NonNull String id) {
-    return invoices
-        .stream()
-        .anyMatch(i -> i.getId().equals(id));
+    return invoices.containsKey(id);
   }
 
   @Override
   public Invoice save(@NonNull Invoice invoice) throws DatabaseOperationException {
     Invoice invoiceToAddOrUpdate = new Invoice(invoice);
-    if (invoiceToAddOrUpdate.getId() != null && existsById(invoiceToAddOrUpdate.getId())) {
-      return updateInvoice(invoiceToAddOrUpdate);
+    if (invoiceToAddOrUpdate.getId() != null && updateInvoice(invoiceToAddOrUpdate)) {
+      return invoiceToAddOrUpdate;
     }
     return addInvoice(invoiceToAddOrUpdate);
   }
 
+  @Override
+  public Iterable<Invoice> saveAll(@NonNull Iterable<Invoice> invoices) throws DatabaseOperationException {
+    List<Invoice> savedInvoices = new ArrayList<>();
+    for (Invoice invoice : invoices) {
+      savedInvoices.add(save(invoice));
+    }
+    return savedInvoices;
+  }
+
   @Override
   public void deleteById(@NonNull String id) throws DatabaseOperationException {
-    if (invoices.removeIf(i -> i.getId().equals(id))) {
-      return;
-    } else {
+    if (!removeInvoice(id)) {
       throw new DatabaseOperationException(String.format("There was no invoice in database with id %s", id));
     }
   }
 
   @Override
   public void deleteAll() {
-    invoices.clear();
+    invoices.keySet().forEach(this::removeInvoice);
   }
 
   @Override
@@ -57,42 +85,169 @@ public class InMemoryInvoiceDatabase implements InvoiceDatabase {
 
   @Override
   public Optional<Invoice> findById(@NonNull String id) {
-    return invoices
-        .stream()
-        .filter(invoice -> invoice.getId().equals(id))
-        .findFirst();
+    return Optional.ofNullable(invoices.get(id));
   }
 
   @Override
   public Iterable<Invoice> findAll() {
-    return invoices;
+    return ids.stream()
+        .map(invoices::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
   }
 
   @Override
-  public Iterable<Invoice> findAllBySellerName(@NonNull String sellerName) {
-    return invoices
+  public Iterable<Invoice> findPage(String afterId, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    return (afterId == null ? ids : ids.tailSet(afterId, false))
+        .stream()
+        .map(invoices::get)
+        .filter(Objects::nonNull)
+        .limit(limit)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findAllSummaries() {
+    return ids.stream()
+        .map(summaries::get)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findSummaryPage(String afterId, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    return (afterId == null ? ids : ids.tailSet(afterId, false))
         .stream()
-        .filter(invoice -> invoice.getSeller().getName().equals(sellerName))
+        .map(summaries::get)
+        .filter(Objects::nonNull)
+        .limit(limit)
         .collect(Collectors.toList());
   }
 
+  @Override
+  public void streamAll(@NonNull InvoiceVisitor visitor) throws DatabaseOperationException {
+    try {
+      for (String id : ids) {
+        Invoice invoice = invoices.get(id);
+        if (invoice != null) {
+          visitor.visit(invoice);
+        }
+      }
+    } catch (IOException e) {
+      throw new DatabaseOperationException("Encountered problems while streaming invoices", e);
+    }
+  }
+
+  @Override
+  public Iterable<Invoice> findAllBySellerName(@NonNull String sellerName) {
+    return findAllByIndexedName(sellerNameIndex, sellerName, Invoice::getSeller);
+  }
+
   @Override
   public Iterable<Invoice> findAllByBuyerName(@NonNull String buyerName) {
-    return invoices
+    return findAllByIndexedName(buyerNameIndex, buyerName, Invoice::getBuyer);
+  }
+
+  @Override
+  public Iterable<Invoice> findAllByIssueDateBetween(@NonNull LocalDate startDate, @NonNull LocalDate endDate) {
+    return issueDateIndex.subMap(startDate, true, endDate, true).values()
         .stream()
-        .filter(invoice -> invoice.getBuyer().getName().equals(buyerName))
+        .flatMap(Set::stream)
+        .map(invoices::get)
+        .filter(Objects::nonNull)
+        .filter(invoice -> invoice.getIssueDate() != null && !invoice.getIssueDate().isBefore(startDate) && !invoice.getIssueDate().isAfter(endDate))
+        .sorted(BY_ID)
         .collect(Collectors.toList());
   }
 
-  private Invoice updateInvoice(Invoice invoice) throws DatabaseOperationException {
-    deleteById(invoice.getId());
-    invoices.add(invoice);
-    return invoice;
+  private Iterable<Invoice> findAllByIndexedName(Map<String, Set<String>> index, String name, Function<Invoice, Company> company) {
+    return index.getOrDefault(name, Collections.emptySet())
+        .stream()
+        .map(invoices::get)
+        .filter(Objects::nonNull)
+        .filter(invoice -> name.equals(getName(company.apply(invoice))))
+        .sorted(BY_ID)
+        .collect(Collectors.toList());
+  }
+
+  private boolean updateInvoice(Invoice invoice) {
+    return invoices.computeIfPresent(invoice.getId(), (id, currentInvoice) -> {
+      removeFromIndexes(currentInvoice);
+      addToIndexes(invoice);
+      summaries.put(id, new InvoiceSummary(invoice));
+      return invoice;
+    }) != null;
   }
 
   private Invoice addInvoice(Invoice invoice) {
-    invoice.setId(String.valueOf(lastInvoiceId++));
-    invoices.add(invoice);
+    invoice.setId(String.valueOf(lastInvoiceId.incrementAndGet()));
+    invoices.compute(invoice.getId(), (id, currentInvoice) -> {
+      addToIndexes(invoice);
+      summaries.put(id, new InvoiceSummary(invoice));
+      ids.add(id);
+      return invoice;
+    });
     return invoice;
   }
+
+  private boolean removeInvoice(String id) {
+    AtomicBoolean removed = new AtomicBoolean();
+    invoices.computeIfPresent(id, (key, currentInvoice) -> {
+      removeFromIndexes(currentInvoice);
+      summaries.remove(key);
+      ids.remove(key);
+      removed.set(true);
+      return null;
+    });
+    return removed.get();
+  }
+
+  private void addToIndexes(Invoice invoice) {
+    addToIndex(sellerNameIndex, getName(invoice.getSeller()), invoice.getId());
+    addToIndex(buyerNameIndex, getName(invoice.getBuyer()), invoice.getId());
+    if (invoice.getIssueDate() != null) {
+      issueDateIndex.computeIfAbsent(invoice.getIssueDate(), issueDate -> ConcurrentHashMap.newKeySet()).add(invoice.getId());
+    }
+  }
+
+  private void removeFromIndexes(Invoice invoice) {
+    removeFromIndex(sellerNameIndex, getName(invoice.getSeller()), invoice.getId());
+    removeFromIndex(buyerNameIndex, getName(invoice.getBuyer()), invoice.getId());
+    // Empty date buckets are kept, as ConcurrentSkipListMap does not run compute atomically and pruning could lose a concurrent insert.
+    Set<String> idsIssuedOnSameDate = invoice.getIssueDate() == null ? null : issueDateIndex.get(invoice.getIssueDate());
+    if (idsIssuedOnSameDate != null) {
+      idsIssuedOnSameDate.remove(invoice.getId());
+    }
+  }
+
+  private void addToIndex(Map<String, Set<String>> index, String name, String id) {
+    if (name == null) {
+      return;
+    }
+    index.compute(name, (key, ids) -> {
+      Set<String> indexedIds = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+      indexedIds.add(id);
+      return indexedIds;
+    });
+  }
+
+  private void removeFromIndex(Map<String, Set<String>> index, String name, String id) {
+    if (name == null) {
+      return;
+    }
+    index.computeIfPresent(name, (key, ids) -> {
+      ids.remove(id);
+      return ids.isEmpty() ? null : ids;
+    });
+  }
+
+  private String getName(Company company) {
+    return company == null ? null : company.getName();
+  }
 }
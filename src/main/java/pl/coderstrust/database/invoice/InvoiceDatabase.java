@@ -1,12 +1,26 @@
 package pl.coderstrust.database.invoice;
 
+import java.time.LocalDate;
 import pl.coderstrust.database.Database;
 import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 public interface InvoiceDatabase extends Database<Invoice, String> {
 
+  Iterable<Invoice> saveAll(Iterable<Invoice> invoices) throws DatabaseOperationException;
+
   Iterable<Invoice> findAllBySellerName(String sellerName) throws DatabaseOperationException;
 
   Iterable<Invoice> findAllByBuyerName(String buyerName) throws DatabaseOperationException;
+
+  Iterable<Invoice> findAllByIssueDateBetween(LocalDate startDate, LocalDate endDate) throws DatabaseOperationException;
+
+  Iterable<Invoice> findPage(String afterId, int limit) throws DatabaseOperationException;
+
+  Iterable<InvoiceSummary> findAllSummaries() throws DatabaseOperationException;
+
+  Iterable<InvoiceSummary> findSummaryPage(String afterId, int limit) throws DatabaseOperationException;
+
+  void streamAll(InvoiceVisitor visitor) throws DatabaseOperationException;
 }
@@ -0,0 +1,19 @@
+package pl.coderstrust.database.invoice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.model.Invoice;
+
+public interface InvoiceRecordCodec {
+
+  RecordFraming getFraming();
+
+  byte[] encodeInvoice(Invoice invoice) throws IOException;
+
+  byte[] encodeTombstone(String id) throws IOException;
+
+  InvoiceRecordHeader readHeader(ByteBuffer record) throws IOException;
+
+  Invoice decodeInvoice(ByteBuffer record) throws IOException;
+}
@@ -0,0 +1,20 @@
+package pl.coderstrust.database.invoice;
+
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+@AllArgsConstructor
+@Getter
+public class InvoiceRecordHeader {
+
+  @NonNull
+  private final String id;
+  private final boolean tombstone;
+  private final LocalDate issueDate;
+
+  public InvoiceRecordHeader(String id, boolean tombstone) {
+    this(id, tombstone, null);
+  }
+}
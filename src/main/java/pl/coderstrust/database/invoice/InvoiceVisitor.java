@@ -0,0 +1,9 @@
+package pl.coderstrust.database.invoice;
+
+import java.io.IOException;
+import pl.coderstrust.model.Invoice;
+
+@FunctionalInterface
+public interface InvoiceVisitor {
+  void visit(Invoice invoice) throws IOException;
+}
@@ -0,0 +1,56 @@
+package pl.coderstrust.database.invoice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Collections;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.model.Invoice;
+
+@AllArgsConstructor
+public class JsonInvoiceRecordCodec implements InvoiceRecordCodec {
+
+  private static final String TOMBSTONE_FIELD = "tombstone";
+  private static final String ISSUE_DATE_FIELD = "issueDate";
+
+  @NonNull
+  private final ObjectMapper mapper;
+
+  @Override
+  public RecordFraming getFraming() {
+    return RecordFraming.LINES;
+  }
+
+  @Override
+  public byte[] encodeInvoice(@NonNull Invoice invoice) throws IOException {
+    return mapper.writeValueAsBytes(invoice);
+  }
+
+  @Override
+  public byte[] encodeTombstone(@NonNull String id) throws IOException {
+    return mapper.writeValueAsBytes(Collections.singletonMap(TOMBSTONE_FIELD, id));
+  }
+
+  @Override
+  public InvoiceRecordHeader readHeader(@NonNull ByteBuffer record) throws IOException {
+    JsonNode node = mapper.readTree(new ByteBufferBackedInputStream(record.duplicate()));
+    if (node != null && node.hasNonNull(TOMBSTONE_FIELD)) {
+      return new InvoiceRecordHeader(node.get(TOMBSTONE_FIELD).asText(), true);
+    }
+    if (node != null && node.hasNonNull("id")) {
+      LocalDate issueDate = node.hasNonNull(ISSUE_DATE_FIELD) ? mapper.treeToValue(node.get(ISSUE_DATE_FIELD), LocalDate.class) : null;
+      return new InvoiceRecordHeader(node.get("id").asText(), false, issueDate);
+    }
+    return null;
+  }
+
+  @Override
+  public Invoice decodeInvoice(@NonNull ByteBuffer record) throws IOException {
+    return mapper.readValue(new ByteBufferBackedInputStream(record.duplicate()), Invoice.class);
+  }
+}
@@ -1,33 +1,63 @@
 package pl.coderstrust.database.invoice;
 
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import lombok.NonNull;
-import lombok.Synchronized;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Repository;
 import pl.coderstrust.configuration.MongoDatabaseProperties;
 import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ConditionalOnProperty(name = "pl.coderstrust.database", havingValue = "mongodb")
 @Repository
 public class MongoInvoiceDatabase implements InvoiceDatabase {
 
+  private static final String ID_FIELD = "_id";
+  private static final String SELLER_NAME_FIELD = "seller.name";
+  private static final String BUYER_NAME_FIELD = "buyer.name";
+  private static final String ISSUE_DATE_FIELD = "issueDate";
+  private static final String DUE_DATE_FIELD = "dueDate";
+  private static final List<String> SUMMARY_FIELDS = Arrays.asList("type", ISSUE_DATE_FIELD, DUE_DATE_FIELD, SELLER_NAME_FIELD, BUYER_NAME_FIELD,
+      "totalNetValue", "totalGrossValue", "comments");
+  private static final int STREAM_BATCH_SIZE = 100;
+
   private final MongoDatabaseProperties properties;
-  private MongoTemplate mongoTemplate;
+  private final MongoTemplate mongoTemplate;
 
   @Autowired
   public MongoInvoiceDatabase(@NonNull MongoTemplate mongoTemplate, @NonNull MongoDatabaseProperties properties) {
     this.mongoTemplate = mongoTemplate;
     this.properties = properties;
+    ensureIndexes();
+  }
+
+  private void ensureIndexes() {
+    IndexOperations indexOperations = mongoTemplate.indexOps(properties.getCollectionName());
+    for (String field : Arrays.asList(SELLER_NAME_FIELD, BUYER_NAME_FIELD, ISSUE_DATE_FIELD, DUE_DATE_FIELD)) {
+      indexOperations.ensureIndex(new Index(field, Sort.Direction.ASC));
+    }
   }
 
-  @Synchronized
   @Override
   public Invoice save(@NonNull Invoice invoice) throws DatabaseOperationException {
     try {
@@ -37,7 +67,29 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
+  @Override
+  public Iterable<Invoice> saveAll(@NonNull Iterable<Invoice> invoices) throws DatabaseOperationException {
+    try {
+      List<Invoice> savedInvoices = new ArrayList<>();
+      List<WriteModel<Document>> writes = new ArrayList<>();
+      for (Invoice invoice : invoices) {
+        if (invoice.getId() == null) {
+          invoice.setId(new ObjectId().toHexString());
+        }
+        Document document = new Document();
+        mongoTemplate.getConverter().write(invoice, document);
+        writes.add(new ReplaceOneModel<>(Filters.eq(ID_FIELD, document.get(ID_FIELD)), document, new ReplaceOptions().upsert(true)));
+        savedInvoices.add(invoice);
+      }
+      if (!writes.isEmpty()) {
+        mongoTemplate.getCollection(properties.getCollectionName()).bulkWrite(writes);
+      }
+      return savedInvoices;
+    } catch (Exception e) {
+      throw new DatabaseOperationException("Encountered problems saving invoices", e);
+    }
+  }
+
   @Override
   public Optional<Invoice> findById(@NonNull String id) throws DatabaseOperationException {
     try {
@@ -47,7 +99,6 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public boolean existsById(@NonNull String id) throws DatabaseOperationException {
     try {
@@ -57,7 +108,6 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAll() throws DatabaseOperationException {
     try {
@@ -67,7 +117,18 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
+  @Override
+  public void streamAll(@NonNull InvoiceVisitor visitor) throws DatabaseOperationException {
+    Query query = new Query().cursorBatchSize(STREAM_BATCH_SIZE);
+    try (CloseableIterator<Invoice> invoices = mongoTemplate.stream(query, Invoice.class, properties.getCollectionName())) {
+      while (invoices.hasNext()) {
+        visitor.visit(invoices.next());
+      }
+    } catch (Exception e) {
+      throw new DatabaseOperationException("Encountered problems while streaming invoices", e);
+    }
+  }
+
   @Override
   public long count() throws DatabaseOperationException {
     try {
@@ -77,7 +138,6 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public void deleteById(@NonNull String id) throws DatabaseOperationException {
     try {
@@ -90,7 +150,6 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public void deleteAll() throws DatabaseOperationException {
     try {
@@ -100,23 +159,84 @@ public class MongoInvoiceDatabase implements InvoiceDatabase {
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAllBySellerName(@NonNull String sellerName) throws DatabaseOperationException {
     try {
-      return mongoTemplate.find(Query.query(Criteria.where("sellerName").is(sellerName)), Invoice.class, properties.getCollectionName());
+      return mongoTemplate.find(Query.query(Criteria.where(SELLER_NAME_FIELD).is(sellerName)), Invoice.class, properties.getCollectionName());
     } catch (Exception e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with seller name: %s", sellerName), e);
     }
   }
 
-  @Synchronized
   @Override
   public Iterable<Invoice> findAllByBuyerName(@NonNull String buyerName) throws DatabaseOperationException {
     try {
-      return mongoTemplate.find(Query.query(Criteria.where("buyerName").is(buyerName)), Invoice.class, properties.getCollectionName());
+      return mongoTemplate.find(Query.query(Criteria.where(BUYER_NAME_FIELD).is(buyerName)), Invoice.class, properties.getCollectionName());
     } catch (Exception e) {
       throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices with buyer name: %s", buyerName), e);
     }
   }
+
+  @Override
+  public Iterable<Invoice> findAllByIssueDateBetween(@NonNull LocalDate startDate, @NonNull LocalDate endDate) throws DatabaseOperationException {
+    try {
+      return mongoTemplate.find(Query.query(Criteria.where(ISSUE_DATE_FIELD).gte(startDate).lte(endDate)), Invoice.class,
+          properties.getCollectionName());
+    } catch (Exception e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while searching for invoices issued between %s and %s", startDate,
+          endDate), e);
+    }
+  }
+
+  @Override
+  public Iterable<Invoice> findPage(String afterId, int limit) throws DatabaseOperationException {
+    Query query = createPageQuery(afterId, limit);
+    try {
+      return mongoTemplate.find(query, Invoice.class, properties.getCollectionName());
+    } catch (Exception e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while reading page of invoices after id: %s", afterId), e);
+    }
+  }
+
+  private Query createPageQuery(String afterId, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limit cannot be lower than 1");
+    }
+    Query query = new Query().with(Sort.by(Sort.Direction.ASC, ID_FIELD)).limit(limit);
+    if (afterId != null) {
+      if (!ObjectId.isValid(afterId)) {
+        throw new IllegalArgumentException(String.format("Cursor %s is not a valid invoice id", afterId));
+      }
+      // Ids are stored as ObjectId and the query mapper converts String ids only for equality and $in, $nin and $ne.
+      query.addCriteria(Criteria.where(ID_FIELD).gt(new ObjectId(afterId)));
+    }
+    return query;
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findAllSummaries() throws DatabaseOperationException {
+    try {
+      return findSummaries(new Query().with(Sort.by(Sort.Direction.ASC, ID_FIELD)));
+    } catch (Exception e) {
+      throw new DatabaseOperationException("Encountered problems while searching for invoice summaries.", e);
+    }
+  }
+
+  @Override
+  public Iterable<InvoiceSummary> findSummaryPage(String afterId, int limit) throws DatabaseOperationException {
+    Query query = createPageQuery(afterId, limit);
+    try {
+      return findSummaries(query);
+    } catch (Exception e) {
+      throw new DatabaseOperationException(String.format("Encountered problems while reading page of invoice summaries after id: %s", afterId), e);
+    }
+  }
+
+  private List<InvoiceSummary> findSummaries(Query query) {
+    SUMMARY_FIELDS.forEach(query.fields()::include);
+    return mongoTemplate.find(query, Invoice.class, properties.getCollectionName())
+        .stream()
+        .map(InvoiceSummary::new)
+        .collect(Collectors.toList());
+  }
 }
@@ -0,0 +1,13 @@
+package pl.coderstrust.database.invoice;
+
+import java.util.Comparator;
+
+class NumericIdComparator implements Comparator<String> {
+
+  // Orders ids without leading zeros numerically while staying total for any other strings.
+  @Override
+  public int compare(String id1, String id2) {
+    int lengthComparison = Integer.compare(id1.length(), id2.length());
+    return lengthComparison != 0 ? lengthComparison : id1.compareTo(id2);
+  }
+}
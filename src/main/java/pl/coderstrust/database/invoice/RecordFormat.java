@@ -0,0 +1,20 @@
+package pl.coderstrust.database.invoice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public enum RecordFormat {
+  JSON {
+    @Override
+    public InvoiceRecordCodec createCodec(ObjectMapper mapper) {
+      return new JsonInvoiceRecordCodec(mapper);
+    }
+  },
+  BINARY {
+    @Override
+    public InvoiceRecordCodec createCodec(ObjectMapper mapper) {
+      return new BinaryInvoiceRecordCodec();
+    }
+  };
+
+  public abstract InvoiceRecordCodec createCodec(ObjectMapper mapper);
+}
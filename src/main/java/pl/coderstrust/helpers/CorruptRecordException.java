@@ -0,0 +1,9 @@
+package pl.coderstrust.helpers;
+
+import java.io.IOException;
+
+public class CorruptRecordException extends IOException {
+  public CorruptRecordException(String message) {
+    super(message);
+  }
+}
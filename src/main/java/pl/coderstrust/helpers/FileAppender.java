@@ -0,0 +1,123 @@
+package pl.coderstrust.helpers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class FileAppender implements Closeable {
+
+  private final FileChannel channel;
+  private final RecordFraming framing;
+  private final FsyncPolicy fsyncPolicy;
+  private final ScheduledExecutorService scheduler;
+  private final Object syncMonitor = new Object();
+  private long position;
+  private long syncedPosition;
+  private boolean syncing;
+
+  public FileAppender(@NonNull String filePath, @NonNull RecordFraming framing, @NonNull FsyncPolicy fsyncPolicy, long fsyncInterval) throws IOException {
+    if (fsyncPolicy == FsyncPolicy.INTERVAL && fsyncInterval < 1) {
+      throw new IllegalArgumentException("fsyncInterval cannot be lower than 1");
+    }
+    this.framing = framing;
+    this.fsyncPolicy = fsyncPolicy;
+    this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.position = channel.size();
+    this.syncedPosition = position;
+    if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "file-appender-fsync");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::flushQuietly, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  public synchronized long size() {
+    return position;
+  }
+
+  public synchronized long append(@NonNull byte[] record) throws IOException {
+    ByteBuffer buffer = framing.frame(record);
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer);
+    }
+    return position;
+  }
+
+  public void commit(long position) throws IOException {
+    if (fsyncPolicy == FsyncPolicy.EVERY_WRITE) {
+      sync(position);
+    }
+  }
+
+  public void flush() throws IOException {
+    sync(size());
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (IOException e) {
+      log.error("An error occurred during syncing file to disk", e);
+    }
+  }
+
+  private void sync(long targetPosition) throws IOException {
+    while (true) {
+      synchronized (syncMonitor) {
+        while (syncing && syncedPosition < targetPosition) {
+          try {
+            syncMonitor.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for file sync");
+          }
+        }
+        if (syncedPosition >= targetPosition) {
+          return;
+        }
+        syncing = true;
+      }
+      long endPosition = size();
+      boolean synced = false;
+      try {
+        channel.force(false);
+        synced = true;
+      } finally {
+        synchronized (syncMonitor) {
+          syncing = false;
+          if (synced) {
+            syncedPosition = Math.max(syncedPosition, endPosition);
+          }
+          syncMonitor.notifyAll();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+}
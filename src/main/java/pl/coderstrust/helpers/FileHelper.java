@@ -1,12 +1,28 @@
 package pl.coderstrust.helpers;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NonNull;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.ReversedLinesFileReader;
@@ -14,6 +30,11 @@ import org.apache.commons.io.input.ReversedLinesFileReader;
 @AllArgsConstructor
 public class FileHelper {
 
+  private static final int BUFFER_SIZE = 65536;
+  private static final String RECOVERY_FILE_SUFFIX = ".recovery";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+  @Getter
   @NonNull
   private String filePath;
 
@@ -35,32 +56,269 @@ public class FileHelper {
     if (isEmpty()) {
       throw new FileHelperException("Can't delete a line in an empty file");
     }
-    RandomAccessFile file = new RandomAccessFile(filePath, "rw");
+    try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
+      long numberOfLines = 1;
+      long offset = 0;
 
-    long numberOfLines = 1;
-    long offset = 0;
+      while (file.readLine() != null && numberOfLines != lineNumber) {
+        numberOfLines++;
+        offset = file.getFilePointer();
+      }
 
-    while (file.readLine() != null && numberOfLines != lineNumber) {
-      numberOfLines++;
-      offset = file.getFilePointer();
-    }
+      if (lineNumber > numberOfLines) {
+        throw new IllegalArgumentException("lineNumber is higher than file length");
+      }
 
-    if (lineNumber > numberOfLines) {
-      file.close();
-      throw new IllegalArgumentException("lineNumber is higher than file length");
+      shiftRemainingBytes(file, offset, file.getFilePointer() - offset);
     }
+  }
 
-    long length = file.getFilePointer() - offset;
-
+  private void shiftRemainingBytes(RandomAccessFile file, long offset, long length) throws IOException {
+    file.seek(offset + length);
     byte[] buffer = new byte[4096];
-    int read = -1;
+    int read;
     while ((read = file.read(buffer)) > -1) {
       file.seek(file.getFilePointer() - read - length);
       file.write(buffer, 0, read);
       file.seek(file.getFilePointer() + length);
     }
     file.setLength(file.length() - length);
-    file.close();
+  }
+
+  public ByteBuffer readRecord(@NonNull RecordFraming framing, long offset) throws IOException {
+    ByteBuffer content = readFrame(framing, offset);
+    return content == null ? null : framing.unframe(offset, content);
+  }
+
+  private ByteBuffer readFrame(RecordFraming framing, long offset) throws IOException {
+    if (offset < 0) {
+      throw new IllegalArgumentException("offset cannot be lower than 0");
+    }
+    try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+      return readFrame(file, framing, offset);
+    }
+  }
+
+  public void readRecords(@NonNull RecordFraming framing, @NonNull long[] offsets, @NonNull RecordVisitor visitor) throws IOException {
+    if (offsets.length == 0) {
+      return;
+    }
+    if (Arrays.stream(offsets).anyMatch(offset -> offset < 0)) {
+      throw new IllegalArgumentException("offset cannot be lower than 0");
+    }
+    long[] sortedOffsets = offsets.clone();
+    Arrays.sort(sortedOffsets);
+    try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+      for (long offset : sortedOffsets) {
+        ByteBuffer content = readFrame(file, framing, offset);
+        if (content == null) {
+          throw new CorruptRecordException(String.format("There is no record at offset %d", offset));
+        }
+        visitor.visit(offset, framing.unframe(offset, content));
+      }
+    }
+  }
+
+  private ByteBuffer readFrame(RandomAccessFile file, RecordFraming framing, long offset) throws IOException {
+    if (offset >= file.length()) {
+      return null;
+    }
+    file.seek(offset);
+    if (framing == RecordFraming.LENGTH_PREFIXED) {
+      int length = file.readInt();
+      if (length < 0 || length > file.length() - file.getFilePointer()) {
+        throw new CorruptRecordException(String.format("Invalid record length at offset %d", offset));
+      }
+      byte[] content = new byte[length];
+      file.readFully(content);
+      return ByteBuffer.wrap(content);
+    }
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while ((read = file.read(buffer)) > -1) {
+      int end = indexOfNewLine(buffer, read);
+      if (end > -1) {
+        line.write(buffer, 0, end);
+        break;
+      }
+      line.write(buffer, 0, read);
+    }
+    return toLineFrame(line);
+  }
+
+  public long forEachRecord(@NonNull RecordFraming framing, @NonNull RecordVisitor visitor) throws IOException {
+    return forEachRecord(framing, 0, visitor);
+  }
+
+  public long forEachRecord(@NonNull RecordFraming framing, long startOffset, @NonNull RecordVisitor visitor) throws IOException {
+    return scanFrames(framing, startOffset, (offset, nextOffset, content) -> visitor.visit(offset, framing.unframe(offset, content)));
+  }
+
+  public RecoveryReport recover(@NonNull RecordFraming framing, @NonNull RecordValidator validator, @NonNull String quarantineFilePath)
+      throws IOException {
+    return recover(framing, 0, validator, quarantineFilePath);
+  }
+
+  public RecoveryReport recover(@NonNull RecordFraming framing, long startOffset, @NonNull RecordValidator validator,
+      @NonNull String quarantineFilePath) throws IOException {
+    List<long[]> corruptFrames = new ArrayList<>();
+    AtomicLong validRecords = new AtomicLong();
+    long endOffset = scanFrames(framing, startOffset, (offset, nextOffset, content) -> {
+      ByteBuffer record;
+      try {
+        record = framing.unframe(offset, content);
+      } catch (CorruptRecordException e) {
+        corruptFrames.add(new long[] {offset, nextOffset});
+        return;
+      }
+      if (validator.accept(offset, record)) {
+        validRecords.incrementAndGet();
+      } else {
+        corruptFrames.add(new long[] {offset, nextOffset});
+      }
+    });
+    long fileSize = size();
+    if (corruptFrames.isEmpty() && endOffset == fileSize) {
+      return new RecoveryReport(validRecords.get(), 0, 0, false);
+    }
+    try (FileChannel file = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+         FileChannel quarantine = FileChannel.open(Paths.get(quarantineFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.APPEND)) {
+      for (long[] frame : corruptFrames) {
+        copy(file, frame[0], frame[1], quarantine);
+      }
+      copy(file, endOffset, fileSize, quarantine);
+      quarantine.force(true);
+      if (corruptFrames.isEmpty()) {
+        file.truncate(endOffset);
+        file.force(true);
+      }
+    }
+    if (!corruptFrames.isEmpty()) {
+      rewriteWithout(corruptFrames, endOffset);
+    }
+    return new RecoveryReport(validRecords.get(), corruptFrames.size(), fileSize - endOffset, !corruptFrames.isEmpty());
+  }
+
+  private void rewriteWithout(List<long[]> skippedFrames, long endOffset) throws IOException {
+    String recoveredFilePath = filePath + RECOVERY_FILE_SUFFIX;
+    try (FileChannel source = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+         FileChannel target = FileChannel.open(Paths.get(recoveredFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      long position = 0;
+      for (long[] frame : skippedFrames) {
+        copy(source, position, frame[0], target);
+        position = frame[1];
+      }
+      copy(source, position, endOffset, target);
+      target.force(true);
+    }
+    replaceWith(recoveredFilePath);
+  }
+
+  private void copy(FileChannel source, long start, long end, FileChannel target) throws IOException {
+    long position = start;
+    while (position < end) {
+      position += source.transferTo(position, end - position, target);
+    }
+  }
+
+  private long scanFrames(RecordFraming framing, long startOffset, FrameVisitor visitor) throws IOException {
+    if (startOffset < 0) {
+      throw new IllegalArgumentException("startOffset cannot be lower than 0");
+    }
+    if (!exists()) {
+      throw new FileNotFoundException("File does not exist");
+    }
+    try (FileInputStream input = new FileInputStream(filePath)) {
+      input.getChannel().position(startOffset);
+      if (framing == RecordFraming.LENGTH_PREFIXED) {
+        return visitLengthPrefixedFrames(new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE)), startOffset, size(), visitor);
+      }
+      return visitLines(input, startOffset, visitor);
+    }
+  }
+
+  private long visitLines(FileInputStream input, long startOffset, FrameVisitor visitor) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long lineOffset = startOffset;
+    long position = startOffset;
+    int read;
+    while ((read = input.read(buffer)) > -1) {
+      int lineStart = 0;
+      for (int i = 0; i < read; i++) {
+        if (buffer[i] == '\n') {
+          line.write(buffer, lineStart, i - lineStart);
+          long nextLineOffset = position + i + 1;
+          visitor.visit(lineOffset, nextLineOffset, toLineFrame(line));
+          line.reset();
+          lineStart = i + 1;
+          lineOffset = nextLineOffset;
+        }
+      }
+      line.write(buffer, lineStart, read - lineStart);
+      position += read;
+    }
+    return lineOffset;
+  }
+
+  private long visitLengthPrefixedFrames(DataInputStream input, long startOffset, long fileSize, FrameVisitor visitor) throws IOException {
+    long offset = startOffset;
+    while (fileSize - offset >= Integer.BYTES) {
+      int length = input.readInt();
+      if (length < 0 || length > fileSize - offset - Integer.BYTES) {
+        return offset;
+      }
+      byte[] content = new byte[length];
+      input.readFully(content);
+      long nextOffset = offset + Integer.BYTES + length;
+      visitor.visit(offset, nextOffset, ByteBuffer.wrap(content));
+      offset = nextOffset;
+    }
+    return offset;
+  }
+
+  private ByteBuffer toLineFrame(ByteArrayOutputStream line) {
+    byte[] bytes = line.toByteArray();
+    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+    return ByteBuffer.wrap(bytes, 0, length).slice();
+  }
+
+  public FileAppender openAppender(@NonNull RecordFraming framing, @NonNull FsyncPolicy fsyncPolicy, long fsyncInterval) throws IOException {
+    if (!exists()) {
+      throw new FileNotFoundException("File does not exist");
+    }
+    return new FileAppender(filePath, framing, fsyncPolicy, fsyncInterval);
+  }
+
+  public MappedFile map() throws IOException {
+    if (!exists()) {
+      throw new FileNotFoundException("File does not exist");
+    }
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File is too large to be mapped into memory");
+      }
+      return new MappedFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public long size() throws IOException {
+    if (!exists()) {
+      throw new FileNotFoundException("File does not exist");
+    }
+    return new File(filePath).length();
+  }
+
+  private int indexOfNewLine(byte[] buffer, int length) {
+    for (int i = 0; i < length; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
   }
 
   public String readLastLine() throws IOException {
@@ -81,6 +339,53 @@ public class FileHelper {
     return FileUtils.readLines(new java.io.File(filePath));
   }
 
+  public long checksum(long startOffset, long endOffset) throws IOException {
+    if (startOffset < 0 || endOffset < startOffset) {
+      throw new IllegalArgumentException("Invalid checksum range");
+    }
+    CRC32 crc = new CRC32();
+    try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, endOffset - startOffset));
+      long position = startOffset;
+      while (position < endOffset) {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), endOffset - position));
+        int read = channel.read(buffer, position);
+        if (read < 0) {
+          throw new EOFException("Checksum range exceeds file size");
+        }
+        buffer.flip();
+        crc.update(buffer);
+        position += read;
+      }
+    }
+    return crc.getValue();
+  }
+
+  public byte[] readAllBytes() throws IOException {
+    if (!exists()) {
+      throw new FileNotFoundException("File does not exist");
+    }
+    return Files.readAllBytes(Paths.get(filePath));
+  }
+
+  public void writeAtomically(@NonNull byte[] content) throws IOException {
+    String temporaryFilePath = filePath + TEMPORARY_FILE_SUFFIX;
+    try (FileChannel channel = FileChannel.open(Paths.get(temporaryFilePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(content);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    replaceWith(temporaryFilePath);
+  }
+
+  public void replaceWith(@NonNull String sourceFilePath) throws IOException {
+    Files.move(Paths.get(sourceFilePath), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
   public void clear() throws IOException {
     if (!exists()) {
       throw new FileNotFoundException("File does not exist");
@@ -104,4 +409,9 @@ public class FileHelper {
     }
     return new java.io.File(filePath).length() == 0;
   }
+
+  @FunctionalInterface
+  private interface FrameVisitor {
+    void visit(long offset, long nextOffset, ByteBuffer content) throws IOException;
+  }
 }
@@ -0,0 +1,7 @@
+package pl.coderstrust.helpers;
+
+public enum FsyncPolicy {
+  EVERY_WRITE,
+  INTERVAL,
+  OS
+}
@@ -0,0 +1,99 @@
+package pl.coderstrust.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import lombok.NonNull;
+
+public class MappedFile {
+
+  private final ByteBuffer buffer;
+
+  public MappedFile(@NonNull ByteBuffer buffer) {
+    this.buffer = buffer.asReadOnlyBuffer();
+  }
+
+  public long size() {
+    return buffer.limit();
+  }
+
+  public ByteBuffer readRecord(@NonNull RecordFraming framing, long offset) throws IOException {
+    if (offset < 0) {
+      throw new IllegalArgumentException("offset cannot be lower than 0");
+    }
+    if (offset >= buffer.limit()) {
+      return null;
+    }
+    if (framing == RecordFraming.LENGTH_PREFIXED) {
+      int contentStart = (int) offset + Integer.BYTES;
+      int length = contentStart <= buffer.limit() ? buffer.getInt((int) offset) : -1;
+      if (length < 0 || length > buffer.limit() - contentStart) {
+        throw new CorruptRecordException(String.format("Invalid record length at offset %d", offset));
+      }
+      return framing.unframe(offset, slice(contentStart, contentStart + length));
+    }
+    return framing.unframe(offset, sliceLine((int) offset, indexOfNewLine((int) offset)));
+  }
+
+  public void readRecords(@NonNull RecordFraming framing, @NonNull long[] offsets, @NonNull RecordVisitor visitor) throws IOException {
+    long[] sortedOffsets = offsets.clone();
+    Arrays.sort(sortedOffsets);
+    for (long offset : sortedOffsets) {
+      ByteBuffer record = readRecord(framing, offset);
+      if (record == null) {
+        throw new CorruptRecordException(String.format("There is no record at offset %d", offset));
+      }
+      visitor.visit(offset, record);
+    }
+  }
+
+  public long forEachRecord(@NonNull RecordFraming framing, @NonNull RecordVisitor visitor) throws IOException {
+    if (framing == RecordFraming.LENGTH_PREFIXED) {
+      return forEachLengthPrefixedRecord(visitor);
+    }
+    int lineStart = 0;
+    int lineEnd;
+    while ((lineEnd = indexOfNewLine(lineStart)) < buffer.limit()) {
+      visitor.visit(lineStart, framing.unframe(lineStart, sliceLine(lineStart, lineEnd)));
+      lineStart = lineEnd + 1;
+    }
+    return lineStart;
+  }
+
+  private long forEachLengthPrefixedRecord(RecordVisitor visitor) throws IOException {
+    int recordOffset = 0;
+    while (buffer.limit() - recordOffset >= Integer.BYTES) {
+      int length = buffer.getInt(recordOffset);
+      int contentStart = recordOffset + Integer.BYTES;
+      if (length < 0 || length > buffer.limit() - contentStart) {
+        return recordOffset;
+      }
+      visitor.visit(recordOffset, RecordFraming.LENGTH_PREFIXED.unframe(recordOffset, slice(contentStart, contentStart + length)));
+      recordOffset = contentStart + length;
+    }
+    return recordOffset;
+  }
+
+  private int indexOfNewLine(int offset) {
+    for (int i = offset; i < buffer.limit(); i++) {
+      if (buffer.get(i) == '\n') {
+        return i;
+      }
+    }
+    return buffer.limit();
+  }
+
+  private ByteBuffer sliceLine(int start, int end) {
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    return slice(start, end);
+  }
+
+  private ByteBuffer slice(int start, int end) {
+    ByteBuffer record = buffer.duplicate();
+    record.limit(end);
+    record.position(start);
+    return record.slice();
+  }
+}
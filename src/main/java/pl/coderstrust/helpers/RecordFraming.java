@@ -0,0 +1,86 @@
+package pl.coderstrust.helpers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+public enum RecordFraming {
+  LINES {
+    @Override
+    public ByteBuffer frame(byte[] record) {
+      byte[] checksum = String.format("%08x ", checksum(ByteBuffer.wrap(record))).getBytes(StandardCharsets.US_ASCII);
+      byte[] separator = System.lineSeparator().getBytes(Charset.defaultCharset());
+      ByteBuffer framedRecord = ByteBuffer.allocate(checksum.length + record.length + separator.length);
+      framedRecord.put(checksum).put(record).put(separator);
+      framedRecord.flip();
+      return framedRecord;
+    }
+
+    @Override
+    public ByteBuffer unframe(long offset, ByteBuffer content) throws CorruptRecordException {
+      // Lines written before checksums were introduced carry no prefix and are passed through unverified.
+      if (!hasChecksumPrefix(content)) {
+        return content.slice();
+      }
+      long expectedChecksum = Long.parseLong(StandardCharsets.US_ASCII.decode(slice(content, 0, CHECKSUM_DIGITS)).toString(), 16);
+      return verify(offset, expectedChecksum, slice(content, CHECKSUM_DIGITS + 1, content.remaining()));
+    }
+
+    private boolean hasChecksumPrefix(ByteBuffer content) {
+      if (content.remaining() <= CHECKSUM_DIGITS || content.get(content.position() + CHECKSUM_DIGITS) != ' ') {
+        return false;
+      }
+      for (int i = 0; i < CHECKSUM_DIGITS; i++) {
+        if (Character.digit(content.get(content.position() + i), 16) < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  },
+  LENGTH_PREFIXED {
+    @Override
+    public ByteBuffer frame(byte[] record) {
+      ByteBuffer framedRecord = ByteBuffer.allocate(2 * Integer.BYTES + record.length);
+      framedRecord.putInt(Integer.BYTES + record.length).putInt((int) checksum(ByteBuffer.wrap(record))).put(record);
+      framedRecord.flip();
+      return framedRecord;
+    }
+
+    @Override
+    public ByteBuffer unframe(long offset, ByteBuffer content) throws CorruptRecordException {
+      if (content.remaining() < Integer.BYTES) {
+        throw new CorruptRecordException(String.format("Record at offset %d is too short to hold a checksum", offset));
+      }
+      long expectedChecksum = content.getInt(content.position()) & 0xFFFFFFFFL;
+      return verify(offset, expectedChecksum, slice(content, Integer.BYTES, content.remaining()));
+    }
+  };
+
+  private static final int CHECKSUM_DIGITS = 8;
+
+  public abstract ByteBuffer frame(byte[] record);
+
+  public abstract ByteBuffer unframe(long offset, ByteBuffer content) throws CorruptRecordException;
+
+  private static ByteBuffer verify(long offset, long expectedChecksum, ByteBuffer record) throws CorruptRecordException {
+    if (checksum(record) != expectedChecksum) {
+      throw new CorruptRecordException(String.format("Checksum mismatch for record at offset %d", offset));
+    }
+    return record;
+  }
+
+  private static long checksum(ByteBuffer record) {
+    CRC32 checksum = new CRC32();
+    checksum.update(record.duplicate());
+    return checksum.getValue();
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(buffer.position() + end);
+    slice.position(buffer.position() + start);
+    return slice.slice();
+  }
+}
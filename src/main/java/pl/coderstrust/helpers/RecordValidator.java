@@ -0,0 +1,9 @@
+package pl.coderstrust.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@FunctionalInterface
+public interface RecordValidator {
+  boolean accept(long offset, ByteBuffer record) throws IOException;
+}
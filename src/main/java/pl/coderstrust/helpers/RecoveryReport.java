@@ -0,0 +1,14 @@
+package pl.coderstrust.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class RecoveryReport {
+
+  private final long validRecords;
+  private final long corruptRecords;
+  private final long truncatedBytes;
+  private final boolean rewritten;
+}
@@ -0,0 +1,73 @@
+package pl.coderstrust.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import lombok.NonNull;
+
+public class SegmentedFileHelper {
+
+  private static final String SEGMENT_FILE_FORMAT = "%s.%06d";
+  private static final String INDEX_FILE_SUFFIX = ".index";
+  private static final String MIGRATION_PROGRESS_FILE_SUFFIX = ".migrating";
+
+  @Getter
+  private final String baseFilePath;
+
+  @Getter
+  private final long maxSegmentSize;
+
+  public SegmentedFileHelper(@NonNull String baseFilePath, long maxSegmentSize) {
+    if (maxSegmentSize < 1) {
+      throw new IllegalArgumentException("maxSegmentSize cannot be lower than 1");
+    }
+    this.baseFilePath = baseFilePath;
+    this.maxSegmentSize = maxSegmentSize;
+  }
+
+  public List<Integer> listSegments() throws IOException {
+    File baseFile = new File(baseFilePath).getAbsoluteFile();
+    File directory = baseFile.getParentFile();
+    if (directory == null || !directory.isDirectory()) {
+      return Collections.emptyList();
+    }
+    String[] fileNames = directory.list();
+    if (fileNames == null) {
+      throw new IOException(String.format("Unable to list files in %s", directory));
+    }
+    Pattern segmentPattern = Pattern.compile(Pattern.quote(baseFile.getName()) + "\\.(\\d{6})");
+    List<Integer> segments = new ArrayList<>();
+    for (String fileName : fileNames) {
+      Matcher matcher = segmentPattern.matcher(fileName);
+      if (matcher.matches()) {
+        segments.add(Integer.parseInt(matcher.group(1)));
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  public FileHelper getSegment(int number) {
+    if (number < 1) {
+      throw new IllegalArgumentException("number cannot be lower than 1");
+    }
+    return new FileHelper(String.format(SEGMENT_FILE_FORMAT, baseFilePath, number));
+  }
+
+  public FileHelper getLegacyFile() {
+    return new FileHelper(baseFilePath);
+  }
+
+  public FileHelper getIndexFile() {
+    return new FileHelper(baseFilePath + INDEX_FILE_SUFFIX);
+  }
+
+  public FileHelper getMigrationProgressFile() {
+    return new FileHelper(baseFilePath + MIGRATION_PROGRESS_FILE_SUFFIX);
+  }
+}
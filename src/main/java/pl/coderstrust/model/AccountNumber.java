@@ -1,21 +1,25 @@
 package pl.coderstrust.model;
 
 import io.swagger.annotations.ApiModelProperty;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class AccountNumber {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of account number.")
   String id;
@@ -34,4 +38,10 @@ public class AccountNumber {
     this.ibanNumber = ibanNumber;
     this.localNumber = localNumber;
   }
+
+  public AccountNumber(AccountNumber that) {
+    this.id = that.getId();
+    this.ibanNumber = that.getIbanNumber();
+    this.localNumber = that.getLocalNumber();
+  }
 }
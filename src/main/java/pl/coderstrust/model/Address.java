@@ -1,23 +1,27 @@
 package pl.coderstrust.model;
 
 import io.swagger.annotations.ApiModelProperty;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Address {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of address.")
   String id;
@@ -45,4 +49,8 @@ public class Address {
     this.city = city;
     this.country = country;
   }
+
+  public Address(Address that) {
+    this(that.getId(), that.getStreet(), that.getNumber(), that.getPostalCode(), that.getCity(), that.getCountry());
+  }
 }
@@ -1,25 +1,37 @@
 package pl.coderstrust.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModelProperty;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToOne;
-import lombok.AllArgsConstructor;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(indexes = {
+    @Index(name = "company_name_idx", columnList = "name"),
+    @Index(name = "company_tax_identification_number_idx", columnList = "taxIdentificationNumber")},
+    uniqueConstraints = @UniqueConstraint(name = "company_details_hash_uk", columnNames = "detailsHash"))
 public class Company {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of company.")
   String id;
@@ -36,6 +48,17 @@ public class Company {
   @OneToOne(cascade = CascadeType.ALL)
   ContactDetails contactDetails;
 
+  @JsonIgnore
+  @ApiModelProperty(hidden = true)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  String detailsHash;
+
+  public Company(String id, String name, String taxIdentificationNumber, AccountNumber accountNumber, ContactDetails contactDetails) {
+    this(name, taxIdentificationNumber, accountNumber, contactDetails);
+    this.id = id;
+  }
+
   public Company(String name, String taxIdentificationNumber,
                  AccountNumber accountNumber, ContactDetails contactDetails) {
     this.name = name;
@@ -43,4 +66,11 @@ public class Company {
     this.accountNumber = accountNumber;
     this.contactDetails = contactDetails;
   }
+
+  public Company(Company that) {
+    this(that.getId(), that.getName(), that.getTaxIdentificationNumber(),
+        that.getAccountNumber() == null ? null : new AccountNumber(that.getAccountNumber()),
+        that.getContactDetails() == null ? null : new ContactDetails(that.getContactDetails()));
+    this.detailsHash = that.getDetailsHash();
+  }
 }
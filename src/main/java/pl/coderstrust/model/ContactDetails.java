@@ -1,25 +1,29 @@
 package pl.coderstrust.model;
 
 import io.swagger.annotations.ApiModelProperty;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class ContactDetails {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of contact details.")
   String id;
@@ -43,4 +47,8 @@ public class ContactDetails {
     this.website = website;
     this.address = address;
   }
+
+  public ContactDetails(ContactDetails that) {
+    this(that.getId(), that.getEmail(), that.getPhoneNumber(), that.getWebsite(), that.getAddress() == null ? null : new Address(that.getAddress()));
+  }
 }
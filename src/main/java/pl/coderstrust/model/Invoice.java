@@ -4,27 +4,68 @@ import io.swagger.annotations.ApiModelProperty;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedEntityGraphs;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
+import javax.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedEntityGraphs({
+    @NamedEntityGraph(
+        name = Invoice.LIST_GRAPH,
+        attributeNodes = {
+            @NamedAttributeNode(value = "seller", subgraph = "company"),
+            @NamedAttributeNode(value = "buyer", subgraph = "company")},
+        subgraphs = {
+            @NamedSubgraph(name = "company", attributeNodes = {
+                @NamedAttributeNode("accountNumber"),
+                @NamedAttributeNode(value = "contactDetails", subgraph = "contactDetails")}),
+            @NamedSubgraph(name = "contactDetails", attributeNodes = @NamedAttributeNode("address"))}),
+    @NamedEntityGraph(
+        name = Invoice.DETAIL_GRAPH,
+        attributeNodes = {
+            @NamedAttributeNode(value = "seller", subgraph = "company"),
+            @NamedAttributeNode(value = "buyer", subgraph = "company"),
+            @NamedAttributeNode("entries")},
+        subgraphs = {
+            @NamedSubgraph(name = "company", attributeNodes = {
+                @NamedAttributeNode("accountNumber"),
+                @NamedAttributeNode(value = "contactDetails", subgraph = "contactDetails")}),
+            @NamedSubgraph(name = "contactDetails", attributeNodes = @NamedAttributeNode("address"))})})
+@Table(indexes = {
+    @Index(name = "invoice_issue_date_idx", columnList = "issueDate"),
+    @Index(name = "invoice_seller_idx", columnList = "seller_id"),
+    @Index(name = "invoice_buyer_idx", columnList = "buyer_id")})
 public class Invoice {
 
+  // Entries are left out of the list graph, as joining a collection would make Hibernate paginate in memory; they are batch fetched instead.
+  public static final String LIST_GRAPH = "Invoice.list";
+  public static final String DETAIL_GRAPH = "Invoice.detail";
+
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of invoice.", example = "'1'")
   String id;
@@ -38,14 +79,15 @@ public class Invoice {
   @ApiModelProperty(value = "Due date of invoice.", example = "2019-01-01")
   LocalDate dueDate;
 
-  @ManyToOne(cascade = CascadeType.ALL)
+  @ManyToOne(cascade = {CascadeType.PERSIST, CascadeType.MERGE})
   Company seller;
 
-  @ManyToOne(cascade = CascadeType.ALL)
+  @ManyToOne(cascade = {CascadeType.PERSIST, CascadeType.MERGE})
   Company buyer;
 
   @ApiModelProperty(value = "List of purchased products.")
   @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   List<InvoiceEntry> entries;
 
   @ApiModelProperty(value = "Total net value of the invoice.", example = "100")
@@ -72,6 +114,10 @@ public class Invoice {
   }
 
   public Invoice(Invoice that) {
-    this(that.getId(), that.getType(), that.getIssueDate(), that.getDueDate(), that.getSeller(), that.getBuyer(), that.getEntries(), that.getTotalNetValue(), that.getTotalGrossValue(), that.getComments());
+    this(that.getId(), that.getType(), that.getIssueDate(), that.getDueDate(),
+        that.getSeller() == null ? null : new Company(that.getSeller()),
+        that.getBuyer() == null ? null : new Company(that.getBuyer()),
+        that.getEntries() == null ? null : that.getEntries().stream().map(InvoiceEntry::new).collect(Collectors.toList()),
+        that.getTotalNetValue(), that.getTotalGrossValue(), that.getComments());
   }
 }
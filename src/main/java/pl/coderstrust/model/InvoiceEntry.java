@@ -2,23 +2,27 @@ package pl.coderstrust.model;
 
 import io.swagger.annotations.ApiModelProperty;
 import java.math.BigDecimal;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.GenericGenerator;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class InvoiceEntry {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @GeneratedValue(generator = "uuid2")
   @GenericGenerator(name = "uuid2", strategy = "uuid2")
   @ApiModelProperty(value = "The id of entries.")
   String id;
@@ -55,4 +59,8 @@ public class InvoiceEntry {
     this.netValue = netValue;
     this.grossValue = grossValue;
   }
+
+  public InvoiceEntry(InvoiceEntry that) {
+    this(that.getId(), that.getItem(), that.getQuantity(), that.getUnit(), that.getPrice(), that.getVatRate(), that.getNetValue(), that.getGrossValue());
+  }
 }
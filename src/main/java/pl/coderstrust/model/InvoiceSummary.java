@@ -0,0 +1,46 @@
+package pl.coderstrust.model;
+
+import io.swagger.annotations.ApiModelProperty;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class InvoiceSummary {
+
+  @ApiModelProperty(value = "The id of invoice.", example = "'1'")
+  String id;
+
+  @ApiModelProperty(value = "Type of the invoice.", example = "STANDARD")
+  InvoiceType type;
+
+  @ApiModelProperty(value = "Issue date of invoice.", example = "2019-01-01")
+  LocalDate issueDate;
+
+  @ApiModelProperty(value = "Due date of invoice.", example = "2019-01-01")
+  LocalDate dueDate;
+
+  @ApiModelProperty(value = "Name of the seller.", example = "PolStal")
+  String sellerName;
+
+  @ApiModelProperty(value = "Name of the buyer.", example = "PolStal")
+  String buyerName;
+
+  @ApiModelProperty(value = "Total net value of the invoice.", example = "100")
+  BigDecimal totalNetValue;
+
+  @ApiModelProperty(value = "Total value with tax of the invoice.", example = "123")
+  BigDecimal totalGrossValue;
+
+  @ApiModelProperty(value = "Comments fot the invoice.", example = "Some informations")
+  String comments;
+
+  public InvoiceSummary(Invoice invoice) {
+    this(invoice.getId(), invoice.getType(), invoice.getIssueDate(), invoice.getDueDate(), invoice.getSeller() == null ? null : invoice.getSeller().getName(),
+        invoice.getBuyer() == null ? null : invoice.getBuyer().getName(), invoice.getTotalNetValue(), invoice.getTotalGrossValue(), invoice.getComments());
+  }
+}
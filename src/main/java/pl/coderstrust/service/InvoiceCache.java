@@ -0,0 +1,112 @@
+package pl.coderstrust.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.model.Invoice;
+
+public class InvoiceCache {
+
+  static final String NAME = "invoices";
+
+  private final Cache<String, Invoice> cache;
+
+  private InvoiceCache(Cache<String, Invoice> cache) {
+    this.cache = cache;
+  }
+
+  public static InvoiceCache disabled() {
+    return new InvoiceCache(null);
+  }
+
+  public static InvoiceCache of(long maximumSize, long expireAfterWriteMillis) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Maximum size cannot be lower than 1");
+    }
+    if (expireAfterWriteMillis < 1) {
+      throw new IllegalArgumentException("Expire after write cannot be lower than 1");
+    }
+    return new InvoiceCache(Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build());
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  public Optional<Invoice> get(@NonNull String id, @NonNull InvoiceLoader loader) throws DatabaseOperationException {
+    if (cache == null) {
+      return loader.load(id);
+    }
+    try {
+      Invoice invoice = cache.get(id, key -> {
+        try {
+          return loader.load(key).map(Invoice::new).orElse(null);
+        } catch (DatabaseOperationException e) {
+          throw new LoadingException(e);
+        }
+      });
+      return Optional.ofNullable(invoice).map(Invoice::new);
+    } catch (LoadingException e) {
+      throw e.getCause();
+    }
+  }
+
+  public boolean contains(@NonNull String id) {
+    return cache != null && cache.asMap().containsKey(id);
+  }
+
+  public void invalidate(String id) {
+    if (cache != null && id != null) {
+      cache.invalidate(id);
+    }
+  }
+
+  public void invalidateAll() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  public CacheStats stats() {
+    return cache == null ? CacheStats.empty() : cache.stats();
+  }
+
+  public void bindTo(@NonNull MeterRegistry registry) {
+    if (cache == null) {
+      return;
+    }
+    CaffeineCacheMetrics.monitor(registry, cache, NAME);
+    Gauge.builder("cache.hit.ratio", cache, invoices -> invoices.stats().hitRate())
+        .tag("cache", NAME)
+        .description("The ratio of cache requests which were hits")
+        .register(registry);
+  }
+
+  @FunctionalInterface
+  public interface InvoiceLoader {
+    Optional<Invoice> load(String id) throws DatabaseOperationException;
+  }
+
+  private static class LoadingException extends RuntimeException {
+
+    LoadingException(DatabaseOperationException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized DatabaseOperationException getCause() {
+      return (DatabaseOperationException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package pl.coderstrust.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import pl.coderstrust.model.Invoice;
+
+@Slf4j
+public class InvoicePdfCache {
+
+  static final String NAME = "invoice-pdfs";
+
+  private static final String SPILL_FILE_EXTENSION = ".pdf";
+
+  private final Cache<PdfKey, byte[]> cache;
+  private final Path spillDirectory;
+  private final long maximumSpillSize;
+  private final Object spillLock = new Object();
+  private long spillSize;
+
+  private InvoicePdfCache(Caffeine<PdfKey, byte[]> builder, Path spillDirectory, long maximumSpillSize) {
+    this.spillDirectory = spillDirectory;
+    this.maximumSpillSize = maximumSpillSize;
+    if (builder == null || spillDirectory == null) {
+      this.cache = builder == null ? null : builder.build();
+      return;
+    }
+    // Spilling is done by a writer rather than a removal listener, so the file is written as part of the eviction itself and
+    // cannot land after invalidate has already removed the entry and deleted its files.
+    this.cache = builder.writer(new CacheWriter<PdfKey, byte[]>() {
+      @Override
+      public void write(PdfKey key, byte[] pdf) {
+      }
+
+      @Override
+      public void delete(PdfKey key, byte[] pdf, RemovalCause cause) {
+        if (cause.wasEvicted() && pdf != null) {
+          spill(key, pdf);
+        }
+      }
+    }).build();
+  }
+
+  public static InvoicePdfCache disabled() {
+    return new InvoicePdfCache(null, null, 0);
+  }
+
+  public static InvoicePdfCache of(long maximumWeight) throws IOException {
+    return of(maximumWeight, null, 0, ForkJoinPool.commonPool());
+  }
+
+  public static InvoicePdfCache of(long maximumWeight, @NonNull Path spillDirectory, long maximumSpillSize) throws IOException {
+    return of(maximumWeight, spillDirectory, maximumSpillSize, ForkJoinPool.commonPool());
+  }
+
+  static InvoicePdfCache of(long maximumWeight, Path spillDirectory, long maximumSpillSize, @NonNull Executor executor) throws IOException {
+    if (maximumWeight < 1) {
+      throw new IllegalArgumentException("Maximum weight cannot be lower than 1");
+    }
+    if (spillDirectory != null && maximumSpillSize < 1) {
+      throw new IllegalArgumentException("Maximum spill size cannot be lower than 1");
+    }
+    Caffeine<PdfKey, byte[]> builder = Caffeine.newBuilder()
+        .maximumWeight(maximumWeight)
+        .weigher((PdfKey key, byte[] pdf) -> pdf.length)
+        .executor(executor)
+        .recordStats();
+    InvoicePdfCache invoicePdfCache = new InvoicePdfCache(builder, spillDirectory, maximumSpillSize);
+    if (spillDirectory != null) {
+      Files.createDirectories(spillDirectory);
+      synchronized (invoicePdfCache.spillLock) {
+        for (Path spilledPdf : invoicePdfCache.listSpilled("*")) {
+          invoicePdfCache.spillSize += Files.size(spilledPdf);
+        }
+        invoicePdfCache.pruneSpilled();
+      }
+    }
+    return invoicePdfCache;
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  public byte[] get(@NonNull Invoice invoice, @NonNull PdfRenderer renderer) throws ServiceOperationException {
+    if (cache == null || invoice.getId() == null) {
+      return renderer.render(invoice);
+    }
+    try {
+      byte[] pdf = cache.get(new PdfKey(invoice.getId(), contentHash(invoice)), key -> {
+        byte[] spilledPdf = readSpilled(key);
+        if (spilledPdf != null) {
+          return spilledPdf;
+        }
+        try {
+          return renderer.render(invoice);
+        } catch (ServiceOperationException e) {
+          throw new RenderingException(e);
+        }
+      });
+      return pdf.clone();
+    } catch (RenderingException e) {
+      throw e.getCause();
+    }
+  }
+
+  public void invalidate(String invoiceId) {
+    if (cache == null || invoiceId == null) {
+      return;
+    }
+    // Entries are removed before taking the spill lock, an eviction in progress holds the entry until its file is written.
+    cache.asMap().keySet().removeIf(key -> key.getInvoiceId().equals(invoiceId));
+    if (spillDirectory != null) {
+      synchronized (spillLock) {
+        deleteSpilled(invoiceId);
+      }
+    }
+  }
+
+  public CacheStats stats() {
+    return cache == null ? CacheStats.empty() : cache.stats();
+  }
+
+  public void bindTo(@NonNull MeterRegistry registry) {
+    if (cache == null) {
+      return;
+    }
+    CaffeineCacheMetrics.monitor(registry, cache, NAME);
+    Gauge.builder("cache.hit.ratio", cache, pdfs -> pdfs.stats().hitRate())
+        .tag("cache", NAME)
+        .description("The ratio of cache requests which were hits")
+        .register(registry);
+  }
+
+  private byte[] readSpilled(PdfKey key) {
+    if (spillDirectory == null) {
+      return null;
+    }
+    try {
+      return Files.readAllBytes(spillDirectory.resolve(spillFileName(key)));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      log.warn(String.format("Could not read spilled pdf of invoice with id: %s", key.getInvoiceId()), e);
+      return null;
+    }
+  }
+
+  private void spill(PdfKey key, byte[] pdf) {
+    synchronized (spillLock) {
+      try {
+        // Pdfs spilled for earlier content of the invoice can no longer be requested.
+        deleteSpilled(key.getInvoiceId());
+        Path temporaryFile = Files.createTempFile(spillDirectory, "spill", ".tmp");
+        Files.write(temporaryFile, pdf);
+        Files.move(temporaryFile, spillDirectory.resolve(spillFileName(key)), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        spillSize += pdf.length;
+        pruneSpilled();
+      } catch (IOException e) {
+        log.warn(String.format("Could not spill pdf of invoice with id: %s", key.getInvoiceId()), e);
+      }
+    }
+  }
+
+  private void deleteSpilled(String invoiceId) {
+    try {
+      for (Path spilledPdf : listSpilled(spillFilePrefix(invoiceId) + "*")) {
+        deleteSpilled(spilledPdf);
+      }
+    } catch (IOException e) {
+      log.warn(String.format("Could not delete spilled pdfs of invoice with id: %s", invoiceId), e);
+    }
+  }
+
+  private void deleteSpilled(Path spilledPdf) throws IOException {
+    try {
+      long size = Files.size(spilledPdf);
+      Files.delete(spilledPdf);
+      spillSize -= size;
+    } catch (NoSuchFileException e) {
+      log.debug(String.format("Spilled pdf was already deleted: %s", spilledPdf));
+    }
+  }
+
+  private void pruneSpilled() throws IOException {
+    if (spillSize <= maximumSpillSize) {
+      return;
+    }
+    List<Path> spilledPdfs = listSpilled("*");
+    spilledPdfs.sort(Comparator.comparing(this::getLastModifiedTime));
+    for (Iterator<Path> oldest = spilledPdfs.iterator(); spillSize > maximumSpillSize && oldest.hasNext(); ) {
+      deleteSpilled(oldest.next());
+    }
+  }
+
+  private List<Path> listSpilled(String pattern) throws IOException {
+    List<Path> spilledPdfs = new ArrayList<>();
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(spillDirectory, pattern + SPILL_FILE_EXTENSION)) {
+      paths.forEach(spilledPdfs::add);
+    }
+    return spilledPdfs;
+  }
+
+  private FileTime getLastModifiedTime(Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private static String spillFileName(PdfKey key) {
+    return spillFilePrefix(key.getInvoiceId()) + key.getContentHash() + SPILL_FILE_EXTENSION;
+  }
+
+  private static String spillFilePrefix(String invoiceId) {
+    return toHex(invoiceId.getBytes(StandardCharsets.UTF_8)) + "-";
+  }
+
+  static String contentHash(Invoice invoice) {
+    try {
+      return toHex(MessageDigest.getInstance("SHA-256").digest(invoice.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte value : bytes) {
+      hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  @FunctionalInterface
+  public interface PdfRenderer {
+    byte[] render(Invoice invoice) throws ServiceOperationException;
+  }
+
+  @Value
+  private static class PdfKey {
+    String invoiceId;
+    String contentHash;
+  }
+
+  private static class RenderingException extends RuntimeException {
+
+    RenderingException(ServiceOperationException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ServiceOperationException getCause() {
+      return (ServiceOperationException) super.getCause();
+    }
+  }
+}
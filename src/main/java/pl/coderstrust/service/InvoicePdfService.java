@@ -10,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.util.stream.Stream;
 import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import pl.coderstrust.model.Address;
 import pl.coderstrust.model.Company;
@@ -20,8 +21,26 @@ import pl.coderstrust.model.InvoiceEntry;
 @Service
 public class InvoicePdfService {
 
+  private final InvoicePdfCache invoicePdfCache;
+
+  public InvoicePdfService() {
+    this(InvoicePdfCache.disabled());
+  }
+
+  @Autowired
+  public InvoicePdfService(@NonNull InvoicePdfCache invoicePdfCache) {
+    this.invoicePdfCache = invoicePdfCache;
+  }
+
   public byte[] createPdf(@NonNull Invoice invoice) throws ServiceOperationException {
+    return invoicePdfCache.get(invoice, this::renderPdf);
+  }
+
+  public void evictPdf(String invoiceId) {
+    invoicePdfCache.invalidate(invoiceId);
+  }
 
+  private byte[] renderPdf(Invoice invoice) throws ServiceOperationException {
     try {
       ByteArrayOutputStream array = new ByteArrayOutputStream();
 
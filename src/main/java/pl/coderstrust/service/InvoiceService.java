@@ -5,24 +5,31 @@ import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.database.invoice.InvoiceDatabase;
+import pl.coderstrust.database.invoice.InvoiceVisitor;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @Slf4j
 @Service
 public class InvoiceService {
 
   private InvoiceDatabase invoiceDatabase;
+  private InvoiceCache invoiceCache;
 
-  @Autowired
   public InvoiceService(@NonNull InvoiceDatabase invoiceDatabase) {
+    this(invoiceDatabase, InvoiceCache.disabled());
+  }
+
+  @Autowired
+  public InvoiceService(@NonNull InvoiceDatabase invoiceDatabase, @NonNull InvoiceCache invoiceCache) {
     this.invoiceDatabase = invoiceDatabase;
+    this.invoiceCache = invoiceCache;
   }
 
   public List<Invoice> getAllInvoices() throws ServiceOperationException {
@@ -38,11 +45,69 @@ public class InvoiceService {
     }
   }
 
+  public void streamAllInvoices(@NonNull InvoiceVisitor visitor) throws ServiceOperationException {
+    try {
+      log.info("Streaming all invoices from database");
+      invoiceDatabase.streamAll(visitor);
+      log.debug("Streaming all invoices from database successful");
+    } catch (DatabaseOperationException e) {
+      log.error("An error occurred during streaming all invoices from database");
+      throw new ServiceOperationException("An error occurred during streaming all invoices", e);
+    }
+  }
+
+  public List<Invoice> getInvoicesPage(String afterId, int limit) throws ServiceOperationException {
+    if (limit < 1) {
+      log.error("The limit must be greater than zero");
+      throw new IllegalArgumentException("The limit must be greater than zero");
+    }
+    try {
+      log.info(String.format("Getting page of %d invoices after id: %s from database", limit, afterId));
+      List<Invoice> result = new ArrayList<>();
+      invoiceDatabase.findPage(afterId, limit).forEach(result::add);
+      log.debug(String.format("Getting page of invoices from database successful"));
+      return result;
+    } catch (DatabaseOperationException e) {
+      log.error(String.format("An error occurred during getting page of invoices after id: %s from database", afterId));
+      throw new ServiceOperationException(String.format("An error occurred during getting page of invoices after id: %s", afterId), e);
+    }
+  }
+
+  public List<InvoiceSummary> getAllInvoiceSummaries() throws ServiceOperationException {
+    try {
+      log.info("Getting all invoice summaries from database");
+      List<InvoiceSummary> result = new ArrayList<>();
+      invoiceDatabase.findAllSummaries().forEach(result::add);
+      log.debug("Getting all invoice summaries from database successful");
+      return result;
+    } catch (DatabaseOperationException e) {
+      log.error("An error occurred during getting all invoice summaries from database");
+      throw new ServiceOperationException("An error occurred during getting all invoice summaries", e);
+    }
+  }
+
+  public List<InvoiceSummary> getInvoiceSummariesPage(String afterId, int limit) throws ServiceOperationException {
+    if (limit < 1) {
+      log.error("The limit must be greater than zero");
+      throw new IllegalArgumentException("The limit must be greater than zero");
+    }
+    try {
+      log.info(String.format("Getting page of %d invoice summaries after id: %s from database", limit, afterId));
+      List<InvoiceSummary> result = new ArrayList<>();
+      invoiceDatabase.findSummaryPage(afterId, limit).forEach(result::add);
+      log.debug("Getting page of invoice summaries from database successful");
+      return result;
+    } catch (DatabaseOperationException e) {
+      log.error(String.format("An error occurred during getting page of invoice summaries after id: %s from database", afterId));
+      throw new ServiceOperationException(String.format("An error occurred during getting page of invoice summaries after id: %s", afterId), e);
+    }
+  }
+
   public Optional<Invoice> getInvoice(@NonNull String invoiceId) throws ServiceOperationException {
     try {
       log.info(String.format("Getting invoice by id from database"));
       log.debug(String.format("Getting invoice by id from database - successful. Id:%s", invoiceId));
-      return invoiceDatabase.findById(invoiceId);
+      return invoiceCache.get(invoiceId, invoiceDatabase::findById);
     } catch (DatabaseOperationException e) {
       log.error(String.format("An error occurred during getting single invoice from database by id. Invoice id: %s",
           invoiceId));
@@ -54,7 +119,7 @@ public class InvoiceService {
   public boolean invoiceExists(@NonNull String invoiceId) throws ServiceOperationException {
     try {
       log.info(String.format("Checking if invoice is existing in database"));
-      boolean invoiceExist = invoiceDatabase.existsById(invoiceId);
+      boolean invoiceExist = invoiceCache.contains(invoiceId) || invoiceDatabase.existsById(invoiceId);
       log.debug(String.format("Invoice with given id:%s exists: %s", invoiceId, invoiceExist));
       return invoiceExist;
     } catch (DatabaseOperationException e) {
@@ -68,7 +133,9 @@ public class InvoiceService {
   public Invoice addInvoice(@NonNull Invoice invoice) throws ServiceOperationException {
     try {
       log.info(String.format("Saving invoice to database"));
-      return invoiceDatabase.save(invoice);
+      Invoice savedInvoice = invoiceDatabase.save(invoice);
+      invoiceCache.invalidate(savedInvoice.getId());
+      return savedInvoice;
     } catch (DatabaseOperationException e) {
       log.error(String.format("An error occurred during checking if invoice exists in database. Invoice id: %s",
           invoice));
@@ -76,6 +143,20 @@ public class InvoiceService {
     }
   }
 
+  public List<Invoice> saveInvoices(@NonNull List<Invoice> invoices) throws ServiceOperationException {
+    try {
+      log.info(String.format("Saving %d invoices to database", invoices.size()));
+      List<Invoice> result = new ArrayList<>();
+      invoiceDatabase.saveAll(invoices).forEach(result::add);
+      result.forEach(savedInvoice -> invoiceCache.invalidate(savedInvoice.getId()));
+      log.debug(String.format("Saving %d invoices to database successful", invoices.size()));
+      return result;
+    } catch (DatabaseOperationException e) {
+      log.error(String.format("An error occurred during saving %d invoices", invoices.size()));
+      throw new ServiceOperationException(String.format("An error occurred during saving %d invoices", invoices.size()), e);
+    }
+  }
+
   public void updateInvoice(@NonNull Invoice invoice) throws ServiceOperationException {
     try {
       log.info(String.format("Updating invoice to database. Invoice :%s",invoice));
@@ -90,6 +171,8 @@ public class InvoiceService {
     } catch (DatabaseOperationException e) {
       log.error(String.format("An error occurred during updating invoice. Invoice: %s", invoice));
       throw new ServiceOperationException(String.format("An error occurred during updating invoice. Invoice: %s", invoice), e);
+    } finally {
+      invoiceCache.invalidate(invoice.getId());
     }
   }
 
@@ -101,6 +184,8 @@ public class InvoiceService {
     } catch (DatabaseOperationException e) {
       log.error(String.format("An error occurred during deleting invoice. Invoice: %s", invoiceId));
       throw new ServiceOperationException(String.format("An error occurred during deleting invoice. Invoice: %s", invoiceId), e);
+    } finally {
+      invoiceCache.invalidate(invoiceId);
     }
   }
 
@@ -112,6 +197,8 @@ public class InvoiceService {
     } catch (DatabaseOperationException e) {
       log.error(String.format("\"An error occurred during deleting all invoices"));
       throw new ServiceOperationException(("An error occurred during deleting all invoices"), e);
+    } finally {
+      invoiceCache.invalidateAll();
     }
   }
 
@@ -122,9 +209,15 @@ public class InvoiceService {
       log.error("The end date must be newer or equal to start date");
       throw new IllegalArgumentException("The end date must be newer or equal to start date");
     }
-    log.debug("Getting all invoices in given data range from database successful");
-    return getAllInvoices().stream()
-        .filter(invoice -> invoice.getIssueDate().compareTo(startDate) >= 0 && invoice.getIssueDate().compareTo(endDate) <= 0)
-        .collect(Collectors.toList());
+    try {
+      List<Invoice> result = new ArrayList<>();
+      invoiceDatabase.findAllByIssueDateBetween(startDate, endDate).forEach(result::add);
+      log.debug("Getting all invoices in given data range from database successful");
+      return result;
+    } catch (DatabaseOperationException e) {
+      log.error(String.format("An error occurred during getting all invoices issued between %s and %s", startDate, endDate));
+      throw new ServiceOperationException(String.format("An error occurred during getting all invoices issued between %s and %s", startDate, endDate),
+          e);
+    }
   }
 }
@@ -1,7 +1,7 @@
 var app = angular.module('Invoices', []);
 
 app.controller('FindAll', function ($scope, $http, $window) {
-    $http.get('http://localhost:8080/invoices').
+    $http.get('http://localhost:8080/invoices/summary').
         then(function (response) {
             $scope.InvoiceDatabase = response.data;
             $scope.empty = $scope.InvoiceDatabase.length;
@@ -10,7 +10,7 @@ app.controller('FindAll', function ($scope, $http, $window) {
         $http.delete(getBaseApiAddress() + id)
             .then(
                 function () {
-                    $http.get('http://localhost:8080/invoices').
+                    $http.get('http://localhost:8080/invoices/summary').
                         then(function (response) {
                             $scope.InvoiceDatabase = response.data;
                             $scope.empty = $scope.InvoiceDatabase.length;
@@ -4,6 +4,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -35,8 +38,10 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.database.invoice.InvoiceVisitor;
 import pl.coderstrust.generators.InvoiceGenerator;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 import pl.coderstrust.service.InvoicePdfService;
 import pl.coderstrust.service.InvoiceService;
 import pl.coderstrust.service.ServiceOperationException;
@@ -120,6 +125,208 @@ class InvoiceControllerTest {
     verify(invoiceService).getAllInvoices();
   }
 
+  @Test
+  @WithMockUser()
+  void shouldReturnPageOfInvoicesWhenLimitAndCursorArePassed() throws Exception {
+    //given
+    List<Invoice> expectedInvoiceList = Arrays.asList(InvoiceGenerator.getRandomInvoice(), InvoiceGenerator.getRandomInvoice());
+    when(invoiceService.getInvoicesPage("10", 2)).thenReturn(expectedInvoiceList);
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, ""))
+            .param("limit", "2")
+            .param("cursor", "10")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    List<Invoice> actualInvoices = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<Invoice>>() {
+    });
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals(expectedInvoiceList, actualInvoices);
+    verify(invoiceService).getInvoicesPage("10", 2);
+    verify(invoiceService, never()).getAllInvoices();
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnAllInvoiceSummaries() throws Exception {
+    //given
+    List<InvoiceSummary> expectedSummaries = Arrays.asList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()),
+        new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(invoiceService.getAllInvoiceSummaries()).thenReturn(expectedSummaries);
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, "summary"))
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    List<InvoiceSummary> actualSummaries = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<InvoiceSummary>>() {
+    });
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals(expectedSummaries, actualSummaries);
+    verify(invoiceService).getAllInvoiceSummaries();
+    verify(invoiceService, never()).getAllInvoices();
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnPageOfInvoiceSummariesWhenLimitAndCursorArePassed() throws Exception {
+    //given
+    List<InvoiceSummary> expectedSummaries = Collections.singletonList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(invoiceService.getInvoiceSummariesPage("10", 2)).thenReturn(expectedSummaries);
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, "summary"))
+            .param("limit", "2")
+            .param("cursor", "10")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    List<InvoiceSummary> actualSummaries = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<InvoiceSummary>>() {
+    });
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals(expectedSummaries, actualSummaries);
+    verify(invoiceService, never()).getAllInvoiceSummaries();
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnBadRequestDuringGettingPageOfInvoiceSummariesWithInvalidLimit() throws Exception {
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, "summary"))
+            .param("limit", "1001")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    //then
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+    verify(invoiceService, never()).getInvoiceSummariesPage(any(), anyInt());
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldStreamAllInvoicesAsNewlineDelimitedJson() throws Exception {
+    //given
+    List<Invoice> expectedInvoiceList = Arrays.asList(InvoiceGenerator.getRandomInvoice(), InvoiceGenerator.getRandomInvoice());
+    doAnswer(invocation -> {
+      InvoiceVisitor visitor = invocation.getArgument(0);
+      for (Invoice invoice : expectedInvoiceList) {
+        visitor.visit(invoice);
+      }
+      return null;
+    }).when(invoiceService).streamAllInvoices(any());
+
+    //when
+    MvcResult asyncResult = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, "stream")))
+        .andReturn();
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.asyncDispatch(asyncResult))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    String[] lines = result.getResponse().getContentAsString().split("\n");
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals("application/x-ndjson", result.getResponse().getContentType());
+    assertEquals(2, lines.length);
+    assertEquals(expectedInvoiceList.get(0), mapper.readValue(lines[0], Invoice.class));
+    assertEquals(expectedInvoiceList.get(1), mapper.readValue(lines[1], Invoice.class));
+    verify(invoiceService, never()).getAllInvoices();
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnBadRequestDuringGettingPageOfInvoicesWithInvalidLimit() throws Exception {
+    //given
+    ErrorMessage expectedErrorMessage = new ErrorMessage("Limit must be between 1 and 1000.");
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, ""))
+            .param("limit", "0")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    ErrorMessage actualErrorMessage = mapper.readValue(result.getResponse().getContentAsString(), ErrorMessage.class);
+
+    //then
+    assertEquals(HttpStatus.BAD_REQUEST.value(), httpStatus);
+    assertEquals(expectedErrorMessage, actualErrorMessage);
+    verify(invoiceService, never()).getInvoicesPage(any(), anyInt());
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnBadRequestDuringGettingPageOfInvoicesWithInvalidCursor() throws Exception {
+    //given
+    when(invoiceService.getInvoicesPage("invalid", 2)).thenThrow(new IllegalArgumentException());
+    ErrorMessage expectedErrorMessage = new ErrorMessage("Passed cursor is invalid.");
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, ""))
+            .param("limit", "2")
+            .param("cursor", "invalid")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    ErrorMessage actualErrorMessage = mapper.readValue(result.getResponse().getContentAsString(), ErrorMessage.class);
+
+    //then
+    assertEquals(HttpStatus.BAD_REQUEST.value(), httpStatus);
+    assertEquals(expectedErrorMessage, actualErrorMessage);
+    verify(invoiceService).getInvoicesPage("invalid", 2);
+  }
+
+  @Test
+  @WithMockUser()
+  void shouldReturnBadRequestDuringGettingPageOfInvoiceSummariesWithInvalidCursor() throws Exception {
+    //given
+    when(invoiceService.getInvoiceSummariesPage("invalid", 2)).thenThrow(new IllegalArgumentException());
+    ErrorMessage expectedErrorMessage = new ErrorMessage("Passed cursor is invalid.");
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(String.format(urlAddressTemplate, "summary"))
+            .param("limit", "2")
+            .param("cursor", "invalid")
+            .accept(MediaType.APPLICATION_JSON_UTF8))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    ErrorMessage actualErrorMessage = mapper.readValue(result.getResponse().getContentAsString(), ErrorMessage.class);
+
+    //then
+    assertEquals(HttpStatus.BAD_REQUEST.value(), httpStatus);
+    assertEquals(expectedErrorMessage, actualErrorMessage);
+    verify(invoiceService).getInvoiceSummariesPage("invalid", 2);
+  }
+
   @Test
   @WithMockUser()
   void shouldReturnSpecificInvoice() throws Exception {
@@ -322,6 +529,105 @@ class InvoiceControllerTest {
     verify(invoiceService, never()).addInvoice(invoiceToAdd);
   }
 
+  @Test
+  @WithMockUser
+  void shouldAddAndUpdateInvoicesPassedAsJsonArrayAndReportResultPerInvoice() throws Exception {
+    //given
+    Invoice invoiceToAdd = InvoiceGenerator.getRandomInvoice();
+    invoiceToAdd.setId(null);
+    Invoice addedInvoice = InvoiceGenerator.copyInvoice(invoiceToAdd);
+    addedInvoice.setId("1");
+    Invoice invalidInvoice = InvoiceGenerator.getRandomInvoice();
+    invalidInvoice.setId(null);
+    invalidInvoice.getBuyer().getContactDetails().setEmail("wrong email");
+    Invoice notExistingInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("10");
+    Invoice invoiceToUpdate = InvoiceGenerator.getRandomInvoiceWithSpecificId("2");
+    when(invoiceService.invoiceExists("10")).thenReturn(false);
+    when(invoiceService.invoiceExists("2")).thenReturn(true);
+    when(invoiceService.saveInvoices(Arrays.asList(invoiceToAdd, invoiceToUpdate))).thenReturn(Arrays.asList(addedInvoice, invoiceToUpdate));
+    List<BatchItemResult> expectedResults = Arrays.asList(
+        new BatchItemResult(0, HttpStatus.CREATED.value(), addedInvoice),
+        new BatchItemResult(1, HttpStatus.BAD_REQUEST.value(), invalidInvoice, Collections.singletonList("Email is not valid")),
+        new BatchItemResult(2, HttpStatus.NOT_FOUND.value(), notExistingInvoice, Collections.singletonList("Invoice not found.")),
+        new BatchItemResult(3, HttpStatus.OK.value(), invoiceToUpdate));
+    String invoicesAsJson = mapper.writeValueAsString(Arrays.asList(invoiceToAdd, invalidInvoice, notExistingInvoice, invoiceToUpdate));
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post(String.format(urlAddressTemplate, "batch"))
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .content(invoicesAsJson))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    List<BatchItemResult> actualResults = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<BatchItemResult>>() {
+    });
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals(expectedResults, actualResults);
+    verify(invoiceService).saveInvoices(Arrays.asList(invoiceToAdd, invoiceToUpdate));
+    verify(invoiceService, never()).addInvoice(any());
+  }
+
+  @Test
+  @WithMockUser
+  void shouldAddInvoicesPassedAsNewlineDelimitedJson() throws Exception {
+    //given
+    Invoice firstInvoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Invoice secondInvoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Invoice firstAddedInvoice = InvoiceGenerator.copyInvoice(firstInvoice);
+    firstAddedInvoice.setId("1");
+    Invoice secondAddedInvoice = InvoiceGenerator.copyInvoice(secondInvoice);
+    secondAddedInvoice.setId("2");
+    when(invoiceService.saveInvoices(Arrays.asList(firstInvoice, secondInvoice))).thenReturn(Arrays.asList(firstAddedInvoice, secondAddedInvoice));
+    String invoicesAsNdjson = mapper.writeValueAsString(firstInvoice) + "\n" + mapper.writeValueAsString(secondInvoice) + "\n";
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post(String.format(urlAddressTemplate, "batch"))
+            .contentType("application/x-ndjson")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .content(invoicesAsNdjson))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    List<BatchItemResult> actualResults = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<List<BatchItemResult>>() {
+    });
+
+    //then
+    assertEquals(HttpStatus.OK.value(), httpStatus);
+    assertEquals(Arrays.asList(new BatchItemResult(0, HttpStatus.CREATED.value(), firstAddedInvoice),
+        new BatchItemResult(1, HttpStatus.CREATED.value(), secondAddedInvoice)), actualResults);
+  }
+
+  @Test
+  @WithMockUser
+  void shouldReturnBadRequestDuringAddingInvoicesWhichCannotBeParsed() throws Exception {
+    //given
+    ErrorMessage expectedErrorMessage = new ErrorMessage("Passed invoices could not be parsed.");
+
+    //when
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post(String.format(urlAddressTemplate, "batch"))
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .content("[{\"id\": "))
+        .andReturn();
+
+    int httpStatus = result.getResponse().getStatus();
+    ErrorMessage actualErrorMessage = mapper.readValue(result.getResponse().getContentAsString(), ErrorMessage.class);
+
+    //then
+    assertEquals(HttpStatus.BAD_REQUEST.value(), httpStatus);
+    assertEquals(expectedErrorMessage, actualErrorMessage);
+    verify(invoiceService, never()).saveInvoices(any());
+  }
+
   @Test
   @WithMockUser()
   void shouldUpdateInvoice() throws Exception {
@@ -348,6 +654,7 @@ class InvoiceControllerTest {
     assertNotNull(actualInvoice);
     assertEquals(expectedInvoice, actualInvoice);
     verify(invoiceService).updateInvoice(expectedInvoice);
+    verify(invoicePdfService).evictPdf(expectedInvoice.getId());
   }
 
   @Test
@@ -495,6 +802,7 @@ class InvoiceControllerTest {
     assertNotNull(actualInvoice);
     assertEquals(expectedInvoice, actualInvoice);
     verify(invoiceService).deleteInvoice(expectedInvoice.getId());
+    verify(invoicePdfService).evictPdf(expectedInvoice.getId());
     verify(invoiceService).getInvoice(expectedInvoice.getId());
   }
 
@@ -0,0 +1,114 @@
+package pl.coderstrust.database.invoice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoice;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceEntry;
+
+class BinaryInvoiceRecordCodecTest {
+
+  private final BinaryInvoiceRecordCodec codec = new BinaryInvoiceRecordCodec();
+
+  @Test
+  @DisplayName("Should use length-prefixed framing.")
+  void shouldUseLengthPrefixedFraming() {
+    assertEquals(RecordFraming.LENGTH_PREFIXED, codec.getFraming());
+  }
+
+  @Test
+  @DisplayName("Should decode invoice equal to encoded one.")
+  void shouldDecodeInvoiceEqualToEncodedOne() throws IOException {
+    //given
+    Invoice invoice = getRandomInvoice();
+    invoice.setTotalNetValue(new BigDecimal("-12345678901234567890.1230"));
+    invoice.setTotalGrossValue(new BigDecimal("1E+3"));
+    invoice.setComments("Zażółć gęślą jaźń");
+
+    //when
+    ByteBuffer record = ByteBuffer.wrap(codec.encodeInvoice(invoice));
+
+    //then
+    assertEquals(invoice, codec.decodeInvoice(record));
+    assertEquals(4, codec.decodeInvoice(record).getTotalNetValue().scale());
+    InvoiceRecordHeader header = codec.readHeader(record);
+    assertEquals(invoice.getId(), header.getId());
+    assertFalse(header.isTombstone());
+    assertEquals(invoice.getIssueDate(), header.getIssueDate());
+  }
+
+  @Test
+  @DisplayName("Should decode invoice with null fields equal to encoded one.")
+  void shouldDecodeInvoiceWithNullFieldsEqualToEncodedOne() throws IOException {
+    //given
+    Invoice invoice = new Invoice();
+    invoice.setId("1");
+    invoice.setSeller(new Company());
+    invoice.setEntries(Arrays.asList(new InvoiceEntry(), null));
+
+    //when
+    Invoice decodedInvoice = codec.decodeInvoice(ByteBuffer.wrap(codec.encodeInvoice(invoice)));
+
+    //then
+    assertEquals(invoice, decodedInvoice);
+    assertNull(codec.readHeader(ByteBuffer.wrap(codec.encodeInvoice(invoice))).getIssueDate());
+  }
+
+  @Test
+  @DisplayName("Should read tombstone header.")
+  void shouldReadTombstoneHeader() throws IOException {
+    //when
+    InvoiceRecordHeader header = codec.readHeader(ByteBuffer.wrap(codec.encodeTombstone("7")));
+
+    //then
+    assertEquals("7", header.getId());
+    assertTrue(header.isTombstone());
+    assertThrows(IOException.class, () -> codec.decodeInvoice(ByteBuffer.wrap(codec.encodeTombstone("7"))));
+  }
+
+  @Test
+  @DisplayName("Should throw IOException when record has unsupported version.")
+  void shouldThrowExceptionWhenRecordHasUnsupportedVersion() throws IOException {
+    //given
+    byte[] record = codec.encodeInvoice(getRandomInvoice());
+    record[0] = 2;
+
+    //then
+    assertThrows(IOException.class, () -> codec.readHeader(ByteBuffer.wrap(record)));
+    assertThrows(IOException.class, () -> codec.decodeInvoice(ByteBuffer.wrap(record)));
+  }
+
+  @Test
+  @DisplayName("Should throw IOException when record is truncated.")
+  void shouldThrowExceptionWhenRecordIsTruncated() throws IOException {
+    //given
+    byte[] record = codec.encodeInvoice(getRandomInvoice());
+
+    //then
+    assertThrows(IOException.class, () -> codec.decodeInvoice(ByteBuffer.wrap(record, 0, record.length / 2)));
+  }
+
+  @Test
+  @DisplayName("Should produce smaller record than JSON codec.")
+  void shouldProduceSmallerRecordThanJsonCodec() throws IOException {
+    //given
+    Invoice invoice = getRandomInvoice();
+    JsonInvoiceRecordCodec jsonCodec = new JsonInvoiceRecordCodec(new ApplicationConfiguration().getObjectMapper());
+
+    //then
+    assertTrue(codec.encodeInvoice(invoice).length < jsonCodec.encodeInvoice(invoice).length);
+  }
+}
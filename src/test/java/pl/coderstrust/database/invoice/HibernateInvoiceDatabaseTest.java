@@ -2,29 +2,62 @@ package pl.coderstrust.database.invoice;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static pl.coderstrust.generators.InvoiceGenerator.copyInvoice;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.generators.CompanyGenerator;
 import pl.coderstrust.generators.InvoiceGenerator;
+import pl.coderstrust.model.Company;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ExtendWith(MockitoExtension.class)
 class HibernateInvoiceDatabaseTest {
@@ -32,11 +65,48 @@ class HibernateInvoiceDatabaseTest {
   @Mock
   HibernateInvoiceRepository hibernateInvoiceRepository;
 
+  @Mock
+  HibernateCompanyRepository hibernateCompanyRepository;
+
+  @Mock
+  EntityManager entityManager;
+
+  @Mock
+  PlatformTransactionManager transactionManager;
+
+  private final Map<String, Company> storedCompanies = new HashMap<>();
+
   private InvoiceDatabase database;
 
   @BeforeEach
   void setUp() {
-    database = new HibernateInvoiceDatabase(hibernateInvoiceRepository);
+    database = new HibernateInvoiceDatabase(hibernateInvoiceRepository, hibernateCompanyRepository, entityManager, transactionManager);
+    lenient().when(hibernateCompanyRepository.findAllByDetailsHashIn(any())).thenAnswer(invocation -> findStoredCompanies(invocation.getArgument(0)));
+    lenient().when(hibernateCompanyRepository.saveAll(any())).thenAnswer(invocation -> storeCompanies(invocation.getArgument(0)));
+  }
+
+  private List<Company> findStoredCompanies(Collection<String> detailsHashes) {
+    return detailsHashes.stream()
+        .filter(storedCompanies::containsKey)
+        .map(storedCompanies::get)
+        .collect(Collectors.toList());
+  }
+
+  private Company storeCompany(Company company) {
+    Company storedCompany = new Company(company);
+    storedCompany.setId(company.getTaxIdentificationNumber());
+    storedCompany.setDetailsHash(HibernateInvoiceDatabase.detailsHash(company));
+    storedCompanies.put(storedCompany.getDetailsHash(), storedCompany);
+    return storedCompany;
+  }
+
+  private List<Company> storeCompanies(Iterable<Company> companies) {
+    List<Company> savedCompanies = new ArrayList<>();
+    companies.forEach(company -> {
+      storedCompanies.put(company.getDetailsHash(), company);
+      savedCompanies.add(company);
+    });
+    return savedCompanies;
   }
 
   @Test
@@ -86,13 +156,34 @@ class HibernateInvoiceDatabaseTest {
   @Transactional
   void shouldDeleteAllInvoicesInDatabase() throws DatabaseOperationException {
     //given
+    List<Company> unusedCompanies = Collections.singletonList(CompanyGenerator.getSampleCompany("unused"));
     doNothing().when(hibernateInvoiceRepository).deleteAll();
+    when(hibernateCompanyRepository.findAllUnused()).thenReturn(unusedCompanies);
 
     //when
     database.deleteAll();
 
     //then
     verify(hibernateInvoiceRepository).deleteAll();
+    verify(hibernateCompanyRepository).deleteAll(unusedCompanies);
+  }
+
+  @Test
+  void shouldDeleteInvoiceAndCompaniesNoLongerUsedByOtherInvoices() throws DatabaseOperationException {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    invoice.getSeller().setId("seller");
+    invoice.getBuyer().setId("buyer");
+    List<Company> unusedCompanies = Collections.singletonList(invoice.getBuyer());
+    when(hibernateInvoiceRepository.findById(invoice.getId())).thenReturn(Optional.of(invoice));
+    when(hibernateCompanyRepository.findAllUnusedByIdIn(Arrays.asList("seller", "buyer"))).thenReturn(unusedCompanies);
+
+    //when
+    database.deleteById(invoice.getId());
+
+    //then
+    verify(hibernateInvoiceRepository).deleteById(invoice.getId());
+    verify(hibernateCompanyRepository).deleteAll(unusedCompanies);
   }
 
   @Test
@@ -114,14 +205,14 @@ class HibernateInvoiceDatabaseTest {
   void shouldFindInvoice() throws DatabaseOperationException {
     //given
     Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("d823bd11-0ba5-4474-a2dc-810ae027d7c1");
-    when(hibernateInvoiceRepository.findById("d823bd11-0ba5-4474-a2dc-810ae027d7c1")).thenReturn(Optional.of(invoice));
+    when(hibernateInvoiceRepository.findDetailsById("d823bd11-0ba5-4474-a2dc-810ae027d7c1")).thenReturn(Optional.of(invoice));
 
     //when
     Optional result = database.findById("d823bd11-0ba5-4474-a2dc-810ae027d7c1");
 
     //then
     assertEquals(invoice, result.get());
-    verify(hibernateInvoiceRepository).findById(invoice.getId());
+    verify(hibernateInvoiceRepository).findDetailsById(invoice.getId());
   }
 
   @Test
@@ -147,36 +238,328 @@ class HibernateInvoiceDatabaseTest {
   void shouldFindAllInvoicesBySellerName() throws DatabaseOperationException {
     //given
     Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("SampleSeller");
-    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("WrongSellerName");
-    Invoice invoice3 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("SampleSeller");
-    when(hibernateInvoiceRepository.findAll()).thenReturn(Arrays.asList(invoice1, invoice2, invoice3));
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("SampleSeller");
+    when(hibernateInvoiceRepository.findAllBySellerName("SampleSeller")).thenReturn(Arrays.asList(invoice1, invoice2));
 
     //when
     Iterable<Invoice> result = database.findAllBySellerName("SampleSeller");
-    Iterator<Invoice> expectedInvoice = result.iterator();
 
     //then
-    assertEquals(invoice1, expectedInvoice.next());
-    assertEquals(invoice3, expectedInvoice.next());
-    verify(hibernateInvoiceRepository).findAll();
+    assertEquals(Arrays.asList(invoice1, invoice2), result);
+    verify(hibernateInvoiceRepository).findAllBySellerName("SampleSeller");
+    verify(hibernateInvoiceRepository, never()).findAll();
   }
 
   @Test
   void shouldFindAllInvoicesByBuyerName() throws DatabaseOperationException {
     //given
     Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName("SampleBuyer");
-    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName("WrongBuyerName");
-    Invoice invoice3 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName("SampleBuyer");
-    when(hibernateInvoiceRepository.findAll()).thenReturn(Arrays.asList(invoice1, invoice2, invoice3));
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName("SampleBuyer");
+    when(hibernateInvoiceRepository.findAllByBuyerName("SampleBuyer")).thenReturn(Arrays.asList(invoice1, invoice2));
 
     //when
     Iterable<Invoice> result = database.findAllByBuyerName("SampleBuyer");
-    Iterator<Invoice> expectedInvoice = result.iterator();
 
     //then
-    assertEquals(invoice1, expectedInvoice.next());
-    assertEquals(invoice3, expectedInvoice.next());
-    verify(hibernateInvoiceRepository).findAll();
+    assertEquals(Arrays.asList(invoice1, invoice2), result);
+    verify(hibernateInvoiceRepository).findAllByBuyerName("SampleBuyer");
+    verify(hibernateInvoiceRepository, never()).findAll();
+  }
+
+  @Test
+  void shouldFindAllInvoicesIssuedInGivenDateRange() throws DatabaseOperationException {
+    //given
+    LocalDate startDate = LocalDate.of(2019, 1, 1);
+    LocalDate endDate = LocalDate.of(2019, 1, 31);
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 15));
+    when(hibernateInvoiceRepository.findAllByIssueDateBetween(startDate, endDate)).thenReturn(Collections.singletonList(invoice));
+
+    //when
+    Iterable<Invoice> result = database.findAllByIssueDateBetween(startDate, endDate);
+
+    //then
+    assertEquals(Collections.singletonList(invoice), result);
+    verify(hibernateInvoiceRepository).findAllByIssueDateBetween(startDate, endDate);
+    verify(hibernateInvoiceRepository, never()).findAll();
+  }
+
+  @Test
+  void findAllByIssueDateBetweenMethodShouldThrowExceptionWhenAnErrorOccurDuringExecution() {
+    //given
+    NonTransientDataAccessException mockedException = Mockito.mock(NonTransientDataAccessException.class);
+    LocalDate startDate = LocalDate.of(2019, 1, 1);
+    LocalDate endDate = LocalDate.of(2019, 1, 31);
+
+    //when
+    doThrow(mockedException).when(hibernateInvoiceRepository).findAllByIssueDateBetween(startDate, endDate);
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.findAllByIssueDateBetween(startDate, endDate));
+  }
+
+  @Test
+  void shouldFindFirstPageOfInvoicesOrderedById() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = Arrays.asList(InvoiceGenerator.getRandomInvoice(), InvoiceGenerator.getRandomInvoice());
+    when(hibernateInvoiceRepository.findAllBy(PageRequest.of(0, 2, Sort.by("id")))).thenReturn(invoices);
+
+    //when
+    Iterable<Invoice> result = database.findPage(null, 2);
+
+    //then
+    assertEquals(invoices, result);
+    verify(hibernateInvoiceRepository).findAllBy(PageRequest.of(0, 2, Sort.by("id")));
+  }
+
+  @Test
+  void shouldFindPageOfInvoicesAfterGivenId() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = Collections.singletonList(InvoiceGenerator.getRandomInvoice());
+    when(hibernateInvoiceRepository.findAllByIdGreaterThan("a1", PageRequest.of(0, 5, Sort.by("id")))).thenReturn(invoices);
+
+    //when
+    Iterable<Invoice> result = database.findPage("a1", 5);
+
+    //then
+    assertEquals(invoices, result);
+    verify(hibernateInvoiceRepository).findAllByIdGreaterThan("a1", PageRequest.of(0, 5, Sort.by("id")));
+    verify(hibernateInvoiceRepository, never()).findAll();
+  }
+
+  @Test
+  void findPageMethodShouldThrowExceptionWhenAnErrorOccurDuringExecution() {
+    //given
+    NonTransientDataAccessException mockedException = Mockito.mock(NonTransientDataAccessException.class);
+
+    //when
+    doThrow(mockedException).when(hibernateInvoiceRepository).findAllByIdGreaterThan("a1", PageRequest.of(0, 5, Sort.by("id")));
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.findPage("a1", 5));
+  }
+
+  @Test
+  void shouldFindAllInvoiceSummaries() throws DatabaseOperationException {
+    //given
+    List<InvoiceSummary> summaries = Collections.singletonList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(hibernateInvoiceRepository.findSummaries(Pageable.unpaged())).thenReturn(summaries);
+
+    //when
+    Iterable<InvoiceSummary> result = database.findAllSummaries();
+
+    //then
+    assertEquals(summaries, result);
+    verify(hibernateInvoiceRepository, never()).findAll();
+  }
+
+  @Test
+  void shouldFindPageOfInvoiceSummariesAfterGivenId() throws DatabaseOperationException {
+    //given
+    List<InvoiceSummary> summaries = Collections.singletonList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(hibernateInvoiceRepository.findSummariesAfter("a1", PageRequest.of(0, 5))).thenReturn(summaries);
+
+    //when
+    Iterable<InvoiceSummary> result = database.findSummaryPage("a1", 5);
+
+    //then
+    assertEquals(summaries, result);
+    verify(hibernateInvoiceRepository).findSummariesAfter("a1", PageRequest.of(0, 5));
+  }
+
+  @Test
+  void findSummaryPageMethodShouldThrowExceptionWhenAnErrorOccurDuringExecution() {
+    //given
+    NonTransientDataAccessException mockedException = Mockito.mock(NonTransientDataAccessException.class);
+
+    //when
+    doThrow(mockedException).when(hibernateInvoiceRepository).findSummaries(PageRequest.of(0, 5));
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.findSummaryPage(null, 5));
+  }
+
+  @Test
+  void shouldSaveAllInvoices() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = Arrays.asList(InvoiceGenerator.getRandomInvoiceWithNoId(), InvoiceGenerator.getRandomInvoice());
+    List<Invoice> savedInvoices = Arrays.asList(InvoiceGenerator.getRandomInvoice(), invoices.get(1));
+    when(hibernateInvoiceRepository.saveAll(invoices)).thenReturn(savedInvoices);
+
+    //when
+    Iterable<Invoice> result = database.saveAll(invoices);
+
+    //then
+    assertEquals(savedInvoices, result);
+    verify(hibernateInvoiceRepository).saveAll(invoices);
+  }
+
+  @Test
+  void shouldSaveInvoiceWithStoredCompanyOfEqualDetailsWithoutModifyingPassedInvoice() throws DatabaseOperationException {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Invoice invoiceBeforeSave = copyInvoice(invoice);
+    Company sellerBeforeSave = new Company(invoice.getSeller());
+    Company buyerBeforeSave = new Company(invoice.getBuyer());
+    Company storedSeller = storeCompany(invoice.getSeller());
+    ArgumentCaptor<Invoice> savedInvoice = ArgumentCaptor.forClass(Invoice.class);
+    when(hibernateInvoiceRepository.save(savedInvoice.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    //when
+    database.save(invoice);
+
+    //then
+    assertSame(storedSeller, savedInvoice.getValue().getSeller());
+    assertSame(storedCompanies.get(HibernateInvoiceDatabase.detailsHash(invoice.getBuyer())), savedInvoice.getValue().getBuyer());
+    assertEquals(2, storedCompanies.size());
+    assertNotSame(invoice, savedInvoice.getValue());
+    assertNotSame(invoice.getBuyer(), savedInvoice.getValue().getBuyer());
+    assertNotSame(invoice.getEntries().get(0), savedInvoice.getValue().getEntries().get(0));
+    assertEquals(invoiceBeforeSave, invoice);
+    assertEquals(sellerBeforeSave, invoice.getSeller());
+    assertEquals(buyerBeforeSave, invoice.getBuyer());
+    verify(transactionManager).getTransaction(argThat(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRED));
+    verify(entityManager, never()).merge(any());
+  }
+
+  @Test
+  void shouldSaveNewCompanyWhenDetailsDifferFromStoredCompanyWithSameTaxIdentificationNumber() throws DatabaseOperationException {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Company storedSeller = CompanyGenerator.getSampleCompany("storedSeller");
+    storedSeller.setTaxIdentificationNumber(invoice.getSeller().getTaxIdentificationNumber());
+    storeCompany(storedSeller);
+    ArgumentCaptor<Invoice> savedInvoice = ArgumentCaptor.forClass(Invoice.class);
+    when(hibernateInvoiceRepository.save(savedInvoice.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    //when
+    database.save(invoice);
+
+    //then
+    assertEquals(invoice.getSeller().getName(), savedInvoice.getValue().getSeller().getName());
+    assertEquals(invoice.getSeller().getContactDetails().getAddress(), savedInvoice.getValue().getSeller().getContactDetails().getAddress());
+    assertEquals(3, storedCompanies.size());
+  }
+
+  @Test
+  void shouldLookUpAndInsertCompaniesOnceWhenSavingAllInvoices() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Company seller = invoice1.getSeller();
+    invoice2.setSeller(new Company(seller));
+    Set<String> detailsHashes = new HashSet<>(Arrays.asList(HibernateInvoiceDatabase.detailsHash(seller),
+        HibernateInvoiceDatabase.detailsHash(invoice1.getBuyer()), HibernateInvoiceDatabase.detailsHash(invoice2.getBuyer())));
+    ArgumentCaptor<List<Invoice>> savedInvoices = ArgumentCaptor.forClass(List.class);
+    when(hibernateInvoiceRepository.saveAll(savedInvoices.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    //when
+    database.saveAll(Arrays.asList(invoice1, invoice2));
+
+    //then
+    verify(hibernateCompanyRepository, times(1)).findAllByDetailsHashIn(detailsHashes);
+    verify(hibernateCompanyRepository, times(1)).saveAll(any());
+    verify(hibernateCompanyRepository).flush();
+    assertEquals(3, storedCompanies.size());
+    assertSame(savedInvoices.getValue().get(0).getSeller(), savedInvoices.getValue().get(1).getSeller());
+    assertEquals(seller, savedInvoices.getValue().get(0).getSeller());
+  }
+
+  @Test
+  void shouldRepeatSaveWithCompanyStoredByConcurrentSaveWhenInsertViolatesUniqueConstraint() throws DatabaseOperationException {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    storeCompany(invoice.getBuyer());
+    doAnswer(invocation -> {
+      storeCompany(invoice.getSeller());
+      throw new DataIntegrityViolationException("company_details_hash_uk");
+    }).when(hibernateCompanyRepository).saveAll(any());
+    ArgumentCaptor<Invoice> savedInvoice = ArgumentCaptor.forClass(Invoice.class);
+    when(hibernateInvoiceRepository.save(savedInvoice.capture())).thenAnswer(invocation -> invocation.getArgument(0));
+
+    //when
+    database.save(invoice);
+
+    //then
+    assertSame(storedCompanies.get(HibernateInvoiceDatabase.detailsHash(invoice.getSeller())), savedInvoice.getValue().getSeller());
+    verify(hibernateCompanyRepository, times(1)).saveAll(any());
+    verify(hibernateInvoiceRepository, times(1)).save(any());
+    verify(transactionManager, times(2)).getTransaction(any());
+    verify(transactionManager).rollback(any());
+  }
+
+  @Test
+  void saveMethodShouldThrowExceptionWhenCompanyCannotBeInserted() {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    doThrow(new DataIntegrityViolationException("name cannot be null")).when(hibernateCompanyRepository).saveAll(any());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.save(invoice));
+    verify(hibernateCompanyRepository, times(3)).saveAll(any());
+    verify(hibernateInvoiceRepository, never()).save(any());
+  }
+
+  @Test
+  void saveMethodShouldNotRepeatTransactionOfCallerWhenCompanyCannotBeInserted() {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithNoId();
+    doThrow(new DataIntegrityViolationException("company_details_hash_uk")).when(hibernateCompanyRepository).saveAll(any());
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+
+    //then
+    try {
+      assertThrows(DatabaseOperationException.class, () -> database.save(invoice));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+    verify(hibernateCompanyRepository, times(1)).saveAll(any());
+  }
+
+  @Test
+  void saveAllMethodShouldThrowExceptionWhenAnErrorOccurDuringExecution() {
+    //given
+    NonTransientDataAccessException mockedException = Mockito.mock(NonTransientDataAccessException.class);
+    List<Invoice> invoices = Collections.singletonList(InvoiceGenerator.getRandomInvoice());
+
+    //when
+    doThrow(mockedException).when(hibernateInvoiceRepository).saveAll(invoices);
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.saveAll(invoices));
+  }
+
+  @Test
+  void shouldStreamAllInvoicesPageByPageAndDetachVisitedOnes() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificId("1");
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificId("2");
+    Invoice invoice3 = InvoiceGenerator.getRandomInvoiceWithSpecificId("3");
+    Pageable pageable = PageRequest.of(0, 100, Sort.by("id"));
+    when(hibernateInvoiceRepository.findAllBy(pageable)).thenReturn(Arrays.asList(invoice1, invoice2));
+    doReturn(Collections.singletonList(invoice3)).when(hibernateInvoiceRepository).findAllByIdGreaterThan("2", pageable);
+    doReturn(Collections.emptyList()).when(hibernateInvoiceRepository).findAllByIdGreaterThan("3", pageable);
+    List<Invoice> visitedInvoices = new ArrayList<>();
+
+    //when
+    database.streamAll(visitedInvoices::add);
+
+    //then
+    assertEquals(Arrays.asList(invoice1, invoice2, invoice3), visitedInvoices);
+    verify(entityManager).detach(invoice1);
+    verify(entityManager).detach(invoice2);
+    verify(entityManager).detach(invoice3);
+    verify(hibernateInvoiceRepository, never()).findAll();
+  }
+
+  @Test
+  void streamAllMethodShouldThrowExceptionWhenVisitorFails() {
+    //given
+    when(hibernateInvoiceRepository.findAllBy(any(Pageable.class))).thenReturn(Collections.singletonList(InvoiceGenerator.getRandomInvoice()));
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.streamAll(invoice -> {
+      throw new IOException();
+    }));
   }
 
   @Test
@@ -199,11 +582,11 @@ class HibernateInvoiceDatabaseTest {
     String id = "d823bd11-0ba5-4474-a2dc-810ae027d7c1";
 
     //when
-    doThrow(NoSuchElementException.class).when(hibernateInvoiceRepository).findById(id);
+    doThrow(NoSuchElementException.class).when(hibernateInvoiceRepository).findDetailsById(id);
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findById(id));
-    verify(hibernateInvoiceRepository).findById(id);
+    verify(hibernateInvoiceRepository).findDetailsById(id);
   }
 
   @Test
@@ -279,11 +662,11 @@ class HibernateInvoiceDatabaseTest {
     String name = "SampleSellerName";
 
     //when
-    doThrow(mockedException).when(hibernateInvoiceRepository).findAll();
+    doThrow(mockedException).when(hibernateInvoiceRepository).findAllBySellerName(name);
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findAllBySellerName(name));
-    verify(hibernateInvoiceRepository).findAll();
+    verify(hibernateInvoiceRepository).findAllBySellerName(name);
   }
 
   @Test
@@ -293,11 +676,11 @@ class HibernateInvoiceDatabaseTest {
     String name = "SampleBuyerName";
 
     //when
-    doThrow(mockedException).when(hibernateInvoiceRepository).findAll();
+    doThrow(mockedException).when(hibernateInvoiceRepository).findAllByBuyerName(name);
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findAllByBuyerName(name));
-    verify(hibernateInvoiceRepository).findAll();
+    verify(hibernateInvoiceRepository).findAllByBuyerName(name);
   }
 
   @Test
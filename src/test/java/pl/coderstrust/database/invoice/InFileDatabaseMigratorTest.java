@@ -0,0 +1,110 @@
+package pl.coderstrust.database.invoice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.helpers.FileHelper;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.helpers.SegmentedFileHelper;
+
+@ExtendWith(MockitoExtension.class)
+class InFileDatabaseMigratorTest {
+
+  private final InvoiceRecordCodec jsonCodec = new JsonInvoiceRecordCodec(new ApplicationConfiguration().getObjectMapper());
+  private final InvoiceRecordCodec binaryCodec = new BinaryInvoiceRecordCodec();
+
+  @Mock
+  private SegmentedFileHelper segmentedFileHelperMock;
+
+  @Mock
+  private FileHelper fileHelperMock;
+
+  @Mock
+  private FileHelper indexFileHelperMock;
+
+  @Mock
+  private FileHelper progressFileHelperMock;
+
+  @Test
+  @DisplayName("Should migrate nothing when database does not exist.")
+  void migrateShouldMigrateNothingWhenDatabaseDoesNotExist() throws Exception {
+    //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(fileHelperMock);
+    when(fileHelperMock.exists()).thenReturn(false);
+
+    //when
+    int migratedRecords = new InFileDatabaseMigrator(segmentedFileHelperMock, jsonCodec, binaryCodec).migrate();
+
+    //then
+    assertEquals(0, migratedRecords);
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    verify(fileHelperMock, never()).replaceWith(any());
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException and keep database file when reading records fails.")
+  void migrateShouldThrowExceptionWhenReadingRecordsFails() throws Exception {
+    //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(fileHelperMock);
+    when(fileHelperMock.exists()).thenReturn(true);
+    when(fileHelperMock.getFilePath()).thenReturn("target/invoice_database.txt");
+    when(segmentedFileHelperMock.getMigrationProgressFile()).thenReturn(progressFileHelperMock);
+    when(progressFileHelperMock.exists()).thenReturn(false);
+    doThrow(IOException.class).when(fileHelperMock).forEachRecord(eq(RecordFraming.LINES), any());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> new InFileDatabaseMigrator(segmentedFileHelperMock, jsonCodec, binaryCodec).migrate());
+    verify(fileHelperMock, never()).replaceWith(any());
+    verify(segmentedFileHelperMock, never()).getIndexFile();
+    verify(progressFileHelperMock, never()).writeAtomically(any());
+  }
+
+  @Test
+  @DisplayName("Should only replace remaining files when earlier migration converted every file.")
+  void migrateShouldReplaceRemainingFilesWhenEarlierMigrationConvertedEveryFile() throws Exception {
+    //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(fileHelperMock);
+    when(fileHelperMock.exists()).thenReturn(true);
+    when(fileHelperMock.getFilePath()).thenReturn("target/invoice_database.txt");
+    when(segmentedFileHelperMock.getMigrationProgressFile()).thenReturn(progressFileHelperMock);
+    when(progressFileHelperMock.exists()).thenReturn(true);
+    when(progressFileHelperMock.readAllBytes()).thenReturn("7".getBytes(StandardCharsets.UTF_8));
+    when(segmentedFileHelperMock.getIndexFile()).thenReturn(indexFileHelperMock);
+
+    //when
+    int migratedRecords = new InFileDatabaseMigrator(segmentedFileHelperMock, jsonCodec, binaryCodec).migrate();
+
+    //then
+    assertEquals(7, migratedRecords);
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    verify(indexFileHelperMock).delete();
+    verify(progressFileHelperMock).delete();
+  }
+
+  @Test
+  @DisplayName("Should throw exception when null arguments are passed to constructor.")
+  void constructorShouldThrowExceptionForNullArguments() {
+    assertThrows(IllegalArgumentException.class, () -> new InFileDatabaseMigrator(null, jsonCodec, binaryCodec));
+    assertThrows(IllegalArgumentException.class, () -> new InFileDatabaseMigrator(segmentedFileHelperMock, null, binaryCodec));
+    assertThrows(IllegalArgumentException.class, () -> new InFileDatabaseMigrator(segmentedFileHelperMock, jsonCodec, null));
+  }
+}
@@ -0,0 +1,87 @@
+package pl.coderstrust.database.invoice;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.coderstrust.configuration.InFileDatabaseProperties;
+import pl.coderstrust.database.DatabaseOperationException;
+
+@ExtendWith(MockitoExtension.class)
+class InFileInvoiceDatabaseCompactorTest {
+
+  @Mock
+  private InFileInvoiceDatabase database;
+
+  private InFileDatabaseProperties properties;
+
+  private InFileInvoiceDatabaseCompactor compactor;
+
+  @BeforeEach
+  void setUp() {
+    properties = new InFileDatabaseProperties();
+    properties.setGarbageRatioThreshold(0.5);
+    compactor = new InFileInvoiceDatabaseCompactor(database, properties);
+  }
+
+  @Test
+  @DisplayName("Should compact database segments using configured garbage ratio threshold.")
+  void shouldCompactDatabaseUsingConfiguredThreshold() throws DatabaseOperationException {
+    //given
+    when(database.compact(0.5)).thenReturn(2);
+
+    //when
+    compactor.compactIfNeeded();
+
+    //then
+    verify(database).compact(0.5);
+    verify(database).getGarbageRatio();
+  }
+
+  @Test
+  @DisplayName("Should not report garbage ratio when no segment was compacted.")
+  void shouldNotReportGarbageRatioWhenNothingWasCompacted() throws DatabaseOperationException {
+    //given
+    when(database.compact(0.5)).thenReturn(0);
+
+    //when
+    compactor.compactIfNeeded();
+
+    //then
+    verify(database).compact(0.5);
+    verify(database, never()).getGarbageRatio();
+  }
+
+  @Test
+  @DisplayName("Should not propagate exception when compaction fails.")
+  void shouldNotPropagateExceptionWhenCompactionFails() throws DatabaseOperationException {
+    //given
+    doThrow(DatabaseOperationException.class).when(database).compact(0.5);
+
+    //when
+    compactor.compactIfNeeded();
+
+    //then
+    verify(database).compact(0.5);
+  }
+
+  @Test
+  @DisplayName("Should throw IllegalArgumentException when null is passed as database to constructor.")
+  void constructorShouldThrowExceptionForNullDatabase() {
+    assertThrows(IllegalArgumentException.class, () -> new InFileInvoiceDatabaseCompactor(null, properties));
+  }
+
+  @Test
+  @DisplayName("Should throw IllegalArgumentException when null is passed as properties to constructor.")
+  void constructorShouldThrowExceptionForNullProperties() {
+    assertThrows(IllegalArgumentException.class, () -> new InFileInvoiceDatabaseCompactor(database, null));
+  }
+}
@@ -3,22 +3,34 @@ package pl.coderstrust.database.invoice;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pl.coderstrust.generators.InvoiceGenerator.copyInvoice;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoice;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoId;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificId;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificSellerName;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -32,22 +44,51 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.configuration.InFileDatabaseProperties;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.helpers.FileAppender;
 import pl.coderstrust.helpers.FileHelper;
 import pl.coderstrust.helpers.FileHelperException;
+import pl.coderstrust.helpers.FsyncPolicy;
+import pl.coderstrust.helpers.MappedFile;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.helpers.RecordValidator;
+import pl.coderstrust.helpers.RecordVisitor;
+import pl.coderstrust.helpers.RecoveryReport;
+import pl.coderstrust.helpers.SegmentedFileHelper;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ExtendWith(MockitoExtension.class)
 class InFileInvoiceDatabaseTest {
 
   private static ObjectMapper mapper = new ApplicationConfiguration().getObjectMapper();
 
+  @Mock
+  private SegmentedFileHelper segmentedFileHelperMock;
+
   @Mock
   private FileHelper fileHelperMock;
 
+  @Mock
+  private FileHelper legacyFileHelperMock;
+
+  @Mock
+  private FileHelper secondSegmentFileHelperMock;
+
+  @Mock
+  private FileHelper indexFileHelperMock;
+
+  @Mock
+  private FileAppender appenderMock;
+
+  @Mock
+  private FileAppender secondAppenderMock;
+
   private InvoiceDatabase database;
 
   private static Stream<Arguments> countInvoicesTestParameters() throws IOException {
@@ -62,38 +103,366 @@ class InFileInvoiceDatabaseTest {
   }
 
   @BeforeEach
-  void setUp() throws DatabaseOperationException {
-    database = new InFileInvoiceDatabase(fileHelperMock, mapper);
+  void setUp() throws DatabaseOperationException, IOException {
+    lenient().when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.singletonList(1));
+    lenient().when(segmentedFileHelperMock.getSegment(1)).thenReturn(fileHelperMock);
+    lenient().when(segmentedFileHelperMock.getMaxSegmentSize()).thenReturn(Long.MAX_VALUE);
+    lenient().when(segmentedFileHelperMock.getIndexFile()).thenReturn(indexFileHelperMock);
+    lenient().when(fileHelperMock.openAppender(RecordFraming.LINES, FsyncPolicy.EVERY_WRITE, 1000L)).thenReturn(appenderMock);
+    lenient().when(fileHelperMock.recover(any(), anyLong(), any(), any())).thenReturn(new RecoveryReport(0, 0, 0, false));
+    lenient().when(secondSegmentFileHelperMock.recover(any(), anyLong(), any(), any())).thenReturn(new RecoveryReport(0, 0, 0, false));
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+  }
+
+  private InvoiceDatabase createDatabaseWithContent(List<String> lines) throws IOException, DatabaseOperationException {
+    stubSegmentContent(fileHelperMock, lines);
+    return new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+  }
+
+  private void stubSegmentContent(FileHelper segmentFileHelperMock, List<String> lines) throws IOException {
+    lenient().doAnswer(invocation -> visitLines(lines, invocation.getArgument(1)))
+        .when(segmentFileHelperMock).forEachRecord(eq(RecordFraming.LINES), any());
+    lenient().doAnswer(invocation -> visitLines(lines, invocation.getArgument(2)))
+        .when(segmentFileHelperMock).forEachRecord(eq(RecordFraming.LINES), eq(0L), any());
+    lenient().doAnswer(invocation -> {
+      RecordValidator validator = invocation.getArgument(2);
+      long validRecords = 0;
+      for (int i = 0; i < lines.size(); i++) {
+        if (validator.accept(getLineOffset(lines, i), toRecord(lines.get(i)))) {
+          validRecords++;
+        }
+      }
+      return new RecoveryReport(validRecords, lines.size() - validRecords, 0, false);
+    }).when(segmentFileHelperMock).recover(eq(RecordFraming.LINES), eq(0L), any(), any());
+    lenient().doAnswer(invocation -> {
+      RecordVisitor visitor = invocation.getArgument(2);
+      for (int i = 0; i < lines.size(); i++) {
+        long offset = getLineOffset(lines, i);
+        if (Arrays.stream((long[]) invocation.getArgument(1)).anyMatch(requestedOffset -> requestedOffset == offset)) {
+          visitor.visit(offset, toRecord(lines.get(i)));
+        }
+      }
+      return null;
+    }).when(segmentFileHelperMock).readRecords(eq(RecordFraming.LINES), any(), any());
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i);
+      lenient().when(segmentFileHelperMock.readRecord(RecordFraming.LINES, getLineOffset(lines, i))).thenAnswer(invocation -> toRecord(line));
+    }
+  }
+
+  private long visitLines(List<String> lines, RecordVisitor visitor) throws IOException {
+    for (int i = 0; i < lines.size(); i++) {
+      visitor.visit(getLineOffset(lines, i), toRecord(lines.get(i)));
+    }
+    return getLineOffset(lines, lines.size());
+  }
+
+  private ByteBuffer toRecord(String line) {
+    return ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private byte[] toBytes(String line) {
+    return line.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String getTombstone(String invoiceId) throws IOException {
+    return mapper.writeValueAsString(Collections.singletonMap("tombstone", invoiceId));
+  }
+
+  private long getLineOffset(List<String> lines, int lineIndex) {
+    long offset = 0;
+    for (int i = 0; i < lineIndex; i++) {
+      offset += lines.get(i).length() + 1;
+    }
+    return offset;
   }
 
   @Test
   @DisplayName("Should throw DatabaseOperationException when FileHelper.initialize() throws IOException.")
   void constructorShouldThrowExceptionWhenFileHelperInitializeThrowsIoException() throws IOException, FileHelperException {
     //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(legacyFileHelperMock);
     doThrow(IOException.class).when(fileHelperMock).initialize();
 
     //then
-    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(fileHelperMock, mapper));
+    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(segmentedFileHelperMock, mapper));
   }
 
   @Test
   @DisplayName("Should throw DatabaseOperationException when FileHelper.initialize() throws FileHelperException.")
   void constructorShouldThrowExceptionWhenFileHelperInitializeThrowsFileHelperException() throws IOException, FileHelperException {
     //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(legacyFileHelperMock);
     doThrow(FileHelperException.class).when(fileHelperMock).initialize();
 
     //then
-    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(fileHelperMock, mapper));
+    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(segmentedFileHelperMock, mapper));
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException when FileHelper.recover() throws IOException.")
+  void constructorShouldThrowExceptionWhenFileHelperRecoverThrowsException() throws IOException {
+    //given
+    doThrow(IOException.class).when(fileHelperMock).recover(any(), anyLong(), any(), any());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(segmentedFileHelperMock, mapper));
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when FileHelper.readLastLine() throws IOException.")
-  void constructorShouldThrowExceptionWhenFileHelperReadLastLineThrowsException() throws IOException {
+  @DisplayName("Should create first segment when database is opened and no segment exists.")
+  void constructorShouldInitializeFirstSegmentWhenNoSegmentExists() throws Exception {
     //given
-    doThrow(IOException.class).when(fileHelperMock).readLastLine();
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(legacyFileHelperMock);
+    when(legacyFileHelperMock.exists()).thenReturn(false);
+
+    //when
+    new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    verify(fileHelperMock).initialize();
+    verify(fileHelperMock, never()).replaceWith(any());
+  }
+
+  @Test
+  @DisplayName("Should adopt legacy single-file database as first segment when no segment exists.")
+  void constructorShouldAdoptLegacyDatabaseFileAsFirstSegment() throws Exception {
+    //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Collections.emptyList());
+    when(segmentedFileHelperMock.getLegacyFile()).thenReturn(legacyFileHelperMock);
+    when(legacyFileHelperMock.exists()).thenReturn(true);
+    when(legacyFileHelperMock.getFilePath()).thenReturn("invoice_database.txt");
+
+    //when
+    new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    verify(fileHelperMock).replaceWith("invoice_database.txt");
+    verify(fileHelperMock, never()).initialize();
+  }
+
+  @Test
+  @DisplayName("Should read invoices from all segments when database is opened.")
+  void shouldReadInvoicesFromAllSegments() throws Exception {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    Invoice updatedInvoice1 = getRandomInvoiceWithSpecificId("1");
+    List<String> firstSegmentLines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2));
+    List<String> secondSegmentLines = Arrays.asList(mapper.writeValueAsString(updatedInvoice1), getTombstone("2"));
+    stubSegmentContent(fileHelperMock, firstSegmentLines);
+    stubSegmentContent(secondSegmentFileHelperMock, secondSegmentLines);
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Arrays.asList(1, 2));
+    when(segmentedFileHelperMock.getSegment(2)).thenReturn(secondSegmentFileHelperMock);
+
+    //when
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    assertEquals(Collections.singletonList(updatedInvoice1), database.findAll());
+    assertEquals(Optional.of(updatedInvoice1), database.findById("1"));
+    verify(secondSegmentFileHelperMock).readRecord(RecordFraming.LINES, 0L);
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
+    assertFalse(database.existsById("2"));
+  }
+
+  @Test
+  @DisplayName("Should read sealed segments through memory mapping when memory-mapped reads are enabled.")
+  void shouldReadSealedSegmentsThroughMemoryMappingWhenEnabled() throws Exception {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    List<String> sealedSegmentLines = Arrays.asList(mapper.writeValueAsString(invoice1), getTombstone("3"));
+    String sealedSegmentContent = String.format("%s\n%s\n", sealedSegmentLines.get(0), sealedSegmentLines.get(1));
+    List<String> activeSegmentLines = Collections.singletonList(mapper.writeValueAsString(invoice2));
+    when(fileHelperMock.map()).thenReturn(new MappedFile(ByteBuffer.wrap(sealedSegmentContent.getBytes(StandardCharsets.UTF_8))));
+    stubSegmentContent(fileHelperMock, sealedSegmentLines);
+    stubSegmentContent(secondSegmentFileHelperMock, activeSegmentLines);
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Arrays.asList(1, 2));
+    when(segmentedFileHelperMock.getSegment(2)).thenReturn(secondSegmentFileHelperMock);
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setMemoryMappedReads(true);
+    when(secondSegmentFileHelperMock.openAppender(RecordFraming.LINES, FsyncPolicy.EVERY_WRITE, 1000L)).thenReturn(secondAppenderMock);
+    clearInvocations(fileHelperMock);
+
+    //when
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper, properties);
 
     //then
-    assertThrows(DatabaseOperationException.class, () -> new InFileInvoiceDatabase(fileHelperMock, mapper));
+    assertEquals(Arrays.asList(invoice1, invoice2), database.findAll());
+    assertEquals(Optional.of(invoice1), database.findById("1"));
+    assertEquals(Optional.of(invoice2), database.findById("2"));
+    assertEquals("4", database.save(getRandomInvoice()).getId());
+    verify(fileHelperMock).map();
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
+    verify(secondSegmentFileHelperMock, never()).map();
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException when memory mapping of sealed segment fails.")
+  void findAllShouldThrowExceptionWhenFileHelperMapThrowsException() throws Exception {
+    //given
+    stubSegmentContent(fileHelperMock, Collections.singletonList(mapper.writeValueAsString(getRandomInvoiceWithSpecificId("1"))));
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Arrays.asList(1, 2));
+    when(segmentedFileHelperMock.getSegment(2)).thenReturn(secondSegmentFileHelperMock);
+    when(fileHelperMock.map()).thenThrow(IOException.class);
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setMemoryMappedReads(true);
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper, properties);
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.findAll());
+  }
+
+  @Test
+  @DisplayName("Should not index records rejected during recovery and report recovery counts.")
+  void constructorShouldSkipRecordsRejectedDuringRecovery() throws Exception {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice), "{}", "invalid", "{\"id\":\"not-a-number\"}");
+
+    //when
+    InFileInvoiceDatabase database = (InFileInvoiceDatabase) createDatabaseWithContent(lines);
+
+    //then
+    assertEquals(1L, database.count());
+    assertEquals(Optional.of(invoice), database.findById("1"));
+    assertEquals(1L, database.getRecoveryReport().getValidRecords());
+    assertEquals(3L, database.getRecoveryReport().getCorruptRecords());
+    assertEquals(0.0, database.getGarbageRatio());
+  }
+
+  @Test
+  @DisplayName("Should index segment again when recovery rewrote it.")
+  void constructorShouldIndexSegmentAgainWhenRecoveryRewroteIt() throws Exception {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    List<String> lines = Collections.singletonList(mapper.writeValueAsString(invoice));
+    stubSegmentContent(fileHelperMock, lines);
+    doAnswer(invocation -> {
+      RecordValidator validator = invocation.getArgument(2);
+      validator.accept(100L, toRecord(lines.get(0)));
+      return new RecoveryReport(1, 1, 10, true);
+    }).when(fileHelperMock).recover(eq(RecordFraming.LINES), eq(0L), any(), any());
+
+    //when
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    assertEquals(Optional.of(invoice), database.findById("1"));
+    verify(fileHelperMock).readRecord(RecordFraming.LINES, 0L);
+    assertEquals(10L, database.getRecoveryReport().getTruncatedBytes());
+  }
+
+  @Test
+  @DisplayName("Should load index from checkpoint without scanning segments which did not change since checkpoint.")
+  void constructorShouldLoadIndexFromCheckpoint() throws Exception {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    invoice1.setIssueDate(LocalDate.of(2019, 1, 1));
+    invoice1.setComments(null);
+    Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    invoice2.setIssueDate(LocalDate.of(2019, 2, 1));
+    List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2));
+    when(fileHelperMock.size()).thenReturn(getLineOffset(lines, lines.size()));
+    InFileInvoiceDatabase database = (InFileInvoiceDatabase) createDatabaseWithContent(lines);
+    database.close();
+    ArgumentCaptor<byte[]> checkpoint = ArgumentCaptor.forClass(byte[].class);
+    verify(indexFileHelperMock).writeAtomically(checkpoint.capture());
+    when(indexFileHelperMock.exists()).thenReturn(true);
+    when(indexFileHelperMock.readAllBytes()).thenReturn(checkpoint.getValue());
+    clearInvocations(fileHelperMock);
+
+    //when
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    verify(fileHelperMock, never()).recover(any(), anyLong(), any(), any());
+    assertEquals(Arrays.asList(new InvoiceSummary(invoice1), new InvoiceSummary(invoice2)), reopenedDatabase.findAllSummaries());
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    assertEquals(2L, reopenedDatabase.count());
+    assertEquals(Optional.of(invoice2), reopenedDatabase.findById("2"));
+    assertEquals(Collections.singletonList(invoice2), reopenedDatabase.findAllByIssueDateBetween(LocalDate.of(2019, 2, 1), LocalDate.of(2019, 2, 1)));
+    assertEquals("3", reopenedDatabase.save(getRandomInvoice()).getId());
+  }
+
+  @Test
+  @DisplayName("Should rebuild index from segments when checkpoint is corrupted.")
+  void constructorShouldIgnoreCorruptedCheckpoint() throws Exception {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    when(indexFileHelperMock.exists()).thenReturn(true);
+    when(indexFileHelperMock.readAllBytes()).thenReturn(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    stubSegmentContent(fileHelperMock, Collections.singletonList(mapper.writeValueAsString(invoice)));
+    clearInvocations(fileHelperMock);
+
+    //when
+    InvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //then
+    verify(fileHelperMock).recover(eq(RecordFraming.LINES), eq(0L), any(), any());
+    assertEquals(Optional.of(invoice), database.findById("1"));
+  }
+
+  @Test
+  @DisplayName("Should write index checkpoint after configured number of appended records.")
+  void saveShouldWriteCheckpointAfterConfiguredNumberOfRecords() throws Exception {
+    //given
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setIndexCheckpointInterval(2);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper, properties);
+
+    //when
+    database.save(getRandomInvoice());
+    verify(indexFileHelperMock, never()).writeAtomically(any());
+    database.save(getRandomInvoice());
+
+    //then
+    verify(appenderMock).flush();
+    verify(indexFileHelperMock).writeAtomically(any());
+  }
+
+  @Test
+  @DisplayName("Should start new segment when active segment reaches maximum size.")
+  void saveShouldRollOverToNewSegmentWhenActiveSegmentIsFull() throws Exception {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    String invoiceAsJson = mapper.writeValueAsString(invoice);
+    when(segmentedFileHelperMock.getMaxSegmentSize()).thenReturn(100L);
+    when(segmentedFileHelperMock.getSegment(2)).thenReturn(secondSegmentFileHelperMock);
+    when(appenderMock.size()).thenReturn(100L);
+    when(secondSegmentFileHelperMock.openAppender(RecordFraming.LINES, FsyncPolicy.EVERY_WRITE, 1000L)).thenReturn(secondAppenderMock);
+
+    //when
+    database.save(invoice);
+
+    //then
+    verify(secondSegmentFileHelperMock).initialize();
+    verify(appenderMock).close();
+    verify(secondAppenderMock).append(aryEq(toBytes(invoiceAsJson)));
+    verify(appenderMock, never()).append(any());
+  }
+
+  @Test
+  @DisplayName("Should remove sealed segments when deleteAll is invoked.")
+  void deleteAllShouldRemoveSealedSegments() throws Exception {
+    //given
+    when(segmentedFileHelperMock.listSegments()).thenReturn(Arrays.asList(1, 2));
+    when(segmentedFileHelperMock.getSegment(2)).thenReturn(secondSegmentFileHelperMock);
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper);
+
+    //when
+    database.deleteAll();
+
+    //then
+    verify(fileHelperMock).delete();
+    verify(secondSegmentFileHelperMock).clear();
+    verify(secondSegmentFileHelperMock, never()).delete();
   }
 
   @Test
@@ -104,15 +473,13 @@ class InFileInvoiceDatabaseTest {
     Invoice expectedInvoice = copyInvoice(invoice);
     expectedInvoice.setId("1");
     String expectedInvoiceAsJson = mapper.writeValueAsString(expectedInvoice);
-    when(fileHelperMock.readLines()).thenReturn(Collections.emptyList());
-    doNothing().when(fileHelperMock).writeLine(expectedInvoiceAsJson);
 
     //when
     Invoice actualInvoice = database.save(invoice);
 
     //then
     assertEquals(expectedInvoice, actualInvoice);
-    verify(fileHelperMock).writeLine(expectedInvoiceAsJson);
+    verify(appenderMock).append(aryEq(toBytes(expectedInvoiceAsJson)));
   }
 
   @Test
@@ -125,9 +492,7 @@ class InFileInvoiceDatabaseTest {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson));
-    doNothing().when(fileHelperMock).writeLine(invoice3AsJson);
-    doNothing().when(fileHelperMock).removeLine(1);
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson));
 
     //when
     Invoice savedInvoice = database.save(invoice3);
@@ -135,21 +500,175 @@ class InFileInvoiceDatabaseTest {
     //then
     assertNotEquals(invoice1, invoice3);
     assertEquals(invoice3, savedInvoice);
-    verify(fileHelperMock).writeLine(invoice3AsJson);
-    verify(fileHelperMock).removeLine(1);
+    verify(appenderMock).append(aryEq(toBytes(invoice3AsJson)));
+    assertEquals(2L, database.count());
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when save is invoked and fileHelper throws exception.")
-  void saveShouldThrowExceptionWhenFileHelperThrowsException() throws IOException {
+  @DisplayName("Should throw DatabaseOperationException when save is invoked and appending invoice fails.")
+  void saveShouldThrowExceptionWhenAppendingInvoiceFails() throws IOException {
     //given
     final Invoice invoice = getRandomInvoiceWithSpecificId("1");
     final String invoiceAsJson = mapper.writeValueAsString(invoice);
-    doThrow(IOException.class).when(fileHelperMock).writeLine(invoiceAsJson);
+    when(appenderMock.append(aryEq(toBytes(invoiceAsJson)))).thenThrow(IOException.class);
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.save(invoice));
-    verify(fileHelperMock).writeLine(invoiceAsJson);
+    verify(appenderMock).append(aryEq(toBytes(invoiceAsJson)));
+  }
+
+  @Test
+  @DisplayName("Should commit appended invoice up to its end position when save is invoked.")
+  void saveShouldCommitAppendedInvoice() throws Exception {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    String invoiceAsJson = mapper.writeValueAsString(invoice);
+    when(appenderMock.size()).thenReturn(10L);
+    when(appenderMock.append(aryEq(toBytes(invoiceAsJson)))).thenReturn(20L);
+
+    //when
+    database.save(invoice);
+
+    //then
+    verify(appenderMock).commit(20L);
+    verify(fileHelperMock, never()).writeLine(any());
+  }
+
+  @Test
+  @DisplayName("Should append all invoices and commit them once when saveAll is invoked.")
+  void saveAllShouldAppendInvoicesAndCommitOnce() throws Exception {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithNoId();
+    Invoice invoice2 = getRandomInvoiceWithNoId();
+    when(appenderMock.append(any())).thenReturn(20L, 30L);
+
+    //when
+    List<Invoice> savedInvoices = (List<Invoice>) database.saveAll(Arrays.asList(invoice1, invoice2));
+
+    //then
+    assertEquals(Arrays.asList("1", "2"), Arrays.asList(savedInvoices.get(0).getId(), savedInvoices.get(1).getId()));
+    assertNull(invoice1.getId());
+    verify(appenderMock, times(2)).append(any());
+    verify(appenderMock).commit(30L);
+    verify(appenderMock, times(1)).commit(anyLong());
+    assertTrue(database.existsById("2"));
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException when saveAll is invoked and commit fails.")
+  void saveAllShouldThrowExceptionWhenCommitFails() throws Exception {
+    //given
+    doThrow(IOException.class).when(appenderMock).commit(anyLong());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.saveAll(Arrays.asList(getRandomInvoiceWithNoId(), getRandomInvoiceWithNoId())));
+    assertEquals(0L, database.count());
+    assertEquals(Collections.emptyList(), database.findAllSummaries());
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException when save is invoked and commit fails.")
+  void saveShouldThrowExceptionWhenCommitFails() throws Exception {
+    //given
+    doThrow(IOException.class).when(appenderMock).commit(anyLong());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.save(getRandomInvoiceWithSpecificId("1")));
+    assertFalse(database.existsById("1"));
+    assertEquals(Optional.empty(), database.findById("1"));
+    assertEquals(Collections.emptyList(), database.findAllSummaries());
+  }
+
+  @Test
+  @DisplayName("Should make saved invoice readable only after its commit succeeds.")
+  void saveShouldRegisterInvoiceAfterCommit() throws Exception {
+    //given
+    List<Boolean> existsDuringCommit = new ArrayList<>();
+    doAnswer(invocation -> existsDuringCommit.add(database.existsById("1"))).when(appenderMock).commit(anyLong());
+
+    //when
+    database.save(getRandomInvoiceWithSpecificId("1"));
+
+    //then
+    assertEquals(Collections.singletonList(false), existsDuringCommit);
+    assertTrue(database.existsById("1"));
+    assertEquals(1, ((List<InvoiceSummary>) database.findAllSummaries()).size());
+  }
+
+  @Test
+  @DisplayName("Should keep invoice when deleteById is invoked and commit of tombstone fails.")
+  void deleteByIdShouldKeepInvoiceWhenCommitFails() throws Exception {
+    //given
+    database.save(getRandomInvoiceWithSpecificId("1"));
+    doThrow(IOException.class).when(appenderMock).commit(anyLong());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> database.deleteById("1"));
+    assertTrue(database.existsById("1"));
+  }
+
+  @Test
+  @DisplayName("Should open appender with configured fsync policy.")
+  void saveShouldOpenAppenderWithConfiguredFsyncPolicy() throws Exception {
+    //given
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setFsyncPolicy(FsyncPolicy.INTERVAL);
+    properties.setFsyncInterval(50);
+    when(fileHelperMock.openAppender(RecordFraming.LINES, FsyncPolicy.INTERVAL, 50L)).thenReturn(secondAppenderMock);
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper, properties);
+
+    //when
+    database.save(getRandomInvoice());
+    database.save(getRandomInvoice());
+
+    //then
+    verify(fileHelperMock).openAppender(RecordFraming.LINES, FsyncPolicy.INTERVAL, 50L);
+    verify(secondAppenderMock, times(2)).append(any());
+  }
+
+  @Test
+  @DisplayName("Should append length-prefixed binary records when binary record format is configured.")
+  void saveShouldAppendBinaryRecordWhenBinaryRecordFormatIsConfigured() throws Exception {
+    //given
+    InvoiceRecordCodec codec = new BinaryInvoiceRecordCodec();
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setRecordFormat(RecordFormat.BINARY);
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    when(fileHelperMock.openAppender(RecordFraming.LENGTH_PREFIXED, FsyncPolicy.EVERY_WRITE, 1000L)).thenReturn(secondAppenderMock);
+    database = new InFileInvoiceDatabase(segmentedFileHelperMock, mapper, properties);
+
+    //when
+    database.save(invoice);
+
+    //then
+    verify(fileHelperMock).recover(eq(RecordFraming.LENGTH_PREFIXED), eq(0L), any(), any());
+    verify(secondAppenderMock).append(aryEq(codec.encodeInvoice(invoice)));
+  }
+
+  @Test
+  @DisplayName("Should close appender when database is closed.")
+  void closeShouldCloseAppender() throws Exception {
+    //given
+    InFileInvoiceDatabase inFileDatabase = (InFileInvoiceDatabase) database;
+    inFileDatabase.save(getRandomInvoice());
+
+    //when
+    inFileDatabase.close();
+
+    //then
+    verify(appenderMock).close();
+  }
+
+  @Test
+  @DisplayName("Should throw DatabaseOperationException when closing appender fails.")
+  void closeShouldThrowExceptionWhenAppenderCloseFails() throws Exception {
+    //given
+    InFileInvoiceDatabase inFileDatabase = (InFileInvoiceDatabase) database;
+    inFileDatabase.save(getRandomInvoice());
+    doThrow(IOException.class).when(appenderMock).close();
+
+    //then
+    assertThrows(DatabaseOperationException.class, inFileDatabase::close);
   }
 
   @Test
@@ -162,14 +681,90 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    final List<String> lines = Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson);
+    database = createDatabaseWithContent(lines);
 
     //when
     Optional<Invoice> actualInvoice = database.findById(invoice2.getId());
 
     //then
     assertEquals(Optional.of(invoice2), actualInvoice);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock).readRecord(RecordFraming.LINES, getLineOffset(lines, 1));
+    verify(fileHelperMock, never()).readLines();
+  }
+
+  @Test
+  @DisplayName("Should read only invoices issued in given date range when findAllByIssueDateBetween is invoked.")
+  void shouldReturnInvoicesIssuedInGivenDateRange() throws DatabaseOperationException, IOException {
+    //given
+    final Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    invoice1.setIssueDate(LocalDate.of(2019, 1, 1));
+    final Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    invoice2.setIssueDate(LocalDate.of(2019, 1, 15));
+    final Invoice invoice3 = getRandomInvoiceWithSpecificId("3");
+    invoice3.setIssueDate(LocalDate.of(2019, 2, 1));
+    final List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2),
+        mapper.writeValueAsString(invoice3));
+    database = createDatabaseWithContent(lines);
+
+    //when
+    Iterable<Invoice> actualInvoices = database.findAllByIssueDateBetween(LocalDate.of(2019, 1, 10), LocalDate.of(2019, 2, 1));
+
+    //then
+    assertEquals(Arrays.asList(invoice2, invoice3), actualInvoices);
+    verify(fileHelperMock, never()).readRecord(RecordFraming.LINES, getLineOffset(lines, 0));
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+  }
+
+  @Test
+  @DisplayName("Should read only invoices from requested page when findPage is invoked.")
+  void shouldReturnPageOfInvoicesOrderedById() throws DatabaseOperationException, IOException {
+    //given
+    final Invoice invoice1 = getRandomInvoiceWithSpecificId("10");
+    final Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    final Invoice invoice3 = getRandomInvoiceWithSpecificId("9");
+    final List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2),
+        mapper.writeValueAsString(invoice3));
+    database = createDatabaseWithContent(lines);
+
+    //when
+    Iterable<Invoice> firstPage = database.findPage(null, 2);
+    Iterable<Invoice> secondPage = database.findPage("9", 2);
+
+    //then
+    assertEquals(Arrays.asList(invoice2, invoice3), firstPage);
+    assertEquals(Collections.singletonList(invoice1), secondPage);
+    verify(fileHelperMock).readRecords(eq(RecordFraming.LINES), aryEq(new long[] {getLineOffset(lines, 1), getLineOffset(lines, 2)}), any());
+    verify(fileHelperMock).readRecords(eq(RecordFraming.LINES), aryEq(new long[] {getLineOffset(lines, 0)}), any());
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    assertThrows(IllegalArgumentException.class, () -> database.findPage(null, 0));
+  }
+
+  @Test
+  @DisplayName("Should serve summaries built during recovery without reading invoices when findSummaryPage is invoked.")
+  void shouldReturnPageOfInvoiceSummariesOrderedById() throws DatabaseOperationException, IOException {
+    //given
+    final Invoice invoice1 = getRandomInvoiceWithSpecificId("10");
+    final Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    final Invoice invoice3 = getRandomInvoiceWithSpecificId("9");
+    final List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2),
+        mapper.writeValueAsString(invoice3));
+    database = createDatabaseWithContent(lines);
+
+    //when
+    Iterable<InvoiceSummary> firstPage = database.findSummaryPage(null, 2);
+    Iterable<InvoiceSummary> repeatedFirstPage = database.findSummaryPage(null, 2);
+    Iterable<InvoiceSummary> secondPage = database.findSummaryPage("9", 2);
+
+    //then
+    assertEquals(Arrays.asList(new InvoiceSummary(invoice2), new InvoiceSummary(invoice3)), firstPage);
+    assertEquals(firstPage, repeatedFirstPage);
+    assertEquals(Collections.singletonList(new InvoiceSummary(invoice1)), secondPage);
+    assertEquals(Arrays.asList(new InvoiceSummary(invoice2), new InvoiceSummary(invoice3), new InvoiceSummary(invoice1)), database.findAllSummaries());
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
+    verify(fileHelperMock, never()).forEachRecord(any(), any());
+    assertThrows(IllegalArgumentException.class, () -> database.findSummaryPage(null, 0));
   }
 
   @Test
@@ -177,53 +772,55 @@ class InFileInvoiceDatabaseTest {
   void findByIdShouldReturnEmptyOptionalWhenInvoiceDoesNotExist() throws DatabaseOperationException, IOException {
     //given
     final String invoiceAsJson = mapper.writeValueAsString(getRandomInvoice());
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList(invoiceAsJson));
+    database = createDatabaseWithContent(Collections.singletonList(invoiceAsJson));
 
     //when
     Optional<Invoice> actualInvoice = database.findById("-1");
 
     //then
     assertEquals(Optional.empty(), actualInvoice);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
   }
 
   @Test
   @DisplayName("Should return empty optional when findById is invoked and input stream is empty.")
   void findByIdShouldReturnEmptyOptionalWhenInputStreamIsEmpty() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.emptyList());
+    database = createDatabaseWithContent(Collections.emptyList());
 
     //when
     Optional<Invoice> actualInvoice = database.findById("-1");
 
     //then
     assertEquals(Optional.empty(), actualInvoice);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
   }
 
   @Test
   @DisplayName("Should return empty optional when findById is invoked and input stream contains invalid data.")
   void findByIdShouldReturnEmptyOptionalWhenInputStreamContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     Optional<Invoice> actualInvoice = database.findById("-1");
 
     //then
     assertEquals(Optional.empty(), actualInvoice);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readRecord(any(), anyLong());
   }
 
   @Test
   @DisplayName("Should throw DatabaseOperationException when findById is invoked and fileHelper throws exception.")
-  void findByIdShouldThrowExceptionWhenFileHelperThrowsException() throws IOException {
+  void findByIdShouldThrowExceptionWhenFileHelperThrowsException() throws IOException, DatabaseOperationException {
     //given
-    doThrow(IOException.class).when(fileHelperMock).readLines();
+    Invoice invoice = getRandomInvoice();
+    database = createDatabaseWithContent(Collections.singletonList(mapper.writeValueAsString(invoice)));
+    doThrow(IOException.class).when(fileHelperMock).readRecord(RecordFraming.LINES, 0L);
 
     //then
-    assertThrows(DatabaseOperationException.class, () -> database.findById(getRandomInvoice().getId()));
-    verify(fileHelperMock).readLines();
+    assertThrows(DatabaseOperationException.class, () -> database.findById(invoice.getId()));
+    verify(fileHelperMock).readRecord(RecordFraming.LINES, 0L);
   }
 
   @Test
@@ -236,53 +833,51 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAll();
 
     //then
     assertEquals(Arrays.asList(invoice1, invoice2, invoice3), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAll is invoked and input stream is empty.")
   void findAllShouldReturnEmptyListWhenInputStreamIsEmpty() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.emptyList());
+    database = createDatabaseWithContent(Collections.emptyList());
 
     //when
     Iterable<Invoice> actualInvoices = database.findAll();
 
     //then
     assertEquals(new ArrayList<>(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAll is invoked and input stream contains invalid data.")
   void findAllShouldReturnEmptyListWhenInputStreamContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAll();
 
     //then
     assertEquals(new ArrayList<>(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when findAll is invoked and fileHelper.readLines throws exception.")
-  void findAllShouldThrowExceptionWhenFileHelperReadLinesThrowsException() throws IOException {
+  @DisplayName("Should throw DatabaseOperationException when findAll is invoked and reading records through fileHelper.forEachRecord throws exception.")
+  void findAllShouldThrowExceptionWhenFileHelperForEachRecordThrowsException() throws IOException, DatabaseOperationException {
     //given
-    doThrow(IOException.class).when(fileHelperMock).readLines();
+    database = createDatabaseWithContent(Collections.singletonList(mapper.writeValueAsString(getRandomInvoice())));
+    doThrow(IOException.class).when(fileHelperMock).forEachRecord(any(), any());
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findAll());
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock).forEachRecord(any(), any());
   }
 
   @Test
@@ -295,42 +890,39 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllBySellerName(invoice1.getSeller().getName());
 
     //then
     assertEquals(Arrays.asList(invoice1, invoice2), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAllBySellerName is invoked and input stream is empty.")
   void findAllBySellerNameShouldReturnEmptyListWhenInputStreamEmpty() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.emptyList());
+    database = createDatabaseWithContent(Collections.emptyList());
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllBySellerName(getRandomInvoice().getSeller().getName());
 
     //then
     assertEquals(Collections.emptyList(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAllBySellerName is invoked and input stream contains invalid data.")
   void findAllInvoicesBySellerNameShouldReturnEmptyListWhenInputStreamContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllBySellerName("Sample Company");
 
     //then
     assertEquals(new ArrayList<>(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
@@ -343,26 +935,26 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     Iterable<Invoice> actualInvoicesBySellerName = database.findAllBySellerName("A.C.M.E. Incorporated");
 
     //then
     assertEquals(Collections.emptyList(), actualInvoicesBySellerName);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when findAllBySellerName is invoked and fileHelper.readLines throws exception.")
-  void findAllBySellerNameShouldThrowExceptionWhenFileHelperReadLinesThrowsException() throws IOException {
+  @DisplayName("Should throw DatabaseOperationException when findAllBySellerName is invoked and reading records through fileHelper.forEachRecord throws exception.")
+  void findAllBySellerNameShouldThrowExceptionWhenFileHelperForEachRecordThrowsException() throws IOException, DatabaseOperationException {
     //given
     Invoice invoice = getRandomInvoice();
-    doThrow(IOException.class).when(fileHelperMock).readLines();
+    database = createDatabaseWithContent(Collections.singletonList(mapper.writeValueAsString(invoice)));
+    doThrow(IOException.class).when(fileHelperMock).forEachRecord(any(), any());
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findAllBySellerName(invoice.getSeller().getName()));
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock).forEachRecord(any(), any());
   }
 
   @Test
@@ -375,42 +967,39 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllByBuyerName(invoice1.getBuyer().getName());
 
     //then
     assertEquals(Arrays.asList(invoice1, invoice3), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAllByBuyerName is invoked and input stream is empty.")
   void shouldReturnEmptyListWhenFindAllByBuyerNameInvokedAndInputStreamIsEmpty() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.emptyList());
+    database = createDatabaseWithContent(Collections.emptyList());
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllByBuyerName(getRandomInvoice().getBuyer().getName());
 
     //then
     assertEquals(Collections.emptyList(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return empty list when findAllByBuyerName is invoked and input stream contains invalid data.")
   void findAllByBuyerNameShouldReturnEmptyListWhenInputStreamContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     Iterable<Invoice> actualInvoices = database.findAllByBuyerName(getRandomInvoice().getBuyer().getName());
 
     //then
     assertEquals(Collections.emptyList(), actualInvoices);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
@@ -423,25 +1012,25 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     Iterable<Invoice> actualInvoicesByBuyerName = database.findAllByBuyerName("A.C.M.E. Incorporated");
 
     //then
     assertEquals(Collections.emptyList(), actualInvoicesByBuyerName);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when findAllByBuyerName is invoked and fileHelper.readLines throws exception.")
-  void findAllByBuyerNameShouldThrowExceptionWhenFileHelperReadLinesThrowsException() throws IOException {
+  @DisplayName("Should throw DatabaseOperationException when findAllByBuyerName is invoked and reading records through fileHelper.forEachRecord throws exception.")
+  void findAllByBuyerNameShouldThrowExceptionWhenFileHelperForEachRecordThrowsException() throws IOException, DatabaseOperationException {
     //given
-    doThrow(IOException.class).when(fileHelperMock).readLines();
+    database = createDatabaseWithContent(Collections.singletonList(mapper.writeValueAsString(getRandomInvoice())));
+    doThrow(IOException.class).when(fileHelperMock).forEachRecord(any(), any());
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.findAllByBuyerName(getRandomInvoice().getBuyer().getName()));
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock).forEachRecord(any(), any());
   }
 
   @ParameterizedTest
@@ -449,58 +1038,53 @@ class InFileInvoiceDatabaseTest {
   @MethodSource("countInvoicesTestParameters")
   void shouldReturnInvoiceCount(List<String> invoices, Long expectedInvoiceCount) throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.isEmpty()).thenReturn(false);
-    when(fileHelperMock.readLines()).thenReturn(invoices);
+    database = createDatabaseWithContent(invoices);
 
     //when
     Long actualInvoiceCount = database.count();
 
     //then
     assertEquals(expectedInvoiceCount, actualInvoiceCount);
-    verify(fileHelperMock).isEmpty();
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readLines();
   }
 
   @Test
   @DisplayName("Should return 0 when database is empty and count is invoked.")
   void countShouldReturnZeroWhenDatabaseIsEmpty() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.isEmpty()).thenReturn(false);
+    database = createDatabaseWithContent(Collections.emptyList());
 
     //when
     Long actualInvoiceCount = database.count();
 
     //then
     assertEquals(Long.valueOf(0), actualInvoiceCount);
-    verify(fileHelperMock).isEmpty();
   }
 
   @Test
   @DisplayName("Should return 0 when database contains invalid data and count is invoked.")
   void countShouldReturnZeroWhenDatabaseContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     Long actualInvoiceCount = database.count();
 
     //then
     assertEquals(Long.valueOf(0), actualInvoiceCount);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
   @DisplayName("Should return false when existsById is invoked and input stream contains invalid data.")
   void existsByIdShouldReturnFalseWhenInputStreamContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList("xyz"));
+    database = createDatabaseWithContent(Collections.singletonList("xyz"));
 
     //when
     boolean result = database.existsById("-1");
 
     //then
     assertFalse(result);
-    verify(fileHelperMock).readLines();
   }
 
   @Test
@@ -513,14 +1097,14 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     boolean result = database.existsById(invoice2.getId());
 
     //then
     assertTrue(result);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readLines();
   }
 
   @Test
@@ -533,30 +1117,19 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //when
     boolean result = database.existsById("-1");
 
     //then
     assertFalse(result);
-    verify(fileHelperMock).readLines();
+    verify(fileHelperMock, never()).readLines();
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when existsById invoked and fileHelper throws exception.")
-  void existsByIdShouldThrowExceptionWhenFileHelperReadLinesThrowsException() throws IOException {
-    //given
-    doThrow(IOException.class).when(fileHelperMock).readLines();
-
-    //then
-    assertThrows(DatabaseOperationException.class, () -> database.existsById(getRandomInvoice().getId()));
-    verify(fileHelperMock).readLines();
-  }
-
-  @Test
-  @DisplayName("Should pass proper line number to fileHelper.removeLine when deleteById with specified invoiceId is invoked.")
-  void shouldPassProperLineNumberToFileHelperRemoveLineWhenDeleteByIdInvoked() throws Exception {
+  @DisplayName("Should append tombstone to database file when deleteById with specified invoiceId is invoked.")
+  void shouldAppendTombstoneWhenDeleteByIdInvoked() throws Exception {
     //given
     final Invoice invoice1 = getRandomInvoice();
     final Invoice invoice2 = getRandomInvoice();
@@ -564,19 +1137,21 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
-    doNothing().when(fileHelperMock).removeLine(anyInt());
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    String tombstone = getTombstone(invoice2.getId());
 
     //when
     database.deleteById(invoice2.getId());
 
     //then
-    verify(fileHelperMock).removeLine(2);
+    verify(appenderMock).append(aryEq(toBytes(tombstone)));
+    assertFalse(database.existsById(invoice2.getId()));
+    assertEquals(2L, database.count());
   }
 
   @Test
-  @DisplayName("Should not pass line number to fileHelper.removeLine when deleteById is invoked and invoice with particular id does not exist.")
-  void shouldThrowExceptionWhenTryingPassLineNumberToFileHelperRemoveLineWhenDeleteByIdInvokedAndInvoiceDoesNotExist() throws Exception {
+  @DisplayName("Should not append tombstone when deleteById is invoked and invoice with particular id does not exist.")
+  void shouldThrowExceptionAndNotAppendTombstoneWhenDeleteByIdInvokedAndInvoiceDoesNotExist() throws Exception {
     //given
     final Invoice invoice1 = getRandomInvoice();
     final Invoice invoice2 = getRandomInvoice();
@@ -584,26 +1159,79 @@ class InFileInvoiceDatabaseTest {
     final String invoice1AsJson = mapper.writeValueAsString(invoice1);
     final String invoice2AsJson = mapper.writeValueAsString(invoice2);
     final String invoice3AsJson = mapper.writeValueAsString(invoice3);
-    when(fileHelperMock.readLines()).thenReturn(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
+    database = createDatabaseWithContent(Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson));
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.deleteById("-1"));
-    verify(fileHelperMock, times(0)).removeLine(anyInt());
+    verify(appenderMock, never()).append(any());
   }
 
   @Test
-  @DisplayName("Should throw DatabaseOperationException when deleteById is invoked and fileHelper.removeLine throws exception.")
-  void deleteByIdShouldThrowExceptionWhenFileHelperRemoveLineThrowsException() throws Exception {
+  @DisplayName("Should throw DatabaseOperationException when deleteById is invoked and appending tombstone fails.")
+  void deleteByIdShouldThrowExceptionWhenAppendingTombstoneFails() throws Exception {
     //given
     Invoice invoice = getRandomInvoice();
     String invoiceAsJson = mapper.writeValueAsString(invoice);
-    when(fileHelperMock.readLines()).thenReturn(Collections.singletonList(invoiceAsJson));
-    doThrow(FileHelperException.class).when(fileHelperMock).removeLine(anyInt());
+    database = createDatabaseWithContent(Collections.singletonList(invoiceAsJson));
+    when(appenderMock.append(aryEq(toBytes(getTombstone(invoice.getId()))))).thenThrow(IOException.class);
 
     //then
     assertThrows(DatabaseOperationException.class, () -> database.deleteById(invoice.getId()));
-    verify(fileHelperMock).readLines();
-    verify(fileHelperMock).removeLine(anyInt());
+    assertTrue(database.existsById(invoice.getId()));
+  }
+
+  @Test
+  @DisplayName("Should skip invoices removed by tombstones and older invoice versions when database file is read.")
+  void shouldReplayLogWhenDatabaseFileContainsTombstonesAndUpdates() throws Exception {
+    //given
+    final Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    final Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    final Invoice updatedInvoice1 = getRandomInvoiceWithSpecificId("1");
+    final List<String> lines = Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2),
+        mapper.writeValueAsString(updatedInvoice1), getTombstone("2"));
+
+    //when
+    database = createDatabaseWithContent(lines);
+
+    //then
+    assertEquals(Collections.singletonList(updatedInvoice1), database.findAll());
+    assertEquals(Optional.of(updatedInvoice1), database.findById("1"));
+    assertFalse(database.existsById("2"));
+    assertEquals(1L, database.count());
+  }
+
+  @Test
+  @DisplayName("Should assign id higher than ids of deleted invoices when new invoice is saved.")
+  void saveShouldNotReuseIdsOfDeletedInvoices() throws Exception {
+    //given
+    database = createDatabaseWithContent(Arrays.asList(mapper.writeValueAsString(getRandomInvoiceWithSpecificId("1")), getTombstone("1")));
+
+    //when
+    Invoice savedInvoice = database.save(getRandomInvoiceWithSpecificId("1"));
+
+    //then
+    assertEquals("2", savedInvoice.getId());
+  }
+
+  @Test
+  @DisplayName("Should return ratio of obsolete records to all records in database file when getGarbageRatio is invoked.")
+  void shouldReturnGarbageRatio() throws Exception {
+    //given
+    final List<String> lines = Arrays.asList(mapper.writeValueAsString(getRandomInvoiceWithSpecificId("1")),
+        mapper.writeValueAsString(getRandomInvoiceWithSpecificId("2")), mapper.writeValueAsString(getRandomInvoiceWithSpecificId("1")),
+        getTombstone("2"));
+
+    //when
+    InFileInvoiceDatabase inFileDatabase = (InFileInvoiceDatabase) createDatabaseWithContent(lines);
+
+    //then
+    assertEquals(0.75, inFileDatabase.getGarbageRatio());
+  }
+
+  @Test
+  @DisplayName("Should return 0 as garbage ratio when database file is empty.")
+  void shouldReturnZeroGarbageRatioWhenDatabaseIsEmpty() {
+    assertEquals(0.0, ((InFileInvoiceDatabase) database).getGarbageRatio());
   }
 
   @Test
@@ -6,14 +6,24 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.generators.CompanyGenerator;
 import pl.coderstrust.generators.InvoiceGenerator;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 class InMemoryInvoiceDatabaseTest {
   private InvoiceDatabase database;
@@ -213,6 +223,167 @@ class InMemoryInvoiceDatabaseTest {
     assertArrayEquals(expectedInvoices.toArray(), result.toArray());
   }
 
+  @Test
+  void shouldFindInvoicesByNewSellerAndBuyerNameWhenUpdateChangesThem() throws DatabaseOperationException {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("oldSeller");
+    invoice.setBuyer(CompanyGenerator.getSampleCompany("oldBuyer"));
+    Invoice invoiceToUpdate = InvoiceGenerator.copyInvoice(database.save(invoice));
+    invoiceToUpdate.setSeller(CompanyGenerator.getSampleCompany("newSeller"));
+    invoiceToUpdate.setBuyer(CompanyGenerator.getSampleCompany("newBuyer"));
+
+    //when
+    Invoice updatedInvoice = database.save(invoiceToUpdate);
+
+    //then
+    assertFalse(database.findAllBySellerName("oldSeller").iterator().hasNext());
+    assertFalse(database.findAllByBuyerName("oldBuyer").iterator().hasNext());
+    assertEquals(Collections.singletonList(updatedInvoice), database.findAllBySellerName("newSeller"));
+    assertEquals(Collections.singletonList(updatedInvoice), database.findAllByBuyerName("newBuyer"));
+  }
+
+  @Test
+  void shouldNotFindInvoicesByNameAfterTheyAreDeleted() throws DatabaseOperationException {
+    //given
+    Invoice addedInvoice1 = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("seller"));
+    Invoice addedInvoice2 = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName("buyer"));
+    database.save(InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("seller"));
+
+    //when
+    database.deleteById(addedInvoice1.getId());
+    List<Invoice> invoicesBeforeDeleteAll = new ArrayList<>();
+    database.findAllBySellerName("seller").forEach(invoicesBeforeDeleteAll::add);
+    database.deleteAll();
+
+    //then
+    assertEquals(1, invoicesBeforeDeleteAll.size());
+    assertFalse(database.findAllBySellerName("seller").iterator().hasNext());
+    assertFalse(database.findAllByBuyerName(addedInvoice2.getBuyer().getName()).iterator().hasNext());
+  }
+
+  @Test
+  void shouldFindAllInvoicesIssuedInGivenDateRange() throws DatabaseOperationException {
+    //given
+    database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2018, 12, 31)));
+    Invoice invoice1 = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 1)));
+    Invoice invoice2 = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 31)));
+    database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 2, 1)));
+
+    //when
+    Iterable<Invoice> result = database.findAllByIssueDateBetween(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31));
+
+    //then
+    assertEquals(Arrays.asList(invoice1, invoice2), result);
+  }
+
+  @Test
+  void shouldFindInvoiceByNewIssueDateWhenUpdateChangesIt() throws DatabaseOperationException {
+    //given
+    Invoice invoiceToUpdate = InvoiceGenerator.copyInvoice(database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 1))));
+    invoiceToUpdate.setIssueDate(LocalDate.of(2019, 3, 1));
+    Invoice deletedInvoice = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 2)));
+
+    //when
+    Invoice updatedInvoice = database.save(invoiceToUpdate);
+    database.deleteById(deletedInvoice.getId());
+
+    //then
+    assertFalse(database.findAllByIssueDateBetween(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31)).iterator().hasNext());
+    assertEquals(Collections.singletonList(updatedInvoice), database.findAllByIssueDateBetween(LocalDate.of(2019, 3, 1), LocalDate.of(2019, 3, 1)));
+  }
+
+  @Test
+  void shouldReturnPagesOfInvoicesOrderedById() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      invoices.add(database.save(InvoiceGenerator.getRandomInvoice()));
+    }
+    database.deleteById(invoices.remove(3).getId());
+
+    //when
+    Iterable<Invoice> firstPage = database.findPage(null, 5);
+    Iterable<Invoice> secondPage = database.findPage(invoices.get(4).getId(), 5);
+    Iterable<Invoice> lastPage = database.findPage(invoices.get(9).getId(), 5);
+
+    //then
+    assertEquals(invoices.subList(0, 5), firstPage);
+    assertEquals(invoices.subList(5, 10), secondPage);
+    assertEquals(Collections.singletonList(invoices.get(10)), lastPage);
+    assertThrows(IllegalArgumentException.class, () -> database.findPage(null, 0));
+  }
+
+  @Test
+  void shouldReturnSummariesOfSavedInvoicesOrderedById() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      invoices.add(database.save(InvoiceGenerator.getRandomInvoice()));
+    }
+    database.deleteById(invoices.remove(3).getId());
+    Invoice updatedInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("Updated Seller");
+    updatedInvoice.setId(invoices.get(0).getId());
+    invoices.set(0, database.save(updatedInvoice));
+    List<InvoiceSummary> summaries = invoices.stream().map(InvoiceSummary::new).collect(Collectors.toList());
+
+    //when
+    Iterable<InvoiceSummary> allSummaries = database.findAllSummaries();
+    Iterable<InvoiceSummary> firstPage = database.findSummaryPage(null, 5);
+    Iterable<InvoiceSummary> lastPage = database.findSummaryPage(invoices.get(9).getId(), 5);
+
+    //then
+    assertEquals(summaries, allSummaries);
+    assertEquals(summaries.subList(0, 5), firstPage);
+    assertEquals("Updated Seller", firstPage.iterator().next().getSellerName());
+    assertEquals(Collections.singletonList(summaries.get(10)), lastPage);
+    assertThrows(IllegalArgumentException.class, () -> database.findSummaryPage(null, 0));
+  }
+
+  @Test
+  void shouldStreamAllInvoicesOrderedById() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 11; i++) {
+      invoices.add(database.save(InvoiceGenerator.getRandomInvoice()));
+    }
+    List<Invoice> visitedInvoices = new ArrayList<>();
+
+    //when
+    database.streamAll(visitedInvoices::add);
+
+    //then
+    assertEquals(invoices, visitedInvoices);
+  }
+
+  @Test
+  void shouldKeepNameIndexesConsistentWhenInvoiceIsUpdatedConcurrently() throws Exception {
+    //given
+    Invoice addedInvoice = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificSellerName("seller0"));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    //when
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Invoice invoiceToUpdate = InvoiceGenerator.copyInvoice(addedInvoice);
+        invoiceToUpdate.setSeller(CompanyGenerator.getSampleCompany("seller" + (i % 4)));
+        futures.add(executor.submit(() -> database.save(invoiceToUpdate)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    //then
+    String sellerName = database.findById(addedInvoice.getId()).get().getSeller().getName();
+    for (int i = 0; i < 4; i++) {
+      String name = "seller" + i;
+      assertEquals(name.equals(sellerName) ? 1 : 0, ((List<Invoice>) database.findAllBySellerName(name)).size());
+    }
+  }
+
   @Test
   void shouldUpdateExistingInvoice() throws DatabaseOperationException {
     //given
@@ -227,6 +398,79 @@ class InMemoryInvoiceDatabaseTest {
     assertEquals(invoiceToUpdate, updatedInvoice);
   }
 
+  @Test
+  void shouldAddAndUpdateAllPassedInvoices() throws DatabaseOperationException {
+    //given
+    Invoice existingInvoice = database.save(InvoiceGenerator.getRandomInvoice());
+    Invoice invoiceToUpdate = InvoiceGenerator.getRandomInvoiceWithSpecificId(existingInvoice.getId());
+    Invoice invoiceToAdd = InvoiceGenerator.getRandomInvoiceWithNoId();
+
+    //when
+    List<Invoice> savedInvoices = (List<Invoice>) database.saveAll(Arrays.asList(invoiceToUpdate, invoiceToAdd));
+
+    //then
+    assertEquals(invoiceToUpdate, savedInvoices.get(0));
+    assertEquals("2", savedInvoices.get(1).getId());
+    assertEquals(savedInvoices, database.findAll());
+  }
+
+  @Test
+  void shouldKeepIdAndPositionOfUpdatedInvoice() throws DatabaseOperationException {
+    //given
+    Invoice addedInvoice1 = database.save(InvoiceGenerator.getRandomInvoice());
+    Invoice addedInvoice2 = database.save(InvoiceGenerator.getRandomInvoice());
+
+    //when
+    Invoice updatedInvoice1 = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificId(addedInvoice1.getId()));
+
+    //then
+    assertEquals(Arrays.asList(updatedInvoice1, addedInvoice2), database.findAll());
+    assertEquals(2, database.count());
+  }
+
+  @Test
+  void shouldAddInvoiceWithNewIdWhenSavedInvoiceHasUnknownId() throws DatabaseOperationException {
+    //given
+    Invoice addedInvoice = database.save(InvoiceGenerator.getRandomInvoice());
+
+    //when
+    Invoice savedInvoice = database.save(InvoiceGenerator.getRandomInvoiceWithSpecificId("unknown"));
+
+    //then
+    assertEquals(String.valueOf(Long.parseLong(addedInvoice.getId()) + 1), savedInvoice.getId());
+    assertEquals(Optional.of(savedInvoice), database.findById(savedInvoice.getId()));
+    assertFalse(database.existsById("unknown"));
+  }
+
+  @Test
+  void shouldAssignUniqueIdsAndIterateSafelyWhenInvoicesAreSavedConcurrently() throws Exception {
+    //given
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    //when
+    try {
+      for (int i = 0; i < 1000; i++) {
+        futures.add(executor.submit(() -> database.save(InvoiceGenerator.getRandomInvoice())));
+        futures.add(executor.submit(() -> {
+          database.findAll().forEach(Invoice::getId);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    //then
+    List<String> ids = new ArrayList<>();
+    database.findAll().forEach(invoice -> ids.add(invoice.getId()));
+    assertEquals(1000, new HashSet<>(ids).size());
+    assertEquals(1000L, database.count());
+  }
+
   @Test
   void shouldThrowExceptionIfMethodExistByIdInvokedWithNull() {
     assertThrows(IllegalArgumentException.class, () -> database.existsById(null));
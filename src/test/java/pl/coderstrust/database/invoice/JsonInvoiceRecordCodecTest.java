@@ -0,0 +1,76 @@
+package pl.coderstrust.database.invoice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.model.Invoice;
+
+class JsonInvoiceRecordCodecTest {
+
+  private final ObjectMapper mapper = new ApplicationConfiguration().getObjectMapper();
+  private final JsonInvoiceRecordCodec codec = new JsonInvoiceRecordCodec(mapper);
+
+  @Test
+  @DisplayName("Should use line framing.")
+  void shouldUseLineFraming() {
+    assertEquals(RecordFraming.LINES, codec.getFraming());
+  }
+
+  @Test
+  @DisplayName("Should encode invoice in the same format as object mapper.")
+  void shouldEncodeInvoiceInSameFormatAsObjectMapper() throws IOException {
+    //given
+    Invoice invoice = getRandomInvoice();
+
+    //when
+    byte[] record = codec.encodeInvoice(invoice);
+
+    //then
+    assertEquals(mapper.writeValueAsString(invoice), new String(record, StandardCharsets.UTF_8));
+    assertEquals(invoice, codec.decodeInvoice(ByteBuffer.wrap(record)));
+    assertEquals(invoice.getId(), codec.readHeader(ByteBuffer.wrap(record)).getId());
+    assertFalse(codec.readHeader(ByteBuffer.wrap(record)).isTombstone());
+    assertEquals(invoice.getIssueDate(), codec.readHeader(ByteBuffer.wrap(record)).getIssueDate());
+  }
+
+  @Test
+  @DisplayName("Should read tombstone header.")
+  void shouldReadTombstoneHeader() throws IOException {
+    //when
+    InvoiceRecordHeader header = codec.readHeader(ByteBuffer.wrap(codec.encodeTombstone("7")));
+
+    //then
+    assertEquals("7", header.getId());
+    assertTrue(header.isTombstone());
+  }
+
+  @Test
+  @DisplayName("Should return null header when record has no id.")
+  void shouldReturnNullHeaderWhenRecordHasNoId() throws IOException {
+    assertNull(codec.readHeader(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8))));
+  }
+
+  @Test
+  @DisplayName("Should throw IOException when record is not valid JSON.")
+  void shouldThrowExceptionWhenRecordIsNotValidJson() {
+    assertThrows(IOException.class, () -> codec.readHeader(ByteBuffer.wrap("{\"id\":".getBytes(StandardCharsets.UTF_8))));
+  }
+
+  @Test
+  @DisplayName("Should throw exception when null object mapper is passed.")
+  void shouldThrowExceptionWhenNullObjectMapperIsPassed() {
+    assertThrows(IllegalArgumentException.class, () -> new JsonInvoiceRecordCodec(null));
+  }
+}
@@ -4,30 +4,56 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pl.coderstrust.generators.InvoiceGenerator.copyInvoice;
 
 import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.result.DeleteResult;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import pl.coderstrust.configuration.MongoDatabaseProperties;
 import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.generators.InvoiceGenerator;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ExtendWith(MockitoExtension.class)
 class MongoInvoiceDatabaseTest {
@@ -44,8 +70,15 @@ class MongoInvoiceDatabaseTest {
   @Mock
   private DeleteResult deleteResult;
 
+  @Mock
+  private IndexOperations indexOperations;
+
+  @Mock
+  private CloseableIterator<Invoice> cursor;
+
   @BeforeEach
   void setUp() {
+    when(mongoTemplate.indexOps(properties.getCollectionName())).thenReturn(indexOperations);
     mongoInvoiceDatabase = new MongoInvoiceDatabase(mongoTemplate, properties);
   }
 
@@ -162,7 +195,7 @@ class MongoInvoiceDatabaseTest {
     String sellerName = "SampleSeller";
     Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName(sellerName);
     Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName(sellerName);
-    when(mongoTemplate.find(Query.query(Criteria.where("sellerName").is(sellerName)), Invoice.class, properties.getCollectionName()))
+    when(mongoTemplate.find(Query.query(Criteria.where("seller.name").is(sellerName)), Invoice.class, properties.getCollectionName()))
         .thenReturn(Arrays.asList(invoice1, invoice2));
 
     //when
@@ -172,26 +205,198 @@ class MongoInvoiceDatabaseTest {
     Iterator<Invoice> expectedInvoice = result.iterator();
     assertEquals(invoice1, expectedInvoice.next());
     assertEquals(invoice2, expectedInvoice.next());
-    verify(mongoTemplate).find(Query.query(Criteria.where("sellerName").is(sellerName)), Invoice.class, properties.getCollectionName());
+    verify(mongoTemplate).find(Query.query(Criteria.where("seller.name").is(sellerName)), Invoice.class, properties.getCollectionName());
   }
 
   @Test
   void shouldFindAllInvoicesByBuyerName() throws DatabaseOperationException {
     //given
     String buyerName = "buyerName";
-    Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName(buyerName);
-    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificSellerName(buyerName);
-    when(mongoTemplate.find(Query.query(Criteria.where("sellerName").is(buyerName)), Invoice.class, properties.getCollectionName()))
+    Invoice invoice1 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName(buyerName);
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName(buyerName);
+    when(mongoTemplate.find(Query.query(Criteria.where("buyer.name").is(buyerName)), Invoice.class, properties.getCollectionName()))
         .thenReturn(Arrays.asList(invoice1, invoice2));
 
     //when
-    Iterable<Invoice> result = mongoInvoiceDatabase.findAllBySellerName(buyerName);
+    Iterable<Invoice> result = mongoInvoiceDatabase.findAllByBuyerName(buyerName);
 
     //then
     Iterator<Invoice> expectedInvoice = result.iterator();
     assertEquals(invoice1, expectedInvoice.next());
     assertEquals(invoice2, expectedInvoice.next());
-    verify(mongoTemplate).find(Query.query(Criteria.where("sellerName").is(buyerName)), Invoice.class, properties.getCollectionName());
+    verify(mongoTemplate).find(Query.query(Criteria.where("buyer.name").is(buyerName)), Invoice.class, properties.getCollectionName());
+  }
+
+  @Test
+  void shouldEnsureIndexesOnConfiguredCollection() {
+    //then
+    ArgumentCaptor<Index> index = ArgumentCaptor.forClass(Index.class);
+    verify(indexOperations, times(4)).ensureIndex(index.capture());
+    assertEquals(Arrays.asList(new Document("seller.name", 1), new Document("buyer.name", 1), new Document("issueDate", 1), new Document("dueDate", 1)),
+        index.getAllValues().stream().map(Index::getIndexKeys).collect(Collectors.toList()));
+  }
+
+  @Test
+  void shouldFindAllInvoicesIssuedInGivenDateRange() throws DatabaseOperationException {
+    //given
+    LocalDate startDate = LocalDate.of(2019, 1, 1);
+    LocalDate endDate = LocalDate.of(2019, 1, 31);
+    Query query = Query.query(Criteria.where("issueDate").gte(startDate).lte(endDate));
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 15));
+    when(mongoTemplate.find(query, Invoice.class, properties.getCollectionName())).thenReturn(Collections.singletonList(invoice));
+
+    //when
+    Iterable<Invoice> result = mongoInvoiceDatabase.findAllByIssueDateBetween(startDate, endDate);
+
+    //then
+    assertEquals(Collections.singletonList(invoice), result);
+    verify(mongoTemplate).find(query, Invoice.class, properties.getCollectionName());
+  }
+
+  @Test
+  void findAllByIssueDateBetweenMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
+    //given
+    LocalDate startDate = LocalDate.of(2019, 1, 1);
+    LocalDate endDate = LocalDate.of(2019, 1, 31);
+    Query query = Query.query(Criteria.where("issueDate").gte(startDate).lte(endDate));
+    doThrow(MongoException.class).when(mongoTemplate).find(query, Invoice.class, properties.getCollectionName());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.findAllByIssueDateBetween(startDate, endDate));
+  }
+
+  @Test
+  void shouldFindPageOfInvoicesAfterGivenId() throws DatabaseOperationException {
+    //given
+    Query query = Query.query(Criteria.where("_id").gt(new ObjectId("5c4b3a2d1e0f5c4b3a2d1e0f"))).with(Sort.by(Sort.Direction.ASC, "_id")).limit(2);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(mongoTemplate.find(query, Invoice.class, properties.getCollectionName())).thenReturn(Collections.singletonList(invoice));
+
+    //when
+    Iterable<Invoice> result = mongoInvoiceDatabase.findPage("5c4b3a2d1e0f5c4b3a2d1e0f", 2);
+
+    //then
+    assertEquals(Collections.singletonList(invoice), result);
+    verify(mongoTemplate).find(query, Invoice.class, properties.getCollectionName());
+  }
+
+  @Test
+  void findPageMethodShouldThrowExceptionForInvalidCursor() {
+    assertThrows(IllegalArgumentException.class, () -> mongoInvoiceDatabase.findPage("5c4b3a2d1e0f", 2));
+    verify(mongoTemplate, never()).find(any(Query.class), eq(Invoice.class), eq(properties.getCollectionName()));
+  }
+
+  @Test
+  void findPageMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
+    //given
+    Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).limit(2);
+    doThrow(MongoException.class).when(mongoTemplate).find(query, Invoice.class, properties.getCollectionName());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.findPage(null, 2));
+  }
+
+  @Test
+  void shouldFindPageOfInvoiceSummariesWithFieldProjection() throws DatabaseOperationException {
+    //given
+    Query query = Query.query(Criteria.where("_id").gt(new ObjectId("5c4b3a2d1e0f5c4b3a2d1e0f"))).with(Sort.by(Sort.Direction.ASC, "_id")).limit(2);
+    Arrays.asList("type", "issueDate", "dueDate", "seller.name", "buyer.name", "totalNetValue", "totalGrossValue", "comments")
+        .forEach(query.fields()::include);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(mongoTemplate.find(query, Invoice.class, properties.getCollectionName())).thenReturn(Collections.singletonList(invoice));
+
+    //when
+    Iterable<InvoiceSummary> result = mongoInvoiceDatabase.findSummaryPage("5c4b3a2d1e0f5c4b3a2d1e0f", 2);
+
+    //then
+    assertEquals(Collections.singletonList(new InvoiceSummary(invoice)), result);
+    verify(mongoTemplate).find(query, Invoice.class, properties.getCollectionName());
+  }
+
+  @Test
+  void findSummaryPageMethodShouldThrowExceptionForInvalidCursor() {
+    assertThrows(IllegalArgumentException.class, () -> mongoInvoiceDatabase.findSummaryPage("5c4b3a2d1e0f", 2));
+    verify(mongoTemplate, never()).find(any(Query.class), eq(Invoice.class), eq(properties.getCollectionName()));
+  }
+
+  @Test
+  void findAllSummariesMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
+    //given
+    doThrow(MongoException.class).when(mongoTemplate).find(any(Query.class), eq(Invoice.class), eq(properties.getCollectionName()));
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.findAllSummaries());
+  }
+
+  @Test
+  void shouldSaveAllInvoicesWithSingleBulkWrite() throws DatabaseOperationException {
+    //given
+    Invoice invoiceToAdd = InvoiceGenerator.getRandomInvoiceWithNoId();
+    Invoice invoiceToUpdate = InvoiceGenerator.getRandomInvoice();
+    invoiceToUpdate.setId(new ObjectId().toHexString());
+    when(mongoTemplate.getConverter()).thenReturn(createConverter());
+    when(mongoTemplate.getCollection(properties.getCollectionName())).thenReturn(mongoCollection);
+    ArgumentCaptor<List<ReplaceOneModel<Document>>> writes = ArgumentCaptor.forClass(List.class);
+
+    //when
+    List<Invoice> savedInvoices = (List<Invoice>) mongoInvoiceDatabase.saveAll(Arrays.asList(invoiceToAdd, invoiceToUpdate));
+
+    //then
+    verify(mongoCollection).bulkWrite(writes.capture());
+    assertEquals(2, writes.getValue().size());
+    assertTrue(ObjectId.isValid(savedInvoices.get(0).getId()));
+    assertEquals(new ObjectId(savedInvoices.get(0).getId()), writes.getValue().get(0).getReplacement().get("_id"));
+    assertEquals(new ObjectId(invoiceToUpdate.getId()), writes.getValue().get(1).getReplacement().get("_id"));
+    assertTrue(writes.getValue().get(1).getReplaceOptions().isUpsert());
+  }
+
+  @Test
+  void saveAllMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
+    //given
+    when(mongoTemplate.getConverter()).thenReturn(createConverter());
+    when(mongoTemplate.getCollection(properties.getCollectionName())).thenReturn(mongoCollection);
+    doThrow(MongoException.class).when(mongoCollection).bulkWrite(any());
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.saveAll(Collections.singletonList(InvoiceGenerator.getRandomInvoiceWithNoId())));
+  }
+
+  private MappingMongoConverter createConverter() {
+    MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+    converter.afterPropertiesSet();
+    return converter;
+  }
+
+  @Test
+  void shouldStreamAllInvoicesAndCloseCursor() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = InvoiceGenerator.getRandomInvoice();
+    Invoice invoice2 = InvoiceGenerator.getRandomInvoice();
+    when(cursor.hasNext()).thenReturn(true, true, false);
+    when(cursor.next()).thenReturn(invoice1, invoice2);
+    when(mongoTemplate.stream(any(Query.class), eq(Invoice.class), eq(properties.getCollectionName()))).thenReturn(cursor);
+    List<Invoice> visitedInvoices = new ArrayList<>();
+
+    //when
+    mongoInvoiceDatabase.streamAll(visitedInvoices::add);
+
+    //then
+    assertEquals(Arrays.asList(invoice1, invoice2), visitedInvoices);
+    verify(cursor).close();
+  }
+
+  @Test
+  void streamAllMethodShouldThrowExceptionAndCloseCursorWhenVisitorFails() {
+    //given
+    when(cursor.hasNext()).thenReturn(true);
+    when(cursor.next()).thenReturn(InvoiceGenerator.getRandomInvoice());
+    when(mongoTemplate.stream(any(Query.class), eq(Invoice.class), eq(properties.getCollectionName()))).thenReturn(cursor);
+
+    //then
+    assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.streamAll(invoice -> {
+      throw new IOException();
+    }));
+    verify(cursor).close();
   }
 
   @Test
@@ -205,6 +410,36 @@ class MongoInvoiceDatabaseTest {
     verify(mongoTemplate).save(invoice, properties.getCollectionName());
   }
 
+  @Test
+  void shouldNotSerializeConcurrentOperations() throws Exception {
+    //given
+    int threads = 4;
+    CountDownLatch allThreadsInside = new CountDownLatch(threads);
+    when(mongoTemplate.findById(any(String.class), eq(Invoice.class), eq(properties.getCollectionName()))).thenAnswer(invocation -> {
+      allThreadsInside.countDown();
+      assertTrue(allThreadsInside.await(10, TimeUnit.SECONDS));
+      return null;
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Optional<Invoice>>> futures = new ArrayList<>();
+
+    //when
+    try {
+      for (int i = 0; i < threads; i++) {
+        String id = String.valueOf(i);
+        futures.add(executor.submit(() -> mongoInvoiceDatabase.findById(id)));
+      }
+      for (Future<Optional<Invoice>> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    //then
+    assertEquals(0, allThreadsInside.getCount());
+  }
+
   @Test
   void findByIdMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
     //given
@@ -289,24 +524,24 @@ class MongoInvoiceDatabaseTest {
   void findBySellerNameMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
     //given
     String sellerName = "SampleSellerName";
-    doThrow(MongoException.class).when(mongoTemplate).find(Query.query(Criteria.where("sellerName").is(sellerName)), Invoice.class,
+    doThrow(MongoException.class).when(mongoTemplate).find(Query.query(Criteria.where("seller.name").is(sellerName)), Invoice.class,
         properties.getCollectionName());
 
     //then
     assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.findAllBySellerName(sellerName));
-    verify(mongoTemplate).find(Query.query(Criteria.where("sellerName").is(sellerName)), Invoice.class, properties.getCollectionName());
+    verify(mongoTemplate).find(Query.query(Criteria.where("seller.name").is(sellerName)), Invoice.class, properties.getCollectionName());
   }
 
   @Test
   void findByBuyerNameMethodShouldThrowExceptionWhenErrorOccursDuringExecution() {
     //given
     String buyerName = "SampleBuyerName";
-    doThrow(MongoException.class).when(mongoTemplate).find(Query.query(Criteria.where("buyerName").is(buyerName)), Invoice.class,
+    doThrow(MongoException.class).when(mongoTemplate).find(Query.query(Criteria.where("buyer.name").is(buyerName)), Invoice.class,
         properties.getCollectionName());
 
     //then
     assertThrows(DatabaseOperationException.class, () -> mongoInvoiceDatabase.findAllByBuyerName(buyerName));
-    verify(mongoTemplate).find(Query.query(Criteria.where("buyerName").is(buyerName)), Invoice.class, properties.getCollectionName());
+    verify(mongoTemplate).find(Query.query(Criteria.where("buyer.name").is(buyerName)), Invoice.class, properties.getCollectionName());
   }
 
   @Test
@@ -23,12 +23,12 @@ public class InvoiceGenerator {
     String sampleBuyerName = sampleInvoice.getBuyer().getName() + atomicInteger.incrementAndGet();
 
     Company sampleSeller = new Company(sampleSellerName,
-        sampleInvoice.getSeller().getTaxIdentificationNumber(),
+        sampleInvoice.getSeller().getTaxIdentificationNumber() + atomicInteger.incrementAndGet(),
         sampleInvoice.getSeller().getAccountNumber(),
         sampleInvoice.getSeller().getContactDetails());
 
     Company sampleBuyer = new Company(sampleBuyerName,
-        sampleInvoice.getBuyer().getTaxIdentificationNumber(),
+        sampleInvoice.getBuyer().getTaxIdentificationNumber() + atomicInteger.incrementAndGet(),
         sampleInvoice.getBuyer().getAccountNumber(),
         sampleInvoice.getBuyer().getContactDetails());
 
@@ -96,9 +96,9 @@ public class InvoiceGenerator {
     Invoice randomInvoice = getRandomInvoice();
 
     Company sampleBuyer = new Company(buyerName,
-        randomInvoice.getSeller().getTaxIdentificationNumber(),
-        randomInvoice.getSeller().getAccountNumber(),
-        randomInvoice.getSeller().getContactDetails());
+        randomInvoice.getBuyer().getTaxIdentificationNumber(),
+        randomInvoice.getBuyer().getAccountNumber(),
+        randomInvoice.getBuyer().getContactDetails());
 
     return new Invoice(randomInvoice.getId(), randomInvoice.getType(),
         randomInvoice.getIssueDate(), randomInvoice.getDueDate(),
@@ -111,9 +111,9 @@ public class InvoiceGenerator {
     Invoice invoice = getRandomInvoiceWithNoId();
 
     Company buyer = new Company(buyerName,
-        invoice.getSeller().getTaxIdentificationNumber(),
-        invoice.getSeller().getAccountNumber(),
-        invoice.getSeller().getContactDetails());
+        invoice.getBuyer().getTaxIdentificationNumber(),
+        invoice.getBuyer().getAccountNumber(),
+        invoice.getBuyer().getContactDetails());
 
     return new Invoice(invoice.getType(), invoice.getIssueDate(), invoice.getDueDate(), invoice.getSeller(), buyer, invoice.getEntries(),
         invoice.getTotalNetValue(), invoice.getTotalGrossValue(), invoice.getComments());
@@ -0,0 +1,92 @@
+package pl.coderstrust.integrationtests.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoId;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.database.invoice.HibernateCompanyMigrator;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.Invoice;
+
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = "pl.coderstrust.database=hibernate")
+@Import(HibernateCompanyMigrator.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DirtiesContext
+class HibernateCompanyMigratorIT {
+
+  private static final String TAX_IDENTIFICATION_NUMBER = "7151001126";
+
+  @Autowired
+  private HibernateCompanyMigrator migrator;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private TransactionTemplate transactionTemplate;
+
+  @BeforeEach
+  void setUp() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.execute(status -> {
+      entityManager.createQuery("delete from Invoice").executeUpdate();
+      return null;
+    });
+  }
+
+  @Test
+  @DisplayName("Should collapse companies with equal details, keep companies with different details and repoint their invoices.")
+  void shouldCollapseDuplicatedCompanies() throws DatabaseOperationException {
+    //given
+    Company seller = getRandomInvoiceWithNoId().getSeller();
+    seller.setTaxIdentificationNumber(TAX_IDENTIFICATION_NUMBER);
+    Company renamedSeller = new Company(seller);
+    renamedSeller.setName(seller.getName() + " Renamed");
+    transactionTemplate.execute(status -> {
+      for (Company company : Arrays.asList(seller, seller, seller, renamedSeller)) {
+        Invoice invoice = getRandomInvoiceWithNoId();
+        invoice.setSeller(new Company(company));
+        entityManager.persist(invoice);
+      }
+      return null;
+    });
+
+    //when
+    int removedCompanies = migrator.migrate();
+
+    //then
+    assertEquals(2, removedCompanies);
+    List<String> sellerNames = entityManager.createQuery("select invoice.seller.name from Invoice invoice order by invoice.seller.name", String.class)
+        .getResultList();
+    assertEquals(Arrays.asList(seller.getName(), seller.getName(), seller.getName(), renamedSeller.getName()), sellerNames);
+    List<String> sellerIds = entityManager.createQuery("select distinct invoice.seller.id from Invoice invoice", String.class).getResultList();
+    assertEquals(2, sellerIds.size());
+    assertEquals(0, count("select count(company) from Company company where company.detailsHash is null"));
+    assertEquals(count("select count(company) from Company company"), count("select count(address) from Address address"));
+    assertEquals(count("select count(company) from Company company"), count("select count(accountNumber) from AccountNumber accountNumber"));
+    assertEquals(0, migrator.migrate());
+  }
+
+  private long count(String query) {
+    return entityManager.createQuery(query, Long.class).getSingleResult();
+  }
+}
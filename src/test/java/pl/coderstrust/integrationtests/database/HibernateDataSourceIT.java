@@ -0,0 +1,64 @@
+package pl.coderstrust.integrationtests.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.jdbc.DataSourcePoolMetricsAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = "pl.coderstrust.database=hibernate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ApplicationConfiguration.class)
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class, DataSourcePoolMetricsAutoConfiguration.class})
+class HibernateDataSourceIT {
+
+  private static final String POOL_TAG = "pool";
+  private static final String POOL_NAME = "invoices";
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  @DisplayName("Should configure hibernate connection pool from hibernate-database.yml.")
+  void shouldConfigureConnectionPoolFromYaml() {
+    //when
+    HikariDataSource hikariDataSource = (HikariDataSource) dataSource;
+
+    //then
+    assertEquals(POOL_NAME, hikariDataSource.getPoolName());
+    assertEquals(10, hikariDataSource.getMaximumPoolSize());
+    assertEquals(2, hikariDataSource.getMinimumIdle());
+    assertEquals(5000, hikariDataSource.getConnectionTimeout());
+    assertEquals(60000, hikariDataSource.getLeakDetectionThreshold());
+    assertEquals("64", hikariDataSource.getDataSourceProperties().getProperty("QUERY_CACHE_SIZE"));
+  }
+
+  @Test
+  @DisplayName("Should expose active, idle and pending connections and acquire time of hibernate connection pool.")
+  void shouldExposeConnectionPoolMetrics() {
+    //then
+    assertTrue(meterRegistry.get("hikaricp.connections.active").tag(POOL_TAG, POOL_NAME).gauge().value() >= 1);
+    assertNotNull(meterRegistry.get("hikaricp.connections.idle").tag(POOL_TAG, POOL_NAME).gauge());
+    assertEquals(0, meterRegistry.get("hikaricp.connections.pending").tag(POOL_TAG, POOL_NAME).gauge().value());
+    assertTrue(meterRegistry.get("hikaricp.connections.acquire").tag(POOL_TAG, POOL_NAME).timer().count() >= 1);
+  }
+}
@@ -0,0 +1,110 @@
+package pl.coderstrust.integrationtests.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoIdAndSpecificSellerName;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.orm.jpa.HibernateMetricsAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.database.invoice.HibernateInvoiceDatabase;
+import pl.coderstrust.database.invoice.InvoiceDatabase;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.Invoice;
+
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = {"pl.coderstrust.database=hibernate", "pl.coderstrust.hibernate-cache=enabled"})
+@Import({HibernateInvoiceDatabase.class, ApplicationConfiguration.class})
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class, HibernateMetricsAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HibernateInvoiceDatabaseCacheIT {
+
+  @Autowired
+  private InvoiceDatabase hibernateDatabase;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() throws DatabaseOperationException {
+    hibernateDatabase.deleteAll();
+    entityManagerFactory.getCache().evictAll();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  @DisplayName("Should serve repeated seller name lookup from query cache and second-level cache.")
+  void shouldServeRepeatedSellerNameLookupFromCache() throws DatabaseOperationException {
+    //given
+    Invoice invoice = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+    hibernateDatabase.findAllBySellerName("Company One");
+    long statementsAfterFirstLookup = statistics.getPrepareStatementCount();
+
+    //when
+    List<Invoice> actualInvoices = (List<Invoice>) hibernateDatabase.findAllBySellerName("Company One");
+
+    //then
+    assertEquals(Collections.singletonList(invoice.getId()), actualInvoices.stream().map(Invoice::getId).collect(Collectors.toList()));
+    assertEquals(statementsAfterFirstLookup, statistics.getPrepareStatementCount());
+    assertEquals(1, statistics.getQueryCacheMissCount());
+    assertEquals(1, statistics.getQueryCacheHitCount());
+    assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+    assertEquals(1.0, meterRegistry.get("hibernate.cache.query.requests").tag("result", "hit").functionCounter().count());
+  }
+
+  @Test
+  @DisplayName("Should invalidate cached seller name lookup when invoice is updated.")
+  void shouldInvalidateCachedLookupWhenInvoiceIsUpdated() throws DatabaseOperationException {
+    //given
+    Invoice invoice = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+    hibernateDatabase.findAllBySellerName("Company One");
+    invoice.setComments("updated comments");
+    hibernateDatabase.save(invoice);
+
+    //when
+    List<Invoice> actualInvoices = (List<Invoice>) hibernateDatabase.findAllBySellerName("Company One");
+
+    //then
+    assertEquals(Collections.singletonList("updated comments"), actualInvoices.stream().map(Invoice::getComments).collect(Collectors.toList()));
+    assertEquals(0, statistics.getQueryCacheHitCount());
+  }
+
+  @Test
+  @DisplayName("Should cache companies in second-level cache.")
+  void shouldCacheCompanies() throws DatabaseOperationException {
+    //given
+    Invoice invoice = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+
+    //when
+    hibernateDatabase.findById(invoice.getId());
+
+    //then
+    assertTrue(entityManagerFactory.getCache().contains(Company.class, invoice.getSeller().getId()));
+  }
+}
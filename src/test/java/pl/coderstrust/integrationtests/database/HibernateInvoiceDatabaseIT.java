@@ -0,0 +1,269 @@
+package pl.coderstrust.integrationtests.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoId;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoIdAndSpecificBuyerName;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoIdAndSpecificSellerName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.context.transaction.TestTransaction;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.database.invoice.HibernateInvoiceDatabase;
+import pl.coderstrust.database.invoice.InvoiceDatabase;
+import pl.coderstrust.model.Company;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
+
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = "pl.coderstrust.database=hibernate")
+@Import(HibernateInvoiceDatabase.class)
+class HibernateInvoiceDatabaseIT {
+
+  private static final int BATCH_FETCH_SIZE = 100;
+
+  @Autowired
+  private InvoiceDatabase hibernateDatabase;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @BeforeEach
+  void cleanDatabase() throws DatabaseOperationException {
+    hibernateDatabase.deleteAll();
+  }
+
+  @Test
+  @DisplayName("Should return only invoices associated with particular seller name.")
+  void shouldReturnAllInvoicesBySpecifiedSellerName() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+    hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company Two"));
+    Invoice invoice3 = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+
+    //when
+    Iterable<Invoice> actualInvoices = hibernateDatabase.findAllBySellerName("Company One");
+
+    //then
+    assertEquals(sortedById(invoice1, invoice3), actualInvoices);
+  }
+
+  @Test
+  @DisplayName("Should return only invoices associated with particular buyer name.")
+  void shouldReturnAllInvoicesBySpecifiedBuyerName() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificBuyerName("Company One"));
+    Invoice invoice2 = hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificBuyerName("Company Two"));
+    hibernateDatabase.save(getRandomInvoiceWithNoIdAndSpecificBuyerName("Company Three"));
+
+    //when
+    Iterable<Invoice> actualInvoices = hibernateDatabase.findAllByBuyerName("Company Two");
+
+    //then
+    assertEquals(Collections.singletonList(invoice2), actualInvoices);
+    assertEquals(Collections.emptyList(), hibernateDatabase.findAllByBuyerName("A.C.M.E. Incorporated"));
+    assertEquals(Collections.singletonList(invoice1), hibernateDatabase.findAllByBuyerName("Company One"));
+  }
+
+  @Test
+  @DisplayName("Should create indexes for seller, buyer and company name lookups.")
+  void shouldCreateIndexesForNameLookups() {
+    //when
+    List<?> indexNames = entityManager.createNativeQuery("select index_name from information_schema.indexes").getResultList();
+
+    //then
+    List<String> names = indexNames.stream().map(name -> name.toString().toLowerCase()).collect(Collectors.toList());
+    assertTrue(names.containsAll(Arrays.asList("invoice_seller_idx", "invoice_buyer_idx", "company_name_idx")));
+  }
+
+  @Test
+  @DisplayName("Should load page of 1000 invoices with their companies and entries in bounded number of statements.")
+  void shouldLoadPageOfInvoicesInBoundedNumberOfStatements() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      invoices.add(getRandomInvoiceWithNoId());
+    }
+    hibernateDatabase.saveAll(invoices);
+    Statistics statistics = startCountingStatements();
+
+    //when
+    List<Invoice> page = (List<Invoice>) hibernateDatabase.findPage(null, 1000);
+    page.forEach(invoice -> invoice.getSeller().getContactDetails().getAddress().getCity());
+
+    //then
+    assertEquals(1000, page.size());
+    assertEquals(0, statistics.getEntityFetchCount());
+    assertTrue(statistics.getPrepareStatementCount() <= 1 + 1000 / BATCH_FETCH_SIZE, String.valueOf(statistics.getPrepareStatementCount()));
+  }
+
+  @Test
+  @DisplayName("Should stream 1000 invoices with their companies and entries in bounded number of statements.")
+  void shouldStreamInvoicesInBoundedNumberOfStatements() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      invoices.add(getRandomInvoiceWithNoId());
+    }
+    hibernateDatabase.saveAll(invoices);
+    Statistics statistics = startCountingStatements();
+    List<Invoice> streamedInvoices = new ArrayList<>();
+
+    //when
+    hibernateDatabase.streamAll(invoice -> {
+      invoice.getSeller().getContactDetails().getAddress().getCity();
+      invoice.getBuyer().getContactDetails().getAddress().getCity();
+      invoice.getEntries().size();
+      streamedInvoices.add(invoice);
+    });
+
+    //then
+    assertEquals(1000, streamedInvoices.size());
+    assertEquals(0, statistics.getEntityFetchCount());
+    assertTrue(statistics.getPrepareStatementCount() <= 2 * (1 + 1000 / BATCH_FETCH_SIZE), String.valueOf(statistics.getPrepareStatementCount()));
+  }
+
+  @Test
+  @DisplayName("Should load invoice with its companies and entries in single statement.")
+  void shouldLoadInvoiceInSingleStatement() throws DatabaseOperationException {
+    //given
+    Invoice invoice = hibernateDatabase.save(getRandomInvoiceWithNoId());
+    Statistics statistics = startCountingStatements();
+
+    //when
+    Optional<Invoice> actualInvoice = hibernateDatabase.findById(invoice.getId());
+
+    //then
+    assertTrue(actualInvoice.isPresent());
+    assertEquals(invoice.getEntries().size(), actualInvoice.get().getEntries().size());
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  @DisplayName("Should load summaries of invoices in single statement without loading invoice entities.")
+  void shouldLoadInvoiceSummariesInSingleStatement() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      invoices.add(getRandomInvoiceWithNoId());
+    }
+    List<InvoiceSummary> expectedSummaries = ((List<Invoice>) hibernateDatabase.saveAll(invoices)).stream()
+        .map(InvoiceSummary::new)
+        .sorted(Comparator.comparing(InvoiceSummary::getId))
+        .collect(Collectors.toList());
+    Statistics statistics = startCountingStatements();
+
+    //when
+    List<InvoiceSummary> summaries = (List<InvoiceSummary>) hibernateDatabase.findAllSummaries();
+    List<InvoiceSummary> page = (List<InvoiceSummary>) hibernateDatabase.findSummaryPage(expectedSummaries.get(9).getId(), 10);
+
+    //then
+    assertEquals(expectedSummaries.stream().map(InvoiceSummary::getId).collect(Collectors.toList()),
+        summaries.stream().map(InvoiceSummary::getId).collect(Collectors.toList()));
+    assertEquals(expectedSummaries.get(0).getSellerName(), summaries.get(0).getSellerName());
+    assertEquals(expectedSummaries.get(0).getBuyerName(), summaries.get(0).getBuyerName());
+    assertEquals(0, expectedSummaries.get(0).getTotalGrossValue().compareTo(summaries.get(0).getTotalGrossValue()));
+    assertEquals(expectedSummaries.subList(10, 20).stream().map(InvoiceSummary::getId).collect(Collectors.toList()),
+        page.stream().map(InvoiceSummary::getId).collect(Collectors.toList()));
+    assertEquals(2, statistics.getPrepareStatementCount());
+    assertEquals(0, statistics.getEntityLoadCount());
+  }
+
+  @Test
+  @DisplayName("Should store company once per equal details and keep details of every saved invoice.")
+  void shouldStoreCompanyOncePerEqualDetails() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithNoIdAndSpecificSellerName("Company One");
+    Invoice invoice2 = getRandomInvoiceWithNoIdAndSpecificSellerName("Company One Renamed");
+    invoice2.getSeller().setTaxIdentificationNumber(invoice1.getSeller().getTaxIdentificationNumber());
+    Invoice invoice3 = getRandomInvoiceWithNoId();
+    invoice3.setSeller(new Company(invoice1.getSeller()));
+
+    //when
+    Invoice savedInvoice1 = hibernateDatabase.save(invoice1);
+    Invoice savedInvoice2 = hibernateDatabase.save(invoice2);
+    Invoice savedInvoice3 = hibernateDatabase.save(invoice3);
+    entityManager.flush();
+    entityManager.clear();
+
+    //then
+    long storedSellers = entityManager.createQuery("select count(company) from Company company where company.taxIdentificationNumber = :taxId", Long.class)
+        .setParameter("taxId", invoice1.getSeller().getTaxIdentificationNumber())
+        .getSingleResult();
+    assertEquals(2, storedSellers);
+    assertEquals(savedInvoice1.getSeller().getId(), savedInvoice3.getSeller().getId());
+    assertNotEquals(savedInvoice1.getSeller().getId(), savedInvoice2.getSeller().getId());
+    assertEquals(2, ((List<Invoice>) hibernateDatabase.findAllBySellerName("Company One")).size());
+    assertEquals(Collections.singletonList(savedInvoice2.getId()),
+        ((List<Invoice>) hibernateDatabase.findAllBySellerName("Company One Renamed")).stream().map(Invoice::getId).collect(Collectors.toList()));
+    assertEquals(savedInvoice2.getSeller(), hibernateDatabase.findById(savedInvoice2.getId()).get().getSeller());
+    assertNull(invoice2.getId());
+  }
+
+  @Test
+  @DisplayName("Should delete companies together with the last invoice using them.")
+  void shouldDeleteCompaniesNoLongerUsedByInvoices() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = hibernateDatabase.save(getRandomInvoiceWithNoId());
+    Invoice invoice2 = getRandomInvoiceWithNoId();
+    invoice2.setSeller(new Company(invoice1.getSeller()));
+    invoice2 = hibernateDatabase.save(invoice2);
+
+    //when
+    hibernateDatabase.deleteById(invoice1.getId());
+    entityManager.flush();
+    entityManager.clear();
+
+    //then
+    List<String> companyIds = entityManager.createQuery("select company.id from Company company order by company.id", String.class).getResultList();
+    assertEquals(Stream.of(invoice2.getSeller().getId(), invoice2.getBuyer().getId()).sorted().collect(Collectors.toList()), companyIds);
+  }
+
+  @Test
+  @DisplayName("Should not leave companies behind when transaction of saved invoice is rolled back.")
+  void shouldNotKeepCompaniesOfRolledBackSave() throws DatabaseOperationException {
+    //given
+    TestTransaction.flagForRollback();
+    hibernateDatabase.save(getRandomInvoiceWithNoId());
+
+    //when
+    TestTransaction.end();
+    TestTransaction.start();
+
+    //then
+    assertEquals(0L, (long) entityManager.createQuery("select count(company) from Company company", Long.class).getSingleResult());
+  }
+
+  private Statistics startCountingStatements() {
+    entityManager.flush();
+    entityManager.clear();
+    Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    statistics.setStatisticsEnabled(true);
+    statistics.clear();
+    return statistics;
+  }
+
+  private List<Invoice> sortedById(Invoice... invoices) {
+    return Arrays.stream(invoices).sorted((first, second) -> first.getId().compareTo(second.getId())).collect(Collectors.toList());
+  }
+}
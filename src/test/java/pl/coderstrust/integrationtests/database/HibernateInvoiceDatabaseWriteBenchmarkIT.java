@@ -0,0 +1,118 @@
+package pl.coderstrust.integrationtests.database;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoId;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.database.invoice.HibernateInvoiceDatabase;
+import pl.coderstrust.database.invoice.InvoiceDatabase;
+import pl.coderstrust.model.Invoice;
+
+@Slf4j
+@ExtendWith(SpringExtension.class)
+@DataJpaTest(properties = {"pl.coderstrust.database=hibernate", "spring.jpa.properties.hibernate.show_sql=false"})
+@Import(HibernateInvoiceDatabase.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class HibernateInvoiceDatabaseWriteBenchmarkIT {
+
+  private static final int INVOICES = 2000;
+  private static final int UNBATCHED = 1;
+
+  @Autowired
+  private InvoiceDatabase hibernateDatabase;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void cleanDatabase() throws DatabaseOperationException {
+    hibernateDatabase.deleteAll();
+  }
+
+  @Test
+  @DisplayName("Should write invoice graphs in fewer statements and at higher rate with JDBC batching.")
+  void shouldWriteInvoicesInBatches() {
+    //given
+    writeInvoices(UNBATCHED);
+    writeInvoices(null);
+
+    //when
+    WriteResult unbatched = writeInvoices(UNBATCHED);
+    WriteResult batched = writeInvoices(null);
+
+    //then
+    log.info(String.format("Unbatched: %s", unbatched));
+    log.info(String.format("Batched: %s", batched));
+    assertTrue(batched.getStatementsPerInvoice() < 1, batched.toString());
+    assertTrue(batched.getStatementsPerInvoice() * 10 < unbatched.getStatementsPerInvoice(), String.format("%s vs %s", batched, unbatched));
+  }
+
+  private WriteResult writeInvoices(Integer jdbcBatchSize) {
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < INVOICES; i++) {
+      invoices.add(getRandomInvoiceWithNoId());
+    }
+    Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    statistics.setStatisticsEnabled(true);
+    statistics.clear();
+    JdbcExecutionCounter executionCounter = new JdbcExecutionCounter();
+    long start = System.nanoTime();
+    new TransactionTemplate(transactionManager).execute(status -> {
+      Session session = entityManager.unwrap(Session.class);
+      session.setJdbcBatchSize(jdbcBatchSize);
+      session.addEventListeners(executionCounter);
+      try {
+        return hibernateDatabase.saveAll(invoices);
+      } catch (DatabaseOperationException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    long elapsedNanos = System.nanoTime() - start;
+    return new WriteResult((double) executionCounter.executions / INVOICES, statistics.getEntityInsertCount() * 1e9 / elapsedNanos);
+  }
+
+  private static class JdbcExecutionCounter extends BaseSessionEventListener {
+
+    private int executions;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+      executions++;
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+      executions++;
+    }
+  }
+
+  @Value
+  private static class WriteResult {
+    double statementsPerInvoice;
+    double insertsPerSecond;
+  }
+}
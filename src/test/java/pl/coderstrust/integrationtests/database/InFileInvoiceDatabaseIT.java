@@ -1,55 +1,99 @@
 package pl.coderstrust.integrationtests.database;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static pl.coderstrust.generators.InvoiceGenerator.copyInvoice;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoice;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithNoId;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificBuyerName;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificId;
+import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate;
 import static pl.coderstrust.generators.InvoiceGenerator.getRandomInvoiceWithSpecificSellerName;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import pl.coderstrust.configuration.ApplicationConfiguration;
+import pl.coderstrust.configuration.InFileDatabaseProperties;
 import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.database.invoice.InFileDatabaseMigrator;
 import pl.coderstrust.database.invoice.InFileInvoiceDatabase;
 import pl.coderstrust.database.invoice.InvoiceDatabase;
-import pl.coderstrust.helpers.FileHelper;
+import pl.coderstrust.database.invoice.InvoiceRecordCodec;
+import pl.coderstrust.database.invoice.RecordFormat;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.helpers.RecoveryReport;
+import pl.coderstrust.helpers.SegmentedFileHelper;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 public class InFileInvoiceDatabaseIT {
 
+  private static final long MAX_SEGMENT_SIZE = 1024 * 1024;
+
   private final ObjectMapper mapper = new ApplicationConfiguration().getObjectMapper();
   private final String expectedDatabaseFilePath = String.format("%1$s%2$ssrc%2$stest%2$sresources%2$sdatabase%2$s%3$s",
       System.getProperty("user.dir"), File.separator, "expected_invoice_database.txt");
   private final String databaseFilePath = String.format("%1$s%2$ssrc%2$stest%2$sresources%2$sdatabase%2$s%3$s",
       System.getProperty("user.dir"), File.separator, "invoice_database.txt");
-  private final File databaseFile = new File(databaseFilePath);
+  private final File legacyDatabaseFile = new File(databaseFilePath);
+  private final File databaseFile = new File(databaseFilePath + ".000001");
   private final File expectedDatabaseFile = new File(expectedDatabaseFilePath);
+  private final File quarantineFile = new File(databaseFilePath + ".000001.quarantine");
   private InvoiceDatabase inFileRepository;
 
   @BeforeEach
   void setUp() throws DatabaseOperationException, IOException {
-    if (databaseFile.exists()) {
-      databaseFile.delete();
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE);
+    for (int segment : segmentedFileHelper.listSegments()) {
+      segmentedFileHelper.getSegment(segment).delete();
+      new File(segmentedFileHelper.getSegment(segment).getFilePath() + ".migration").delete();
+    }
+    segmentedFileHelper.getMigrationProgressFile().delete();
+    if (legacyDatabaseFile.exists()) {
+      legacyDatabaseFile.delete();
     }
-    inFileRepository = new InFileInvoiceDatabase(new FileHelper(databaseFilePath), mapper);
+    quarantineFile.delete();
+    segmentedFileHelper.getIndexFile().delete();
+    inFileRepository = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
     if (expectedDatabaseFile.exists()) {
       expectedDatabaseFile.delete();
       expectedDatabaseFile.createNewFile();
     }
   }
 
+  private void reopenDatabase() throws DatabaseOperationException {
+    inFileRepository = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+  }
+
+  private String getTombstone(String invoiceId) throws IOException {
+    return mapper.writeValueAsString(Collections.singletonMap("tombstone", invoiceId));
+  }
+
+  private String getChecksummedLine(String record) {
+    return StandardCharsets.UTF_8.decode(RecordFraming.LINES.frame(record.getBytes(StandardCharsets.UTF_8))).toString().trim();
+  }
+
   @Test
   @DisplayName("Should save new invoice to empty database when save is invoked.")
   void saveShouldSaveNewInvoiceToNewDatabase() throws IOException, DatabaseOperationException {
@@ -58,7 +102,7 @@ public class InFileInvoiceDatabaseIT {
     Invoice alteredInvoice = copyInvoice(invoice);
     alteredInvoice.setId("17");
     String invoiceAsJson = mapper.writeValueAsString(invoice);
-    FileUtils.writeLines(expectedDatabaseFile, Collections.singleton(invoiceAsJson), null);
+    FileUtils.writeLines(expectedDatabaseFile, Collections.singleton(getChecksummedLine(invoiceAsJson)), null);
 
     //when
     inFileRepository.save(alteredInvoice);
@@ -80,8 +124,9 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
-    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
-    InFileInvoiceDatabase testInFileInvoiceRepository = new InFileInvoiceDatabase(new FileHelper(databaseFilePath), mapper);
+    reopenDatabase();
+    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, getChecksummedLine(invoice3AsJson)), null);
+    InFileInvoiceDatabase testInFileInvoiceRepository = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
 
     //when
     testInFileInvoiceRepository.save(alteredInvoice3);
@@ -91,21 +136,24 @@ public class InFileInvoiceDatabaseIT {
   }
 
   @Test
-  @DisplayName("Should replace invoice in database file when save is called and invoiceId is already present in database.")
-  void saveShouldReplaceInvoiceInNewDatabase() throws IOException, DatabaseOperationException {
+  @DisplayName("Should append new version of invoice to database file when save is called and invoiceId is already present in database.")
+  void saveShouldAppendNewVersionOfInvoiceToDatabase() throws IOException, DatabaseOperationException {
     //given
     Invoice invoice = getRandomInvoiceWithSpecificId("1");
     Invoice alteredInvoice = getRandomInvoiceWithSpecificId("1");
     String invoiceAsJson = mapper.writeValueAsString(invoice);
     String alteredInvoiceAsJson = mapper.writeValueAsString(alteredInvoice);
-    FileUtils.writeLines(expectedDatabaseFile, Collections.singleton(alteredInvoiceAsJson), null);
+    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoiceAsJson, getChecksummedLine(alteredInvoiceAsJson)), null);
     FileUtils.writeLines(databaseFile, Collections.singleton(invoiceAsJson), null);
+    reopenDatabase();
 
     //when
     inFileRepository.save(alteredInvoice);
 
     //then
     assertTrue(FileUtils.contentEquals(expectedDatabaseFile, databaseFile));
+    assertEquals(Optional.of(alteredInvoice), inFileRepository.findById("1"));
+    assertEquals(Collections.singletonList(alteredInvoice), inFileRepository.findAll());
   }
 
   @Test
@@ -117,6 +165,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
+    reopenDatabase();
 
     //when
     Optional<Invoice> actualInvoice = inFileRepository.findById(invoice1.getId());
@@ -134,6 +183,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
+    reopenDatabase();
 
     //when
     Optional<Invoice> actualInvoice = inFileRepository.findById("-1");
@@ -157,6 +207,7 @@ public class InFileInvoiceDatabaseIT {
   void shouldReturnEmptyOptionalWhenFindByIdCalledAndDatabaseFileContainsInvalidData() throws DatabaseOperationException, IOException {
     //given
     FileUtils.writeLines(databaseFile, Collections.singletonList("xyz"), null);
+    reopenDatabase();
 
     //when
     Optional<Invoice> actualInvoice = inFileRepository.findById(getRandomInvoice().getId());
@@ -174,6 +225,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoices = inFileRepository.findAll();
@@ -203,6 +255,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesBySellerName = inFileRepository.findAllBySellerName(invoice2.getSeller().getName());
@@ -222,6 +275,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesBySellerName = inFileRepository.findAllBySellerName("XYZ");
@@ -245,6 +299,7 @@ public class InFileInvoiceDatabaseIT {
   void findAllBySellerNameShouldReturnEmptyListWhenDatabaseContainsInvalidData() throws DatabaseOperationException, IOException {
     //given
     FileUtils.writeLines(databaseFile, Collections.singletonList("xyz"), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesBySellerName = inFileRepository.findAllBySellerName(getRandomInvoice().getSeller().getName());
@@ -264,6 +319,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesByBuyerName = inFileRepository.findAllByBuyerName(invoice2.getBuyer().getName());
@@ -283,6 +339,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesByBuyerName = inFileRepository.findAllBySellerName("Hitachi");
@@ -306,6 +363,7 @@ public class InFileInvoiceDatabaseIT {
   void findAllByBuyerNameShouldReturnEmptyListWhenDatabaseFileContainsInvalidData() throws DatabaseOperationException, IOException {
     //given
     FileUtils.writeLines(databaseFile, Collections.singletonList("xyz"), null);
+    reopenDatabase();
 
     //when
     Iterable<Invoice> actualInvoicesByBuyerName = inFileRepository.findAllByBuyerName(getRandomInvoice().getBuyer().getName());
@@ -325,6 +383,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
 
     //when
     long actualInvoiceCount = inFileRepository.count();
@@ -348,6 +407,7 @@ public class InFileInvoiceDatabaseIT {
   void countShouldReturnZeroWhenDatabaseContainsInvalidData() throws DatabaseOperationException, IOException {
     //given
     FileUtils.writeLines(databaseFile, Collections.singletonList("xyz"), null);
+    reopenDatabase();
 
     //when
     long actualInvoiceCount = inFileRepository.count();
@@ -365,6 +425,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
+    reopenDatabase();
 
     //when
     boolean actualResult = inFileRepository.existsById(invoice2.getId());
@@ -383,6 +444,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice1AsJson = mapper.writeValueAsString(invoice1);
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson), null);
+    reopenDatabase();
 
     //when
     boolean actualResult = inFileRepository.existsById(invoice3.getId());
@@ -406,6 +468,7 @@ public class InFileInvoiceDatabaseIT {
   void existsByIdShouldReturnFalseWhenDatabaseContainsInvalidData() throws IOException, DatabaseOperationException {
     //given
     FileUtils.writeLines(databaseFile, Collections.singletonList("xyz"), null);
+    reopenDatabase();
 
     //when
     boolean actualResult = inFileRepository.existsById(getRandomInvoice().getId());
@@ -415,7 +478,7 @@ public class InFileInvoiceDatabaseIT {
   }
 
   @Test
-  @DisplayName("Should delete specified invoice when deleteById is invoked.")
+  @DisplayName("Should append tombstone of specified invoice when deleteById is invoked.")
   void shouldDeleteSpecifiedInvoice() throws IOException, DatabaseOperationException {
     //given
     Invoice invoice1 = getRandomInvoice();
@@ -425,13 +488,65 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
-    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice3AsJson), null);
+    reopenDatabase();
+    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson, getChecksummedLine(getTombstone(invoice2.getId()))), null);
 
     //when
     inFileRepository.deleteById(invoice2.getId());
 
     //then
     assertTrue(FileUtils.contentEquals(expectedDatabaseFile, databaseFile));
+    assertEquals(Arrays.asList(invoice1, invoice3), inFileRepository.findAll());
+    reopenDatabase();
+    assertFalse(inFileRepository.existsById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should rewrite only live invoices to database file when compact is invoked.")
+  void compactShouldRemoveObsoleteRecordsFromDatabaseFile() throws IOException, DatabaseOperationException {
+    //given
+    Invoice invoice1 = getRandomInvoiceWithSpecificId("1");
+    Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    Invoice invoice3 = getRandomInvoiceWithSpecificId("3");
+    Invoice updatedInvoice1 = getRandomInvoiceWithSpecificId("1");
+    FileUtils.writeLines(databaseFile, Arrays.asList(mapper.writeValueAsString(invoice1), mapper.writeValueAsString(invoice2),
+        mapper.writeValueAsString(invoice3), mapper.writeValueAsString(updatedInvoice1), getTombstone("2")), null);
+    FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(getChecksummedLine(mapper.writeValueAsString(invoice3)),
+        getChecksummedLine(mapper.writeValueAsString(updatedInvoice1))), null);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+
+    //when
+    database.compact();
+
+    //then
+    assertTrue(FileUtils.contentEquals(expectedDatabaseFile, databaseFile));
+    assertEquals(0.0, database.getGarbageRatio());
+    assertEquals(Arrays.asList(invoice3, updatedInvoice1), database.findAll());
+    assertEquals(Optional.of(updatedInvoice1), database.findById("1"));
+    assertFalse(new File(databaseFile.getPath() + ".compaction").exists());
+  }
+
+  @Test
+  @DisplayName("Should keep database usable after compaction.")
+  void databaseShouldBeUsableAfterCompaction() throws IOException, DatabaseOperationException {
+    //given
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    database.deleteById(invoice1.getId());
+    database.compact();
+
+    //when
+    Invoice invoice3 = database.save(getRandomInvoice());
+    Invoice updatedInvoice2 = database.save(getRandomInvoiceWithSpecificId(invoice2.getId()));
+
+    //then
+    assertEquals("3", invoice3.getId());
+    assertEquals(Arrays.asList(invoice3, updatedInvoice2), database.findAll());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+    assertEquals(Optional.of(updatedInvoice2), reopenedDatabase.findById(invoice2.getId()));
+    assertEquals(Optional.of(invoice3), reopenedDatabase.findById(invoice3.getId()));
+    assertEquals(2L, reopenedDatabase.count());
   }
 
   @Test
@@ -445,6 +560,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
     FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
 
     //when
@@ -469,6 +585,7 @@ public class InFileInvoiceDatabaseIT {
     String invoice2AsJson = mapper.writeValueAsString(invoice2);
     String invoice3AsJson = mapper.writeValueAsString(invoice3);
     FileUtils.writeLines(databaseFile, Arrays.asList(invoice1AsJson, invoice2AsJson, invoice3AsJson), null);
+    reopenDatabase();
     FileUtils.writeLines(expectedDatabaseFile, Arrays.asList(invoice1AsJson, invoice3AsJson), null);
 
     //when
@@ -487,4 +604,543 @@ public class InFileInvoiceDatabaseIT {
     //then
     assertTrue(FileUtils.contentEquals(expectedDatabaseFile, databaseFile));
   }
+
+  @Test
+  @DisplayName("Should adopt legacy single-file database as first segment when database is opened.")
+  void shouldAdoptLegacyDatabaseFileAsFirstSegment() throws IOException, DatabaseOperationException {
+    //given
+    Invoice invoice = getRandomInvoiceWithSpecificId("1");
+    new File(databaseFile.getPath()).delete();
+    FileUtils.writeLines(legacyDatabaseFile, Collections.singleton(mapper.writeValueAsString(invoice)), null);
+
+    //when
+    reopenDatabase();
+
+    //then
+    assertEquals(Optional.of(invoice), inFileRepository.findById("1"));
+    assertFalse(legacyDatabaseFile.exists());
+    assertTrue(databaseFile.exists());
+  }
+
+  @Test
+  @DisplayName("Should quarantine corrupt records and truncate torn tail when database is opened after crash.")
+  void shouldRecoverDatabaseWithCorruptRecordAndTornTail() throws IOException, DatabaseOperationException {
+    //given
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice invoice3 = database.save(getRandomInvoice());
+    database.close();
+    long secondRecordOffset = FileUtils.readLines(databaseFile).get(0).length() + System.lineSeparator().length();
+    try (RandomAccessFile file = new RandomAccessFile(databaseFile, "rw")) {
+      file.seek(secondRecordOffset + 20);
+      int value = file.read();
+      file.seek(secondRecordOffset + 20);
+      file.write(value ^ 1);
+      file.seek(file.length());
+      file.write("0badc0de {\"id\":".getBytes(StandardCharsets.UTF_8));
+    }
+
+    //when
+    InFileInvoiceDatabase recoveredDatabase = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+
+    //then
+    RecoveryReport report = recoveredDatabase.getRecoveryReport();
+    assertEquals(2, report.getValidRecords());
+    assertEquals(1, report.getCorruptRecords());
+    assertEquals(15, report.getTruncatedBytes());
+    assertTrue(report.isRewritten());
+    assertEquals(Arrays.asList(invoice1, invoice3), recoveredDatabase.findAll());
+    assertFalse(recoveredDatabase.existsById(invoice2.getId()));
+    assertTrue(quarantineFile.length() > 15);
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+    assertEquals(0, reopenedDatabase.getRecoveryReport().getCorruptRecords());
+    assertEquals(0, reopenedDatabase.getRecoveryReport().getTruncatedBytes());
+    assertEquals(invoice3, reopenedDatabase.save(invoice3));
+  }
+
+  @Test
+  @DisplayName("Should load index from checkpoint and replay only records appended after it when database is opened.")
+  void shouldReplayOnlyLogTailWrittenAfterCheckpoint() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 2048);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    database.deleteById(invoices.remove(0).getId());
+    database.close();
+    InFileInvoiceDatabase databaseOpenedFromCheckpoint = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    invoices.add(databaseOpenedFromCheckpoint.save(getRandomInvoice()));
+    invoices.set(0, databaseOpenedFromCheckpoint.save(getRandomInvoiceWithSpecificId(invoices.get(0).getId())));
+
+    //when
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+
+    //then
+    assertTrue(segmentedFileHelper.getIndexFile().exists());
+    assertTrue(segmentedFileHelper.listSegments().size() > 1);
+    assertEquals(0, databaseOpenedFromCheckpoint.getRecoveryReport().getValidRecords());
+    assertEquals(2, reopenedDatabase.getRecoveryReport().getValidRecords());
+    assertEquals(10, reopenedDatabase.count());
+    assertEquals(invoices.get(0), reopenedDatabase.findById(invoices.get(0).getId()).get());
+    assertEquals(new HashSet<>(invoices), new HashSet<>((List<Invoice>) reopenedDatabase.findAll()));
+    assertEquals("12", reopenedDatabase.save(getRandomInvoice()).getId());
+  }
+
+  @Test
+  @DisplayName("Should find invoices issued in given date range after updates, deletions and reopening database.")
+  void shouldFindInvoicesIssuedInGivenDateRange() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 2048);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice1 = database.save(getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 1)));
+    Invoice invoice2 = database.save(getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 20)));
+    Invoice invoice3 = database.save(getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 31)));
+    database.save(getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 2, 1)));
+    Invoice invoiceToUpdate = getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2018, 12, 1));
+    invoiceToUpdate.setId(invoice1.getId());
+    database.save(invoiceToUpdate);
+    database.deleteById(invoice2.getId());
+    database.close();
+    Invoice invoice5 = new InFileInvoiceDatabase(segmentedFileHelper, mapper).save(getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2019, 1, 15)));
+
+    //when
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Iterable<Invoice> result = reopenedDatabase.findAllByIssueDateBetween(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31));
+
+    //then
+    assertEquals(1, reopenedDatabase.getRecoveryReport().getValidRecords());
+    assertEquals(Arrays.asList(invoice3, invoice5), result);
+    segmentedFileHelper.getIndexFile().delete();
+    assertEquals(Arrays.asList(invoice3, invoice5),
+        new InFileInvoiceDatabase(segmentedFileHelper, mapper).findAllByIssueDateBetween(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 1, 31)));
+  }
+
+  @Test
+  @DisplayName("Should return consecutive pages of invoices ordered by id from all segments.")
+  void shouldReturnPagesOfInvoicesFromAllSegments() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 2048);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 11; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    invoices.set(0, database.save(getRandomInvoiceWithSpecificId(invoices.get(0).getId())));
+    database.deleteById(invoices.remove(5).getId());
+
+    //when
+    List<Invoice> pagedInvoices = new ArrayList<>();
+    List<Invoice> page = (List<Invoice>) database.findPage(null, 3);
+    while (!page.isEmpty()) {
+      pagedInvoices.addAll(page);
+      page = (List<Invoice>) database.findPage(page.get(page.size() - 1).getId(), 3);
+    }
+
+    //then
+    assertTrue(segmentedFileHelper.listSegments().size() > 1);
+    assertEquals(invoices, pagedInvoices);
+  }
+
+  @Test
+  @DisplayName("Should return summaries of current invoices before and after reopening database.")
+  void shouldReturnSummariesOfCurrentInvoices() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 2048);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 11; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    invoices.set(0, database.save(getRandomInvoiceWithSpecificId(invoices.get(0).getId())));
+    database.deleteById(invoices.remove(5).getId());
+    List<InvoiceSummary> expectedSummaries = invoices.stream().map(InvoiceSummary::new).collect(Collectors.toList());
+
+    //when
+    Iterable<InvoiceSummary> summaries = database.findAllSummaries();
+    database.close();
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+
+    //then
+    assertEquals(expectedSummaries, summaries);
+    assertEquals(expectedSummaries.subList(3, 6), reopenedDatabase.findSummaryPage(invoices.get(2).getId(), 3));
+    assertEquals(expectedSummaries, reopenedDatabase.findAllSummaries());
+  }
+
+  @Test
+  @DisplayName("Should add and update all passed invoices with single commit and keep them after reopening database.")
+  void saveAllShouldAddAndUpdateInvoices() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 2048);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice existingInvoice = database.save(getRandomInvoice());
+    List<Invoice> invoicesToSave = new ArrayList<>();
+    invoicesToSave.add(getRandomInvoiceWithSpecificId(existingInvoice.getId()));
+    for (int i = 0; i < 10; i++) {
+      invoicesToSave.add(getRandomInvoiceWithNoId());
+    }
+
+    //when
+    List<Invoice> savedInvoices = (List<Invoice>) database.saveAll(invoicesToSave);
+
+    //then
+    assertEquals(11, savedInvoices.size());
+    assertEquals(invoicesToSave.get(0), savedInvoices.get(0));
+    assertEquals("2", savedInvoices.get(1).getId());
+    assertEquals("11", savedInvoices.get(10).getId());
+    assertTrue(segmentedFileHelper.listSegments().size() > 1);
+    assertEquals(savedInvoices, database.findAll());
+    database.close();
+    assertEquals(savedInvoices, new InFileInvoiceDatabase(segmentedFileHelper, mapper).findAll());
+  }
+
+  @Test
+  @DisplayName("Should stream all invoices ordered by id in batches when streamAll is invoked.")
+  void shouldStreamAllInvoices() throws IOException, DatabaseOperationException {
+    //given
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      invoices.add(inFileRepository.save(getRandomInvoice()));
+    }
+    inFileRepository.deleteById(invoices.remove(120).getId());
+    List<Invoice> streamedInvoices = new ArrayList<>();
+
+    //when
+    inFileRepository.streamAll(streamedInvoices::add);
+
+    //then
+    assertEquals(invoices, streamedInvoices);
+  }
+
+  @Test
+  @DisplayName("Should rebuild index from database files when checkpoint does not match segments.")
+  void shouldRebuildIndexWhenCheckpointDoesNotMatchSegments() throws IOException, DatabaseOperationException {
+    //given
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    database.close();
+    Invoice invoice2 = getRandomInvoiceWithSpecificId("2");
+    FileUtils.writeLines(databaseFile, Collections.singleton(mapper.writeValueAsString(invoice2)), null);
+
+    //when
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE), mapper);
+
+    //then
+    assertTrue(new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE).getIndexFile().exists());
+    assertEquals(Collections.singletonList(invoice2), reopenedDatabase.findAll());
+    assertFalse(reopenedDatabase.existsById(invoice1.getId()));
+  }
+
+  @Test
+  @DisplayName("Should write new index checkpoint after compaction.")
+  void compactShouldWriteIndexCheckpoint() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice updatedInvoice1 = database.save(getRandomInvoiceWithSpecificId(invoice1.getId()));
+    assertFalse(segmentedFileHelper.getIndexFile().exists());
+
+    //when
+    database.compact();
+
+    //then
+    assertTrue(segmentedFileHelper.getIndexFile().exists());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    assertEquals(0, reopenedDatabase.getRecoveryReport().getValidRecords());
+    assertEquals(Arrays.asList(invoice2, updatedInvoice1), reopenedDatabase.findAll());
+    assertEquals(Optional.of(invoice2), reopenedDatabase.findById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should not reuse id of deleted invoice with highest id after compaction and rebuilding index from database files.")
+  void compactShouldKeepInvoiceIdHighWaterMark() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice invoice3 = database.save(getRandomInvoice());
+    database.deleteById(invoice2.getId());
+    database.deleteById(invoice3.getId());
+
+    //when
+    int compactedSegments = database.compact();
+    int compactedSegmentsAgain = database.compact();
+    database.close();
+    segmentedFileHelper.getIndexFile().delete();
+    InFileInvoiceDatabase rebuiltDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice4 = rebuiltDatabase.save(getRandomInvoice());
+
+    //then
+    assertEquals(1, compactedSegments);
+    assertEquals(0, compactedSegmentsAgain);
+    assertEquals(Arrays.asList(getChecksummedLine(mapper.writeValueAsString(invoice1)), getChecksummedLine(getTombstone(invoice3.getId()))),
+        segmentedFileHelper.getSegment(1).readLines());
+    assertEquals("4", invoice4.getId());
+    assertEquals(Arrays.asList(invoice1, invoice4), rebuiltDatabase.findAll());
+  }
+
+  @Test
+  @DisplayName("Should replace index checkpoint when compaction removes empty segment.")
+  void compactShouldReplaceIndexCheckpointWhenRemovingEmptySegment() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice updatedInvoice1 = database.save(getRandomInvoiceWithSpecificId(invoice1.getId()));
+    database.checkpoint();
+
+    //when
+    database.compact();
+
+    //then
+    assertTrue(segmentedFileHelper.getIndexFile().exists());
+    assertEquals(Arrays.asList(2, 3), segmentedFileHelper.listSegments());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    assertEquals(0, reopenedDatabase.getRecoveryReport().getValidRecords());
+    assertEquals(Arrays.asList(invoice2, updatedInvoice1), reopenedDatabase.findAll());
+  }
+
+  @Test
+  @DisplayName("Should append to new segment when active segment reaches maximum size and read invoices from all segments.")
+  void shouldRollOverToNewSegmentWhenActiveSegmentIsFull() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    String firstSegmentContent = FileUtils.readFileToString(databaseFile);
+
+    //when
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice invoice3 = database.save(getRandomInvoice());
+
+    //then
+    assertEquals(Arrays.asList(1, 2, 3), segmentedFileHelper.listSegments());
+    assertTrue(firstSegmentContent.isEmpty());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    assertEquals(Arrays.asList(invoice1, invoice2, invoice3), reopenedDatabase.findAll());
+    assertEquals(Optional.of(invoice2), reopenedDatabase.findById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should keep tombstones in newer segments and remove empty segments when compact is invoked.")
+  void compactShouldCompactSegmentsOneByOne() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice updatedInvoice1 = database.save(getRandomInvoiceWithSpecificId(invoice1.getId()));
+    database.deleteById(invoice2.getId());
+    Invoice invoice3 = database.save(getRandomInvoice());
+
+    //when
+    database.compact();
+
+    //then
+    assertEquals(Arrays.asList(3, 4, 5), segmentedFileHelper.listSegments());
+    assertEquals(Collections.singletonList(getChecksummedLine(getTombstone(invoice2.getId()))), segmentedFileHelper.getSegment(4).readLines());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    assertEquals(Arrays.asList(updatedInvoice1, invoice3), reopenedDatabase.findAll());
+    assertFalse(reopenedDatabase.existsById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should read invoices from memory-mapped sealed segments and remap segments after compaction.")
+  void shouldReadInvoicesFromMemoryMappedSegments() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setMemoryMappedReads(true);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper, properties);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice updatedInvoice1 = database.save(getRandomInvoiceWithSpecificId(invoice1.getId()));
+    Invoice invoice3 = database.save(getRandomInvoice());
+
+    //when
+    database.compact();
+
+    //then
+    assertEquals(Arrays.asList(invoice2, updatedInvoice1, invoice3), database.findAll());
+    assertEquals(Optional.of(updatedInvoice1), database.findById(invoice1.getId()));
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper, properties);
+    assertEquals(Arrays.asList(invoice2, updatedInvoice1, invoice3), reopenedDatabase.findAll());
+    assertEquals(Optional.of(invoice2), reopenedDatabase.findById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should store invoices in binary record format across segments, compaction and memory-mapped reads.")
+  void shouldStoreInvoicesInBinaryRecordFormat() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 1);
+    InFileDatabaseProperties properties = new InFileDatabaseProperties();
+    properties.setRecordFormat(RecordFormat.BINARY);
+    properties.setMemoryMappedReads(true);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper, properties);
+    Invoice invoice1 = database.save(getRandomInvoice());
+    Invoice invoice2 = database.save(getRandomInvoice());
+    Invoice updatedInvoice1 = database.save(getRandomInvoiceWithSpecificId(invoice1.getId()));
+    Invoice invoice3 = database.save(getRandomInvoice());
+    database.deleteById(invoice2.getId());
+
+    //when
+    database.compact();
+    database.close();
+
+    //then
+    assertEquals(Arrays.asList(updatedInvoice1, invoice3), database.findAll());
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(segmentedFileHelper, mapper, properties);
+    assertEquals(Arrays.asList(updatedInvoice1, invoice3), reopenedDatabase.findAll());
+    assertEquals(Optional.of(invoice3), reopenedDatabase.findById(invoice3.getId()));
+    assertFalse(reopenedDatabase.existsById(invoice2.getId()));
+  }
+
+  @Test
+  @DisplayName("Should keep all invoices when database is migrated from JSON to binary format and back.")
+  void shouldKeepInvoicesWhenDatabaseIsMigratedBetweenRecordFormats() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 4096);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    database.deleteById(invoices.remove(3).getId());
+    database.close();
+    InvoiceRecordCodec jsonCodec = RecordFormat.JSON.createCodec(mapper);
+    InvoiceRecordCodec binaryCodec = RecordFormat.BINARY.createCodec(mapper);
+    InFileDatabaseProperties binaryProperties = new InFileDatabaseProperties();
+    binaryProperties.setRecordFormat(RecordFormat.BINARY);
+
+    //when
+    InFileDatabaseMigrator.main(new String[] {databaseFilePath, "json", "binary"});
+    List<Invoice> invoicesInBinaryFormat = (List<Invoice>) new InFileInvoiceDatabase(segmentedFileHelper, binaryCodec, binaryProperties).findAll();
+    int migratedToJson = new InFileDatabaseMigrator(segmentedFileHelper, binaryCodec, jsonCodec).migrate();
+
+    //then
+    assertEquals(11, migratedToJson);
+    assertEquals(invoices, invoicesInBinaryFormat);
+    assertEquals(invoices, new InFileInvoiceDatabase(segmentedFileHelper, mapper).findAll());
+    assertTrue(segmentedFileHelper.listSegments().size() > 1);
+  }
+
+  @Test
+  @DisplayName("Should fail migration and leave database intact when source format does not match database content.")
+  void migrateShouldFailWhenSourceFormatDoesNotMatchDatabaseContent() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, MAX_SEGMENT_SIZE);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    Invoice invoice = database.save(getRandomInvoice());
+    database.close();
+    InFileDatabaseMigrator migrator = new InFileDatabaseMigrator(segmentedFileHelper, RecordFormat.BINARY.createCodec(mapper),
+        RecordFormat.JSON.createCodec(mapper));
+
+    //then
+    assertThrows(DatabaseOperationException.class, migrator::migrate);
+    assertEquals(Collections.singletonList(invoice), new InFileInvoiceDatabase(segmentedFileHelper, mapper).findAll());
+    assertFalse(new File(databaseFile.getPath() + ".migration").exists());
+  }
+
+  @Test
+  @DisplayName("Should leave every segment in source format when a later segment cannot be migrated.")
+  void migrateShouldLeaveEverySegmentInSourceFormatWhenLaterSegmentCannotBeMigrated() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 4096);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    database.close();
+    List<Integer> segments = segmentedFileHelper.listSegments();
+    File firstSegment = new File(segmentedFileHelper.getSegment(segments.get(0)).getFilePath());
+    byte[] firstSegmentContent = FileUtils.readFileToByteArray(firstSegment);
+    FileUtils.writeStringToFile(new File(segmentedFileHelper.getSegment(segments.get(segments.size() - 1)).getFilePath()), "not a record\n",
+        StandardCharsets.UTF_8, true);
+    InFileDatabaseMigrator migrator = new InFileDatabaseMigrator(segmentedFileHelper, RecordFormat.JSON.createCodec(mapper),
+        RecordFormat.BINARY.createCodec(mapper));
+
+    //then
+    assertThrows(DatabaseOperationException.class, migrator::migrate);
+    assertArrayEquals(firstSegmentContent, FileUtils.readFileToByteArray(firstSegment));
+    for (int segment : segments) {
+      assertFalse(new File(segmentedFileHelper.getSegment(segment).getFilePath() + ".migration").exists());
+    }
+    assertFalse(segmentedFileHelper.getMigrationProgressFile().exists());
+    assertTrue(segments.size() > 1);
+    assertEquals(invoices, new InFileInvoiceDatabase(segmentedFileHelper, mapper).findAll());
+  }
+
+  @Test
+  @DisplayName("Should finish migration interrupted while replacing segments when it is run again.")
+  void migrateShouldFinishMigrationInterruptedWhileReplacingSegments() throws IOException, DatabaseOperationException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(databaseFilePath, 4096);
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(segmentedFileHelper, mapper);
+    List<Invoice> invoices = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      invoices.add(database.save(getRandomInvoice()));
+    }
+    database.close();
+    List<Integer> segments = segmentedFileHelper.listSegments();
+    List<byte[]> jsonSegmentContents = new ArrayList<>();
+    for (int segment : segments) {
+      jsonSegmentContents.add(FileUtils.readFileToByteArray(new File(segmentedFileHelper.getSegment(segment).getFilePath())));
+    }
+    InvoiceRecordCodec jsonCodec = RecordFormat.JSON.createCodec(mapper);
+    InvoiceRecordCodec binaryCodec = RecordFormat.BINARY.createCodec(mapper);
+    int migratedRecords = new InFileDatabaseMigrator(segmentedFileHelper, jsonCodec, binaryCodec).migrate();
+    for (int i = 1; i < segments.size(); i++) {
+      File segmentFile = new File(segmentedFileHelper.getSegment(segments.get(i)).getFilePath());
+      FileUtils.moveFile(segmentFile, new File(segmentFile.getPath() + ".migration"));
+      FileUtils.writeByteArrayToFile(segmentFile, jsonSegmentContents.get(i));
+    }
+    segmentedFileHelper.getMigrationProgressFile().writeAtomically(String.valueOf(migratedRecords).getBytes(StandardCharsets.UTF_8));
+    InFileDatabaseProperties binaryProperties = new InFileDatabaseProperties();
+    binaryProperties.setRecordFormat(RecordFormat.BINARY);
+
+    //when
+    int resumedRecords = new InFileDatabaseMigrator(segmentedFileHelper, jsonCodec, binaryCodec).migrate();
+
+    //then
+    assertEquals(migratedRecords, resumedRecords);
+    assertTrue(segments.size() > 1);
+    assertFalse(segmentedFileHelper.getMigrationProgressFile().exists());
+    assertEquals(invoices, new InFileInvoiceDatabase(segmentedFileHelper, binaryCodec, binaryProperties).findAll());
+  }
+
+  @Test
+  @DisplayName("Should persist all invoices when save is invoked concurrently.")
+  void shouldPersistAllInvoicesWhenSaveIsInvokedConcurrently() throws Exception {
+    //given
+    InFileInvoiceDatabase database = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, 4096), mapper);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Invoice>> futures = new ArrayList<>();
+
+    //when
+    try {
+      for (int i = 0; i < 100; i++) {
+        futures.add(executor.submit(() -> database.save(getRandomInvoice())));
+      }
+      for (Future<Invoice> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      database.close();
+    }
+
+    //then
+    InFileInvoiceDatabase reopenedDatabase = new InFileInvoiceDatabase(new SegmentedFileHelper(databaseFilePath, 4096), mapper);
+    assertEquals(100L, reopenedDatabase.count());
+    for (Future<Invoice> future : futures) {
+      assertEquals(Optional.of(future.get()), reopenedDatabase.findById(future.get().getId()));
+    }
+  }
 }
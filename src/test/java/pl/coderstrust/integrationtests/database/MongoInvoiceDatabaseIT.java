@@ -19,6 +19,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
+import org.bson.Document;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -27,6 +28,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import pl.coderstrust.configuration.MongoDatabaseProperties;
@@ -34,6 +36,7 @@ import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.database.invoice.InvoiceDatabase;
 import pl.coderstrust.database.invoice.MongoInvoiceDatabase;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 @ExtendWith(SpringExtension.class)
 class MongoInvoiceDatabaseIT {
@@ -75,7 +78,7 @@ class MongoInvoiceDatabaseIT {
 
   @AfterEach
   void cleanDatabase() {
-    mongoTemplate.getCollection(properties.getCollectionName()).drop();
+    mongoTemplate.getCollection(properties.getCollectionName()).deleteMany(new Document());
   }
 
   @Test
@@ -108,6 +111,25 @@ class MongoInvoiceDatabaseIT {
     assertEquals(Collections.singletonList(alteredInvoice), mongoDatabase.findAll());
   }
 
+  @Test
+  @DisplayName("Should add new and replace existing invoices when saveAll is invoked.")
+  void saveAllShouldAddAndReplaceInvoices() throws DatabaseOperationException {
+    //given
+    Invoice existingInvoice = mongoDatabase.save(getRandomInvoiceWithNoId());
+    Invoice alteredInvoice = copyInvoice(existingInvoice);
+    alteredInvoice.setComments("random line of comments");
+    Invoice newInvoice = getRandomInvoiceWithNoId();
+
+    //when
+    List<Invoice> savedInvoices = (List<Invoice>) mongoDatabase.saveAll(Arrays.asList(alteredInvoice, newInvoice));
+
+    //then
+    assertEquals(alteredInvoice, savedInvoices.get(0));
+    assertEquals(Optional.of(savedInvoices.get(1)), mongoDatabase.findById(savedInvoices.get(1).getId()));
+    assertEquals(Optional.of(alteredInvoice), mongoDatabase.findById(existingInvoice.getId()));
+    assertEquals(2L, mongoDatabase.count());
+  }
+
   @Test
   @DisplayName("Should return invoice with specified id when findById is invoked.")
   void shouldReturnInvoiceWithSpecifiedId() throws DatabaseOperationException {
@@ -160,6 +182,42 @@ class MongoInvoiceDatabaseIT {
     assertEquals(Arrays.asList(invoice1, invoice2, invoice3), actualInvoices);
   }
 
+  @Test
+  @DisplayName("Should return consecutive pages of invoices ordered by id when findPage is invoked.")
+  void shouldReturnPagesOfInvoicesOrderedById() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = mongoDatabase.save(getRandomInvoiceWithNoId());
+    Invoice invoice2 = mongoDatabase.save(getRandomInvoiceWithNoId());
+    Invoice invoice3 = mongoDatabase.save(getRandomInvoiceWithNoId());
+
+    //when
+    Iterable<Invoice> firstPage = mongoDatabase.findPage(null, 2);
+    Iterable<Invoice> secondPage = mongoDatabase.findPage(invoice2.getId(), 2);
+
+    //then
+    assertEquals(Arrays.asList(invoice1, invoice2), firstPage);
+    assertEquals(Collections.singletonList(invoice3), secondPage);
+  }
+
+  @Test
+  @DisplayName("Should return consecutive pages of invoice summaries ordered by id when findSummaryPage is invoked.")
+  void shouldReturnPagesOfInvoiceSummariesOrderedById() throws DatabaseOperationException {
+    //given
+    Invoice invoice1 = mongoDatabase.save(getRandomInvoiceWithNoId());
+    Invoice invoice2 = mongoDatabase.save(getRandomInvoiceWithNoId());
+    Invoice invoice3 = mongoDatabase.save(getRandomInvoiceWithNoId());
+
+    //when
+    Iterable<InvoiceSummary> firstPage = mongoDatabase.findSummaryPage(null, 2);
+    Iterable<InvoiceSummary> secondPage = mongoDatabase.findSummaryPage(invoice2.getId(), 2);
+
+    //then
+    assertEquals(Arrays.asList(new InvoiceSummary(invoice1), new InvoiceSummary(invoice2)), firstPage);
+    assertEquals(Collections.singletonList(new InvoiceSummary(invoice3)), secondPage);
+    assertEquals(Arrays.asList(new InvoiceSummary(invoice1), new InvoiceSummary(invoice2), new InvoiceSummary(invoice3)),
+        mongoDatabase.findAllSummaries());
+  }
+
   @Test
   @DisplayName("Should return empty list when findAll is invoked and database contains no invoices.")
   void findAllShouldReturnEmptyListWhenDatabaseIsEmpty() throws DatabaseOperationException {
@@ -188,6 +246,24 @@ class MongoInvoiceDatabaseIT {
     assertEquals(Arrays.asList(invoice1, invoice2), actualInvoices);
   }
 
+  @ParameterizedTest
+  @ValueSource(strings = {"seller.name", "buyer.name", "issueDate", "dueDate"})
+  @DisplayName("Should use index when querying invoices by indexed field.")
+  void shouldUseIndexWhenQueryingByIndexedField(String field) throws DatabaseOperationException {
+    //given
+    mongoDatabase.save(getRandomInvoiceWithNoIdAndSpecificSellerName("Company One"));
+    mongoDatabase.save(getRandomInvoiceWithNoIdAndSpecificBuyerName("Company Two"));
+    Document explainCommand = new Document("explain", new Document("find", properties.getCollectionName()).append("filter", new Document(field, "value")));
+
+    //when
+    Document explainResult = mongoTemplate.getDb().runCommand(explainCommand);
+
+    //then
+    String winningPlan = ((Document) explainResult.get("queryPlanner", Document.class).get("winningPlan")).toJson();
+    assertTrue(winningPlan.contains("IXSCAN"));
+    assertTrue(winningPlan.contains(String.format("\"%s_1\"", field)));
+  }
+
   @Test
   @DisplayName("Should return empty list when findAllBySellerName is invoked and database contains no invoices.")
   void findAllBySellerNameShouldReturnEmptyListWhenDatabaseIsEmpty() throws DatabaseOperationException {
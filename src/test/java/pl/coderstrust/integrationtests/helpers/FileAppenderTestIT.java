@@ -0,0 +1,123 @@
+package pl.coderstrust.integrationtests.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import pl.coderstrust.helpers.FileAppender;
+import pl.coderstrust.helpers.FileHelper;
+import pl.coderstrust.helpers.FsyncPolicy;
+import pl.coderstrust.helpers.RecordFraming;
+
+class FileAppenderTestIT {
+
+  private static final String INPUT_FILE = String.format("src%1$stest%1$sresources%1$shelpers%1$sinput_file", File.separator);
+  private static final int CHECKSUM_PREFIX_LENGTH = 9;
+
+  @BeforeEach
+  void removeTestFile() {
+    new File(INPUT_FILE).delete();
+  }
+
+  @ParameterizedTest
+  @EnumSource(FsyncPolicy.class)
+  void shouldAppendChecksummedLinesReadableByFileHelper(FsyncPolicy fsyncPolicy) throws Exception {
+    //given
+    FileUtils.writeLines(new File(INPUT_FILE), Arrays.asList("1", "22"));
+    long initialSize = new File(INPUT_FILE).length();
+    int frameOverhead = CHECKSUM_PREFIX_LENGTH + System.lineSeparator().length();
+
+    //when
+    try (FileAppender appender = new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, fsyncPolicy, 10)) {
+      long firstEndPosition = appender.append("333".getBytes());
+      appender.commit(firstEndPosition);
+      long secondEndPosition = appender.append("4444".getBytes());
+      appender.commit(secondEndPosition);
+
+      //then
+      assertEquals(initialSize + 3 + frameOverhead, firstEndPosition);
+      assertEquals(firstEndPosition + 4 + frameOverhead, secondEndPosition);
+      assertEquals(secondEndPosition, appender.size());
+    }
+    List<String> records = new ArrayList<>();
+    new FileHelper(INPUT_FILE).forEachRecord(RecordFraming.LINES, (offset, record) -> records.add(StandardCharsets.UTF_8.decode(record).toString()));
+    assertEquals(Arrays.asList("1", "22", "333", "4444"), records);
+  }
+
+  @Test
+  void shouldAppendAllLinesWhenCommitsAreInvokedConcurrently() throws Exception {
+    //given
+    new File(INPUT_FILE).createNewFile();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    //when
+    try (FileAppender appender = new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, FsyncPolicy.EVERY_WRITE, 0)) {
+      for (int i = 0; i < 200; i++) {
+        String line = String.valueOf(i);
+        futures.add(executor.submit(() -> {
+          appender.commit(appender.append(line.getBytes()));
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    //then
+    List<String> lines = new ArrayList<>();
+    new FileHelper(INPUT_FILE).forEachRecord(RecordFraming.LINES, (offset, record) -> lines.add(StandardCharsets.UTF_8.decode(record).toString()));
+    assertEquals(200, lines.size());
+    assertEquals(200, new HashSet<>(lines).size());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenAppendingToClosedAppender() throws IOException {
+    //given
+    new File(INPUT_FILE).createNewFile();
+    FileAppender appender = new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, FsyncPolicy.OS, 0);
+
+    //when
+    appender.close();
+
+    //then
+    assertThrows(IOException.class, () -> appender.append("1".getBytes()));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenFsyncIntervalIsInvalid() throws IOException {
+    new File(INPUT_FILE).createNewFile();
+    assertThrows(IllegalArgumentException.class, () -> new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, FsyncPolicy.INTERVAL, 0));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenTryingToOpenAppenderForNotExistingFile() {
+    assertThrows(FileNotFoundException.class, () -> new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, FsyncPolicy.OS, 0));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenNullRecordIsAppended() throws IOException {
+    new File(INPUT_FILE).createNewFile();
+    try (FileAppender appender = new FileHelper(INPUT_FILE).openAppender(RecordFraming.LINES, FsyncPolicy.OS, 0)) {
+      assertThrows(IllegalArgumentException.class, () -> appender.append(null));
+    }
+  }
+}
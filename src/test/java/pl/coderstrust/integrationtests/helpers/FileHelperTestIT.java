@@ -9,24 +9,35 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import pl.coderstrust.helpers.CorruptRecordException;
+import pl.coderstrust.helpers.FileAppender;
 import pl.coderstrust.helpers.FileHelper;
 import pl.coderstrust.helpers.FileHelperException;
+import pl.coderstrust.helpers.FsyncPolicy;
+import pl.coderstrust.helpers.MappedFile;
+import pl.coderstrust.helpers.RecordFraming;
+import pl.coderstrust.helpers.RecoveryReport;
 
 class FileHelperTestIT {
 
   private static final String INPUT_FILE = String.format("src%1$stest%1$sresources%1$shelpers%1$sinput_file", File.separator);
   private static final String EXPECTED_FILE = String.format("src%1$stest%1$sresources%1$shelpers%1$sexpected_file", File.separator);
+  private static final String QUARANTINE_FILE = String.format("src%1$stest%1$sresources%1$shelpers%1$squarantine_file", File.separator);
 
   private static Stream<Arguments> invalidArgumentsForRemovingSpecificLineFromFile() {
     return Stream.of(
@@ -45,6 +56,12 @@ class FileHelperTestIT {
     if (fileOut.exists()) {
       fileOut.delete();
     }
+    new File(QUARANTINE_FILE).delete();
+  }
+
+  @AfterEach
+  void removeQuarantineFile() {
+    new File(QUARANTINE_FILE).delete();
   }
 
   @Test
@@ -102,6 +119,289 @@ class FileHelperTestIT {
     assertThrows(FileHelperException.class, () -> new FileHelper(INPUT_FILE).removeLine(1));
   }
 
+  @Test
+  void shouldReplaceFileContentWithContentOfSourceFile() throws IOException {
+    //given
+    createFile(INPUT_FILE, Arrays.asList("1", "2"));
+    createFile(EXPECTED_FILE, Arrays.asList("3", "4"));
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //when
+    fileHelper.replaceWith(EXPECTED_FILE);
+
+    //then
+    assertEquals(Arrays.asList("3", "4"), fileHelper.readLines());
+    assertFalse(new File(EXPECTED_FILE).exists());
+  }
+
+  @Test
+  void shouldMapFileAndVisitEachLineWithItsOffset() throws IOException {
+    //given
+    FileUtils.write(new File(INPUT_FILE), "1\n22\r\n333\n4444");
+    MappedFile mappedFile = new FileHelper(INPUT_FILE).map();
+    List<String> lines = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+
+    //when
+    long endOffset = mappedFile.forEachRecord(RecordFraming.LINES, (offset, line) -> {
+      offsets.add(offset);
+      lines.add(StandardCharsets.UTF_8.decode(line).toString());
+    });
+
+    //then
+    assertEquals(Arrays.asList("1", "22", "333"), lines);
+    assertEquals(Arrays.asList(0L, 2L, 6L), offsets);
+    assertEquals(10L, endOffset);
+    assertEquals("22", StandardCharsets.UTF_8.decode(mappedFile.readRecord(RecordFraming.LINES, 2L)).toString());
+    assertEquals("333", StandardCharsets.UTF_8.decode(mappedFile.readRecord(RecordFraming.LINES, 6L)).toString());
+    assertNull(mappedFile.readRecord(RecordFraming.LINES, 14L));
+    assertEquals(14L, mappedFile.size());
+  }
+
+  @Test
+  void shouldVisitAndReadChecksummedLinesSkippingTornTail() throws IOException {
+    //given
+    writeFrames(RecordFraming.LINES, "1", "22");
+    FileUtils.write(new File(INPUT_FILE), "torn", true);
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+    List<String> records = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    long secondRecordOffset = RecordFraming.LINES.frame(new byte[] {'1'}).remaining();
+
+    //when
+    long endOffset = fileHelper.forEachRecord(RecordFraming.LINES, (offset, record) -> {
+      offsets.add(offset);
+      records.add(StandardCharsets.UTF_8.decode(record).toString());
+    });
+
+    //then
+    assertEquals(Arrays.asList("1", "22"), records);
+    assertEquals(Arrays.asList(0L, secondRecordOffset), offsets);
+    assertEquals(fileHelper.size() - 4, endOffset);
+    assertEquals("22", StandardCharsets.UTF_8.decode(fileHelper.readRecord(RecordFraming.LINES, secondRecordOffset)).toString());
+    assertEquals("22", StandardCharsets.UTF_8.decode(fileHelper.map().readRecord(RecordFraming.LINES, secondRecordOffset)).toString());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenChecksumOfRecordDoesNotMatch() throws IOException {
+    //given
+    writeFrames(RecordFraming.LINES, "123");
+    flipByteAt(11L);
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //then
+    assertThrows(CorruptRecordException.class, () -> fileHelper.forEachRecord(RecordFraming.LINES, (offset, record) -> { }));
+    assertThrows(CorruptRecordException.class, () -> fileHelper.readRecord(RecordFraming.LINES, 0L));
+    assertThrows(CorruptRecordException.class, () -> fileHelper.map().readRecord(RecordFraming.LINES, 0L));
+  }
+
+  @Test
+  void shouldVisitAndReadLengthPrefixedRecordsSkippingTornTail() throws IOException {
+    //given
+    writeFrames(RecordFraming.LENGTH_PREFIXED, "1", "22");
+    FileUtils.writeByteArrayToFile(new File(INPUT_FILE), new byte[] {0, 0, 0, 9, 4}, true);
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+    List<String> records = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+
+    //when
+    long endOffset = fileHelper.forEachRecord(RecordFraming.LENGTH_PREFIXED, (offset, record) -> {
+      offsets.add(offset);
+      records.add(StandardCharsets.UTF_8.decode(record).toString());
+    });
+
+    //then
+    assertEquals(19L, endOffset);
+    assertEquals(Arrays.asList("1", "22"), records);
+    assertEquals(Arrays.asList(0L, 9L), offsets);
+    assertEquals("22", StandardCharsets.UTF_8.decode(fileHelper.readRecord(RecordFraming.LENGTH_PREFIXED, 9L)).toString());
+    assertThrows(CorruptRecordException.class, () -> fileHelper.readRecord(RecordFraming.LENGTH_PREFIXED, 19L));
+  }
+
+  @Test
+  void shouldReadRecordsAtGivenOffsetsInFileOrder() throws IOException {
+    //given
+    writeFrames(RecordFraming.LENGTH_PREFIXED, "1", "22", "333");
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+    List<String> records = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    List<String> mappedRecords = new ArrayList<>();
+
+    //when
+    fileHelper.readRecords(RecordFraming.LENGTH_PREFIXED, new long[] {19L, 0L}, (offset, record) -> {
+      offsets.add(offset);
+      records.add(StandardCharsets.UTF_8.decode(record).toString());
+    });
+    fileHelper.map().readRecords(RecordFraming.LENGTH_PREFIXED, new long[] {19L, 0L},
+        (offset, record) -> mappedRecords.add(StandardCharsets.UTF_8.decode(record).toString()));
+
+    //then
+    assertEquals(Arrays.asList(0L, 19L), offsets);
+    assertEquals(Arrays.asList("1", "333"), records);
+    assertEquals(Arrays.asList("1", "333"), mappedRecords);
+    assertThrows(CorruptRecordException.class, () -> fileHelper.readRecords(RecordFraming.LENGTH_PREFIXED, new long[] {0L, 30L}, (offset, record) -> { }));
+  }
+
+  @Test
+  void shouldMapFileAndVisitLengthPrefixedRecordsSkippingTornTail() throws IOException {
+    //given
+    writeFrames(RecordFraming.LENGTH_PREFIXED, "1", "22");
+    FileUtils.writeByteArrayToFile(new File(INPUT_FILE), new byte[] {0, 0}, true);
+    MappedFile mappedFile = new FileHelper(INPUT_FILE).map();
+    List<String> records = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+
+    //when
+    long endOffset = mappedFile.forEachRecord(RecordFraming.LENGTH_PREFIXED, (offset, record) -> {
+      offsets.add(offset);
+      records.add(StandardCharsets.UTF_8.decode(record).toString());
+    });
+
+    //then
+    assertEquals(19L, endOffset);
+    assertEquals(Arrays.asList("1", "22"), records);
+    assertEquals(Arrays.asList(0L, 9L), offsets);
+    assertEquals("22", StandardCharsets.UTF_8.decode(mappedFile.readRecord(RecordFraming.LENGTH_PREFIXED, 9L)).toString());
+    assertThrows(CorruptRecordException.class, () -> mappedFile.readRecord(RecordFraming.LENGTH_PREFIXED, 19L));
+  }
+
+  @Test
+  void recoverShouldQuarantineCorruptRecordsAndTruncateTornTail() throws IOException {
+    //given
+    writeFrames(RecordFraming.LENGTH_PREFIXED, "1", "22", "rejected", "4444");
+    flipByteAt(18L);
+    FileUtils.writeByteArrayToFile(new File(INPUT_FILE), new byte[] {0, 0, 0, 9, 4}, true);
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //when
+    RecoveryReport report = fileHelper.recover(RecordFraming.LENGTH_PREFIXED,
+        (offset, record) -> !"rejected".equals(StandardCharsets.UTF_8.decode(record).toString()), QUARANTINE_FILE);
+
+    //then
+    assertEquals(2L, report.getValidRecords());
+    assertEquals(2L, report.getCorruptRecords());
+    assertEquals(5L, report.getTruncatedBytes());
+    assertTrue(report.isRewritten());
+    assertEquals(Arrays.asList("1", "4444"), readRecords(fileHelper, RecordFraming.LENGTH_PREFIXED));
+    assertEquals(10L + 16L + 5L, new File(QUARANTINE_FILE).length());
+    assertFalse(new File(INPUT_FILE + ".recovery").exists());
+  }
+
+  @Test
+  void recoverShouldTruncateTornTailWithoutRewritingFile() throws IOException {
+    //given
+    writeFrames(RecordFraming.LINES, "1", "22");
+    long expectedSize = new File(INPUT_FILE).length();
+    FileUtils.write(new File(INPUT_FILE), "333", true);
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //when
+    RecoveryReport report = fileHelper.recover(RecordFraming.LINES, (offset, record) -> true, QUARANTINE_FILE);
+
+    //then
+    assertEquals(2L, report.getValidRecords());
+    assertEquals(0L, report.getCorruptRecords());
+    assertEquals(3L, report.getTruncatedBytes());
+    assertFalse(report.isRewritten());
+    assertEquals(expectedSize, fileHelper.size());
+    assertEquals("333", FileUtils.readFileToString(new File(QUARANTINE_FILE)));
+  }
+
+  @Test
+  void recoverShouldLeaveCleanFileUntouched() throws IOException {
+    //given
+    writeFrames(RecordFraming.LINES, "1", "22");
+    long expectedSize = new File(INPUT_FILE).length();
+
+    //when
+    RecoveryReport report = new FileHelper(INPUT_FILE).recover(RecordFraming.LINES, (offset, record) -> true, QUARANTINE_FILE);
+
+    //then
+    assertEquals(2L, report.getValidRecords());
+    assertEquals(0L, report.getCorruptRecords());
+    assertEquals(0L, report.getTruncatedBytes());
+    assertEquals(expectedSize, new File(INPUT_FILE).length());
+    assertFalse(new File(QUARANTINE_FILE).exists());
+  }
+
+  @Test
+  void recoverShouldValidateOnlyRecordsAfterStartOffset() throws IOException {
+    //given
+    writeFrames(RecordFraming.LENGTH_PREFIXED, "1", "22", "333");
+    flipByteAt(8L);
+    long expectedSize = new File(INPUT_FILE).length();
+    List<Long> offsets = new ArrayList<>();
+
+    //when
+    RecoveryReport report = new FileHelper(INPUT_FILE).recover(RecordFraming.LENGTH_PREFIXED, 9L, (offset, record) -> offsets.add(offset),
+        QUARANTINE_FILE);
+
+    //then
+    assertEquals(2L, report.getValidRecords());
+    assertEquals(0L, report.getCorruptRecords());
+    assertEquals(Arrays.asList(9L, 19L), offsets);
+    assertEquals(expectedSize, new File(INPUT_FILE).length());
+  }
+
+  @Test
+  void shouldReplaceFileContentWhenWriteAtomicallyIsInvoked() throws IOException {
+    //given
+    createFile(INPUT_FILE, Arrays.asList("1", "2", "3"));
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+    byte[] content = {4, 5, 6};
+
+    //when
+    fileHelper.writeAtomically(content);
+
+    //then
+    assertTrue(Arrays.equals(content, fileHelper.readAllBytes()));
+    assertFalse(new File(INPUT_FILE + ".tmp").exists());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenTryingToReadAllBytesFromNotExistingFile() {
+    assertThrows(FileNotFoundException.class, () -> new FileHelper(INPUT_FILE).readAllBytes());
+  }
+
+  @Test
+  void shouldCalculateChecksumOfSpecifiedRange() throws IOException {
+    //given
+    FileUtils.writeByteArrayToFile(new File(INPUT_FILE), "abcdef".getBytes(StandardCharsets.UTF_8));
+    CRC32 expectedChecksum = new CRC32();
+    expectedChecksum.update("bcd".getBytes(StandardCharsets.UTF_8));
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //then
+    assertEquals(expectedChecksum.getValue(), fileHelper.checksum(1, 4));
+    assertEquals(new CRC32().getValue(), fileHelper.checksum(2, 2));
+    assertThrows(IOException.class, () -> fileHelper.checksum(4, 10));
+    assertThrows(IllegalArgumentException.class, () -> fileHelper.checksum(4, 1));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenTryingToMapNotExistingFile() {
+    assertThrows(FileNotFoundException.class, () -> new FileHelper(INPUT_FILE).map());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenOffsetIsNegativeDuringReadingLineFromMappedFile() throws IOException {
+    createFile(INPUT_FILE, Collections.singletonList("1"));
+    assertThrows(IllegalArgumentException.class, () -> new FileHelper(INPUT_FILE).map().readRecord(RecordFraming.LINES, -1L));
+  }
+
+  @Test
+  void shouldReturnFileSize() throws IOException {
+    //given
+    createFile(INPUT_FILE, Arrays.asList("1", "22"));
+    FileHelper fileHelper = new FileHelper(INPUT_FILE);
+
+    //when
+    long size = fileHelper.size();
+
+    //then
+    assertEquals(3L + 2 * System.lineSeparator().length(), size);
+  }
+
   @Test
   void shouldWriteLinesToFile() throws IOException {
     //given
@@ -304,6 +604,30 @@ class FileHelperTestIT {
     assertThrows(IOException.class, fileHelper::readLastLine);
   }
 
+  private void writeFrames(RecordFraming framing, String... records) throws IOException {
+    new File(INPUT_FILE).createNewFile();
+    try (FileAppender appender = new FileHelper(INPUT_FILE).openAppender(framing, FsyncPolicy.OS, 0)) {
+      for (String record : records) {
+        appender.append(record.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  private void flipByteAt(long position) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(INPUT_FILE, "rw")) {
+      file.seek(position);
+      int value = file.read();
+      file.seek(position);
+      file.write(value ^ 1);
+    }
+  }
+
+  private List<String> readRecords(FileHelper fileHelper, RecordFraming framing) throws IOException {
+    List<String> records = new ArrayList<>();
+    fileHelper.forEachRecord(framing, (offset, record) -> records.add(StandardCharsets.UTF_8.decode(record).toString()));
+    return records;
+  }
+
   private void createFile(String path, List<String> lines) throws IOException {
     FileUtils.writeLines(new File(path), lines);
   }
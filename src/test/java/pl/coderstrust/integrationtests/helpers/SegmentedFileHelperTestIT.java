@@ -0,0 +1,72 @@
+package pl.coderstrust.integrationtests.helpers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.coderstrust.helpers.SegmentedFileHelper;
+
+class SegmentedFileHelperTestIT {
+
+  private static final String BASE_FILE = String.format("src%1$stest%1$sresources%1$shelpers%1$ssegmented_file", File.separator);
+
+  @BeforeEach
+  @AfterEach
+  void removeTestFiles() {
+    File[] files = new File(BASE_FILE).getAbsoluteFile().getParentFile().listFiles((directory, name) -> name.startsWith("segmented_file"));
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+
+  @Test
+  void shouldListSegmentsInAscendingOrder() throws IOException {
+    //given
+    SegmentedFileHelper segmentedFileHelper = new SegmentedFileHelper(BASE_FILE, 100);
+    segmentedFileHelper.getSegment(10).writeLine("10");
+    segmentedFileHelper.getSegment(2).writeLine("2");
+    new File(BASE_FILE).createNewFile();
+    new File(BASE_FILE + ".000002.compaction").createNewFile();
+
+    //then
+    assertEquals(Arrays.asList(2, 10), segmentedFileHelper.listSegments());
+  }
+
+  @Test
+  void shouldReturnEmptyListWhenThereAreNoSegments() throws IOException {
+    assertEquals(Collections.emptyList(), new SegmentedFileHelper(BASE_FILE, 100).listSegments());
+  }
+
+  @Test
+  void shouldReturnSegmentFileWithNumberedSuffix() {
+    assertEquals(BASE_FILE + ".000007", new SegmentedFileHelper(BASE_FILE, 100).getSegment(7).getFilePath());
+  }
+
+  @Test
+  void shouldReturnLegacyFileAtBasePath() {
+    assertEquals(BASE_FILE, new SegmentedFileHelper(BASE_FILE, 100).getLegacyFile().getFilePath());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenSegmentNumberIsInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> new SegmentedFileHelper(BASE_FILE, 100).getSegment(0));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenMaxSegmentSizeIsInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> new SegmentedFileHelper(BASE_FILE, 0));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenBaseFilePathIsNull() {
+    assertThrows(IllegalArgumentException.class, () -> new SegmentedFileHelper(null, 100));
+  }
+}
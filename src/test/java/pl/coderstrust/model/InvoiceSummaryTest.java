@@ -0,0 +1,45 @@
+package pl.coderstrust.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import pl.coderstrust.generators.InvoiceGenerator;
+
+class InvoiceSummaryTest {
+
+  @Test
+  void shouldSummarizeInvoice() {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+
+    //when
+    InvoiceSummary summary = new InvoiceSummary(invoice);
+
+    //then
+    assertEquals(invoice.getId(), summary.getId());
+    assertEquals(invoice.getType(), summary.getType());
+    assertEquals(invoice.getIssueDate(), summary.getIssueDate());
+    assertEquals(invoice.getDueDate(), summary.getDueDate());
+    assertEquals(invoice.getSeller().getName(), summary.getSellerName());
+    assertEquals(invoice.getBuyer().getName(), summary.getBuyerName());
+    assertEquals(invoice.getTotalNetValue(), summary.getTotalNetValue());
+    assertEquals(invoice.getTotalGrossValue(), summary.getTotalGrossValue());
+    assertEquals(invoice.getComments(), summary.getComments());
+  }
+
+  @Test
+  void shouldSummarizeInvoiceWithoutParties() {
+    //given
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    invoice.setSeller(null);
+    invoice.setBuyer(null);
+
+    //when
+    InvoiceSummary summary = new InvoiceSummary(invoice);
+
+    //then
+    assertNull(summary.getSellerName());
+    assertNull(summary.getBuyerName());
+  }
+}
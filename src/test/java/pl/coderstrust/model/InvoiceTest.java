@@ -1,6 +1,7 @@
 package pl.coderstrust.model;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static pl.coderstrust.model.InvoiceType.STANDARD;
 
@@ -60,4 +61,22 @@ class InvoiceTest {
     assertEquals(totalGrossValue, invoice.getTotalGrossValue());
     assertEquals(comments, invoice.getComments());
   }
+
+  @Test
+  void checkCopyConstructorCopiesCompaniesAndEntries() {
+    //given
+    Invoice invoice = new Invoice(id, invoiceType, issueDate, dueDate, seller, buyer, entries,
+        totalNetValue, totalGrossValue, comments);
+
+    //when
+    Invoice copy = new Invoice(invoice);
+
+    //then
+    assertEquals(invoice, copy);
+    assertNotSame(invoice.getSeller(), copy.getSeller());
+    assertNotSame(invoice.getSeller().getContactDetails().getAddress(), copy.getSeller().getContactDetails().getAddress());
+    assertNotSame(invoice.getBuyer().getAccountNumber(), copy.getBuyer().getAccountNumber());
+    assertNotSame(invoice.getEntries(), copy.getEntries());
+    assertNotSame(invoice.getEntries().get(0), copy.getEntries().get(0));
+  }
 }
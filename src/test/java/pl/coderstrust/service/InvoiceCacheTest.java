@@ -0,0 +1,196 @@
+package pl.coderstrust.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.coderstrust.database.DatabaseOperationException;
+import pl.coderstrust.generators.InvoiceGenerator;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.service.InvoiceCache.InvoiceLoader;
+
+@ExtendWith(MockitoExtension.class)
+class InvoiceCacheTest {
+
+  @Mock
+  private InvoiceLoader loader;
+
+  @Test
+  void shouldLoadInvoiceOnceAndServeCopiesFromCache() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(loader.load(invoice.getId())).thenReturn(Optional.of(invoice));
+
+    //when
+    Optional<Invoice> first = cache.get(invoice.getId(), loader);
+    Optional<Invoice> second = cache.get(invoice.getId(), loader);
+
+    //then
+    assertEquals(Optional.of(invoice), first);
+    assertEquals(Optional.of(invoice), second);
+    assertNotSame(first.get(), second.get());
+    assertNotSame(invoice, second.get());
+    assertTrue(cache.contains(invoice.getId()));
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+    verify(loader).load(invoice.getId());
+  }
+
+  @Test
+  void shouldNotShareCompaniesAndEntriesOfCachedInvoice() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    Invoice expectedInvoice = new Invoice(invoice);
+    when(loader.load(invoice.getId())).thenReturn(Optional.of(invoice));
+    Invoice first = cache.get(invoice.getId(), loader).get();
+
+    //when
+    invoice.getSeller().setName("Changed by loader caller");
+    first.getSeller().getContactDetails().getAddress().setCity("Changed by first reader");
+    first.getEntries().get(0).setItem("Changed by first reader");
+    first.getEntries().clear();
+    Optional<Invoice> second = cache.get(invoice.getId(), loader);
+
+    //then
+    assertEquals(Optional.of(expectedInvoice), second);
+    verify(loader).load(invoice.getId());
+  }
+
+  @Test
+  void shouldNotCacheMissingInvoice() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    when(loader.load("1")).thenReturn(Optional.empty());
+
+    //when
+    Optional<Invoice> first = cache.get("1", loader);
+    Optional<Invoice> second = cache.get("1", loader);
+
+    //then
+    assertEquals(Optional.empty(), first);
+    assertEquals(Optional.empty(), second);
+    assertFalse(cache.contains("1"));
+    verify(loader, times(2)).load("1");
+  }
+
+  @Test
+  void shouldReloadInvoiceAfterInvalidation() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    Invoice updatedInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId(invoice.getId());
+    when(loader.load(invoice.getId())).thenReturn(Optional.of(invoice), Optional.of(updatedInvoice));
+    cache.get(invoice.getId(), loader);
+
+    //when
+    cache.invalidate(invoice.getId());
+    Optional<Invoice> result = cache.get(invoice.getId(), loader);
+
+    //then
+    assertEquals(Optional.of(updatedInvoice), result);
+    verify(loader, times(2)).load(invoice.getId());
+  }
+
+  @Test
+  void shouldForgetAllInvoicesAfterInvalidatingAll() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    InvoiceLoader generatingLoader = id -> Optional.of(InvoiceGenerator.getRandomInvoiceWithSpecificId(id));
+    cache.get("1", generatingLoader);
+    cache.get("2", generatingLoader);
+
+    //when
+    cache.invalidateAll();
+
+    //then
+    assertFalse(cache.contains("1"));
+    assertFalse(cache.contains("2"));
+  }
+
+  @Test
+  void shouldRethrowExceptionThrownByLoader() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    DatabaseOperationException expectedException = new DatabaseOperationException("Failure");
+    when(loader.load("1")).thenThrow(expectedException);
+
+    //when
+    DatabaseOperationException exception = assertThrows(DatabaseOperationException.class, () -> cache.get("1", loader));
+
+    //then
+    assertSame(expectedException, exception);
+    assertFalse(cache.contains("1"));
+  }
+
+  @Test
+  void shouldPassEveryLookupToLoaderWhenDisabled() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.disabled();
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(loader.load(invoice.getId())).thenReturn(Optional.of(invoice));
+
+    //when
+    cache.get(invoice.getId(), loader);
+    Optional<Invoice> result = cache.get(invoice.getId(), loader);
+
+    //then
+    assertSame(invoice, result.get());
+    assertFalse(cache.isEnabled());
+    assertFalse(cache.contains(invoice.getId()));
+    assertEquals(0, cache.stats().requestCount());
+    verify(loader, times(2)).load(invoice.getId());
+  }
+
+  @Test
+  void shouldExposeHitRatioAndEvictionMeters() throws DatabaseOperationException {
+    //given
+    InvoiceCache cache = InvoiceCache.of(10, 60000);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(loader.load(invoice.getId())).thenReturn(Optional.of(invoice));
+
+    //when
+    cache.bindTo(registry);
+    cache.get(invoice.getId(), loader);
+    cache.get(invoice.getId(), loader);
+    cache.get(invoice.getId(), loader);
+    cache.get(invoice.getId(), loader);
+
+    //then
+    assertEquals(0.75, registry.get("cache.hit.ratio").tag("cache", "invoices").gauge().value());
+    assertEquals(3, registry.get("cache.gets").tag("cache", "invoices").tag("result", "hit").functionCounter().count());
+    assertNotNull(registry.get("cache.evictions").tag("cache", "invoices").functionCounter());
+  }
+
+  @ParameterizedTest
+  @MethodSource("invalidCacheSettings")
+  void shouldThrowExceptionForInvalidSettings(long maximumSize, long expireAfterWriteMillis) {
+    assertThrows(IllegalArgumentException.class, () -> InvoiceCache.of(maximumSize, expireAfterWriteMillis));
+  }
+
+  private static Stream<Arguments> invalidCacheSettings() {
+    return Stream.of(
+        Arguments.of(0, 60000),
+        Arguments.of(10, 0)
+    );
+  }
+}
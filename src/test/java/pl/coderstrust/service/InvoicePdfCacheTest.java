@@ -0,0 +1,275 @@
+package pl.coderstrust.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.coderstrust.generators.InvoiceGenerator;
+import pl.coderstrust.model.Invoice;
+import pl.coderstrust.service.InvoicePdfCache.PdfRenderer;
+
+@ExtendWith(MockitoExtension.class)
+class InvoicePdfCacheTest {
+
+  private static final byte[] PDF = new byte[] {1, 2, 3, 4};
+  private static final byte[] OTHER_PDF = new byte[] {5, 6, 7, 8};
+
+  @Mock
+  private PdfRenderer renderer;
+
+  private Path spillDirectory;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    spillDirectory = Files.createTempDirectory("invoice-pdfs");
+  }
+
+  private List<Path> listSpilledPdfs() throws IOException {
+    try (Stream<Path> paths = Files.list(spillDirectory)) {
+      return paths.filter(path -> path.toString().endsWith(".pdf")).collect(Collectors.toList());
+    }
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    try (Stream<Path> paths = Files.walk(spillDirectory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  void shouldRenderPdfOnceForUnchangedInvoice() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(1024);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    doReturn(PDF).when(renderer).render(invoice);
+
+    //when
+    byte[] first = cache.get(invoice, renderer);
+    byte[] second = cache.get(new Invoice(invoice), renderer);
+
+    //then
+    assertArrayEquals(PDF, first);
+    assertArrayEquals(PDF, second);
+    assertNotSame(first, second);
+    assertEquals(1, cache.stats().hitCount());
+    verify(renderer).render(invoice);
+  }
+
+  @Test
+  void shouldRenderPdfAgainWhenInvoiceContentChanged() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(1024);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    Invoice changedInvoice = new Invoice(invoice);
+    changedInvoice.setComments(invoice.getComments() + " changed");
+    doReturn(PDF).when(renderer).render(invoice);
+    doReturn(OTHER_PDF).when(renderer).render(changedInvoice);
+    cache.get(invoice, renderer);
+
+    //when
+    byte[] result = cache.get(changedInvoice, renderer);
+
+    //then
+    assertArrayEquals(OTHER_PDF, result);
+    assertNotEquals(InvoicePdfCache.contentHash(invoice), InvoicePdfCache.contentHash(changedInvoice));
+  }
+
+  @Test
+  void shouldRenderPdfAgainAfterInvalidation() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(1024);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    doReturn(PDF).when(renderer).render(invoice);
+    cache.get(invoice, renderer);
+
+    //when
+    cache.invalidate(invoice.getId());
+    cache.get(invoice, renderer);
+
+    //then
+    verify(renderer, times(2)).render(invoice);
+  }
+
+  @Test
+  void shouldSpillEvictedPdfToDiskAndReadItBackInsteadOfRendering() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(PDF.length, spillDirectory, 1024, Runnable::run);
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("1");
+    Invoice otherInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("2");
+    doReturn(PDF).when(renderer).render(invoice);
+    doReturn(OTHER_PDF).when(renderer).render(otherInvoice);
+    cache.get(invoice, renderer);
+    cache.get(otherInvoice, renderer);
+
+    //when
+    byte[] result = cache.get(invoice, renderer);
+
+    //then
+    assertArrayEquals(PDF, result);
+    assertTrue(cache.stats().evictionCount() > 0);
+    verify(renderer).render(invoice);
+  }
+
+  @Test
+  void shouldDeleteSpilledPdfsOnInvalidation() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(PDF.length, spillDirectory, 1024, Runnable::run);
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("1");
+    Invoice otherInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("2");
+    doReturn(PDF).when(renderer).render(invoice);
+    doReturn(OTHER_PDF).when(renderer).render(otherInvoice);
+    cache.get(invoice, renderer);
+    cache.get(otherInvoice, renderer);
+
+    //when
+    cache.invalidate(invoice.getId());
+    List<Path> spilledPdfs = listSpilledPdfs();
+    cache.get(invoice, renderer);
+
+    //then
+    assertEquals(Collections.emptyList(), spilledPdfs);
+    verify(renderer, times(2)).render(invoice);
+  }
+
+  @Test
+  void shouldDeleteSpilledPdfOfEarlierContentWhenSpillingPdfOfChangedInvoice() throws Exception {
+    //given
+    Path earlierSpilledPdf = Files.write(spillDirectory.resolve("31-earlier.pdf"), PDF);
+    InvoicePdfCache cache = InvoicePdfCache.of(PDF.length, spillDirectory, 1024, Runnable::run);
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("1");
+    Invoice changedInvoice = new Invoice(invoice);
+    changedInvoice.setComments(invoice.getComments() + " changed");
+    doReturn(PDF).when(renderer).render(invoice);
+    doReturn(OTHER_PDF).when(renderer).render(changedInvoice);
+    cache.get(invoice, renderer);
+
+    //when
+    cache.get(changedInvoice, renderer);
+
+    //then
+    List<Path> spilledPdfs = listSpilledPdfs();
+    assertFalse(spilledPdfs.contains(earlierSpilledPdf));
+    assertEquals(1, spilledPdfs.size());
+  }
+
+  @Test
+  void shouldKeepSpillDirectoryWithinMaximumSpillSize() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(PDF.length, spillDirectory, PDF.length, Runnable::run);
+    PdfRenderer pdfRenderer = invoice -> PDF;
+
+    //when
+    for (int i = 1; i <= 5; i++) {
+      cache.get(InvoiceGenerator.getRandomInvoiceWithSpecificId(String.valueOf(i)), pdfRenderer);
+    }
+
+    //then
+    List<Path> spilledPdfs = listSpilledPdfs();
+    assertEquals(1, spilledPdfs.size());
+    assertEquals(PDF.length, Files.size(spilledPdfs.get(0)));
+  }
+
+  @Test
+  void shouldPruneSpillDirectoryAboveMaximumSpillSizeWhenCreated() throws Exception {
+    //given
+    Files.write(spillDirectory.resolve("31-a.pdf"), PDF);
+    Files.write(spillDirectory.resolve("32-b.pdf"), OTHER_PDF);
+
+    //when
+    InvoicePdfCache.of(PDF.length, spillDirectory, PDF.length);
+
+    //then
+    assertEquals(1, listSpilledPdfs().size());
+  }
+
+  @Test
+  void shouldThrowExceptionForInvalidMaximumSpillSize() {
+    assertThrows(IllegalArgumentException.class, () -> InvoicePdfCache.of(1024, spillDirectory, 0));
+  }
+
+  @Test
+  void shouldRethrowExceptionThrownByRenderer() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(1024);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    ServiceOperationException expectedException = new ServiceOperationException("Failure");
+    when(renderer.render(invoice)).thenThrow(expectedException);
+
+    //when
+    ServiceOperationException exception = assertThrows(ServiceOperationException.class, () -> cache.get(invoice, renderer));
+
+    //then
+    assertSame(expectedException, exception);
+    assertEquals(0, cache.stats().loadSuccessCount());
+  }
+
+  @Test
+  void shouldRenderEveryPdfWhenDisabled() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.disabled();
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    doReturn(PDF).when(renderer).render(invoice);
+
+    //when
+    cache.get(invoice, renderer);
+    cache.get(invoice, renderer);
+
+    //then
+    assertFalse(cache.isEnabled());
+    verify(renderer, times(2)).render(invoice);
+  }
+
+  @Test
+  void shouldExposeHitRatioAndWeightedEvictionMeters() throws Exception {
+    //given
+    InvoicePdfCache cache = InvoicePdfCache.of(PDF.length, null, 0, Runnable::run);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    Invoice invoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("1");
+    Invoice otherInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId("2");
+    doReturn(PDF).when(renderer).render(invoice);
+    doReturn(OTHER_PDF).when(renderer).render(otherInvoice);
+
+    //when
+    cache.bindTo(registry);
+    cache.get(invoice, renderer);
+    cache.get(invoice, renderer);
+    cache.get(otherInvoice, renderer);
+    cache.get(otherInvoice, renderer);
+
+    //then
+    assertEquals(0.5, registry.get("cache.hit.ratio").tag("cache", "invoice-pdfs").gauge().value());
+    assertEquals(PDF.length, registry.get("cache.eviction.weight").tag("cache", "invoice-pdfs").gauge().value());
+  }
+
+  @Test
+  void shouldThrowExceptionForInvalidMaximumWeight() {
+    assertThrows(IllegalArgumentException.class, () -> InvoicePdfCache.of(0));
+  }
+}
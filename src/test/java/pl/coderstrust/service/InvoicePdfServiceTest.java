@@ -1,5 +1,7 @@
 package pl.coderstrust.service;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -35,4 +37,20 @@ public class InvoicePdfServiceTest {
     assertNotNull(pdfAsArrayOgBytes);
     assertTrue(pdfAsArrayOgBytes.length > 0);
   }
+
+  @Test
+  void shouldReturnCachedPdfForUnchangedInvoice() throws Exception {
+    //given
+    InvoicePdfCache invoicePdfCache = InvoicePdfCache.of(1024 * 1024);
+    InvoicePdfService cachingInvoicePdfService = new InvoicePdfService(invoicePdfCache);
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+
+    //when
+    byte[] first = cachingInvoicePdfService.createPdf(invoice);
+    byte[] second = cachingInvoicePdfService.createPdf(invoice);
+
+    //then
+    assertArrayEquals(first, second);
+    assertEquals(1, invoicePdfCache.stats().hitCount());
+  }
 }
@@ -5,14 +5,20 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
@@ -22,8 +28,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import pl.coderstrust.database.DatabaseOperationException;
 import pl.coderstrust.database.invoice.InvoiceDatabase;
+import pl.coderstrust.database.invoice.InvoiceVisitor;
 import pl.coderstrust.generators.InvoiceGenerator;
 import pl.coderstrust.model.Invoice;
+import pl.coderstrust.model.InvoiceSummary;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -116,18 +124,115 @@ class InvoiceServiceTest {
     LocalDate endDate = LocalDate.of(2018, 12, 5);
 
     List<Invoice> expected = InvoiceGenerator.getRandomInvoicesIssuedInSpecificDateRange(startDate, endDate);
-    List<Invoice> invoices = new ArrayList<>();
-    invoices.add(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2016, 11, 3)));
-    invoices.addAll(expected);
-    invoices.add(InvoiceGenerator.getRandomInvoiceWithSpecificIssueDate(LocalDate.of(2017, 12, 3)));
-    when(database.findAll()).thenReturn(invoices);
+    when(database.findAllByIssueDateBetween(startDate, endDate)).thenReturn(expected);
 
     //when
     Iterable<Invoice> actual = invoiceService.getAllInvoicesIssuedInGivenDateRange(startDate, endDate);
 
     //then
     assertEquals(expected, actual);
-    verify(database).findAll();
+    verify(database).findAllByIssueDateBetween(startDate, endDate);
+    verify(database, never()).findAll();
+  }
+
+  @Test
+  void shouldStreamAllInvoices() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceVisitor visitor = invoice -> {
+    };
+
+    //when
+    invoiceService.streamAllInvoices(visitor);
+
+    //then
+    verify(database).streamAll(visitor);
+    verify(database, never()).findAll();
+  }
+
+  @Test
+  void shouldThrowExceptionWhenStreamingAllInvoicesWentWrong() throws DatabaseOperationException {
+    //given
+    InvoiceVisitor visitor = invoice -> {
+    };
+    doThrow(DatabaseOperationException.class).when(database).streamAll(visitor);
+
+    //then
+    assertThrows(ServiceOperationException.class, () -> invoiceService.streamAllInvoices(visitor));
+  }
+
+  @Test
+  void shouldReturnPageOfInvoices() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    List<Invoice> expected = Arrays.asList(InvoiceGenerator.getRandomInvoice(), InvoiceGenerator.getRandomInvoice());
+    when(database.findPage("10", 2)).thenReturn(expected);
+
+    //when
+    List<Invoice> actual = invoiceService.getInvoicesPage("10", 2);
+
+    //then
+    assertEquals(expected, actual);
+    verify(database).findPage("10", 2);
+    verify(database, never()).findAll();
+  }
+
+  @Test
+  void shouldThrowExceptionWhenGettingPageOfInvoicesWentWrong() throws DatabaseOperationException {
+    //given
+    doThrow(DatabaseOperationException.class).when(database).findPage(null, 10);
+
+    //then
+    assertThrows(ServiceOperationException.class, () -> invoiceService.getInvoicesPage(null, 10));
+  }
+
+  @Test
+  void shouldThrowExceptionWhenGettingPageOfInvoicesWithInvalidLimit() throws DatabaseOperationException {
+    assertThrows(IllegalArgumentException.class, () -> invoiceService.getInvoicesPage(null, 0));
+    verify(database, never()).findPage(any(), anyInt());
+  }
+
+  @Test
+  void shouldReturnAllInvoiceSummaries() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    List<InvoiceSummary> expected = Arrays.asList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()),
+        new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(database.findAllSummaries()).thenReturn(expected);
+
+    //when
+    List<InvoiceSummary> actual = invoiceService.getAllInvoiceSummaries();
+
+    //then
+    assertEquals(expected, actual);
+    verify(database).findAllSummaries();
+    verify(database, never()).findAll();
+  }
+
+  @Test
+  void shouldThrowExceptionWhenGettingAllInvoiceSummariesWentWrong() throws DatabaseOperationException {
+    //given
+    doThrow(DatabaseOperationException.class).when(database).findAllSummaries();
+
+    //then
+    assertThrows(ServiceOperationException.class, () -> invoiceService.getAllInvoiceSummaries());
+  }
+
+  @Test
+  void shouldReturnPageOfInvoiceSummaries() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    List<InvoiceSummary> expected = Collections.singletonList(new InvoiceSummary(InvoiceGenerator.getRandomInvoice()));
+    when(database.findSummaryPage("10", 2)).thenReturn(expected);
+
+    //when
+    List<InvoiceSummary> actual = invoiceService.getInvoiceSummariesPage("10", 2);
+
+    //then
+    assertEquals(expected, actual);
+    verify(database).findSummaryPage("10", 2);
+  }
+
+  @Test
+  void shouldThrowExceptionWhenGettingPageOfInvoiceSummariesWithInvalidLimit() throws DatabaseOperationException {
+    assertThrows(IllegalArgumentException.class, () -> invoiceService.getInvoiceSummariesPage(null, 0));
+    verify(database, never()).findSummaryPage(any(), anyInt());
   }
 
   @Test
@@ -137,14 +242,14 @@ class InvoiceServiceTest {
     LocalDate startDate = LocalDate.of(2018, 12, 3);
     LocalDate endDate = LocalDate.of(2018, 12, 5);
 
-    when(database.findAll()).thenReturn(new ArrayList<>());
+    when(database.findAllByIssueDateBetween(startDate, endDate)).thenReturn(new ArrayList<>());
 
     //when
     List<Invoice> actual = invoiceService.getAllInvoicesIssuedInGivenDateRange(startDate, endDate);
 
     //then
     assertEquals(new ArrayList<>(), actual);
-    verify(database).findAll();
+    verify(database).findAllByIssueDateBetween(startDate, endDate);
   }
 
   @Test
@@ -161,6 +266,32 @@ class InvoiceServiceTest {
     verify(database).save(invoice);
   }
 
+  @Test
+  void shouldSaveAllInvoices() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    List<Invoice> invoices = Arrays.asList(InvoiceGenerator.getRandomInvoiceWithNoId(), InvoiceGenerator.getRandomInvoice());
+    List<Invoice> expected = Arrays.asList(InvoiceGenerator.getRandomInvoice(), invoices.get(1));
+    when(database.saveAll(invoices)).thenReturn(expected);
+
+    //when
+    List<Invoice> actual = invoiceService.saveInvoices(invoices);
+
+    //then
+    assertEquals(expected, actual);
+    verify(database).saveAll(invoices);
+    verify(database, never()).save(any());
+  }
+
+  @Test
+  void shouldThrowExceptionWhenSavingAllInvoicesWentWrong() throws DatabaseOperationException {
+    //given
+    List<Invoice> invoices = Collections.singletonList(InvoiceGenerator.getRandomInvoice());
+    doThrow(DatabaseOperationException.class).when(database).saveAll(invoices);
+
+    //then
+    assertThrows(ServiceOperationException.class, () -> invoiceService.saveInvoices(invoices));
+  }
+
   @Test
   void shouldDeleteInvoice() throws DatabaseOperationException, ServiceOperationException {
     //given
@@ -217,6 +348,102 @@ class InvoiceServiceTest {
     verify(database).existsById(id);
   }
 
+  @Test
+  void shouldReturnCachedInvoiceWithoutQueryingDatabaseAgain() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceService cachingInvoiceService = new InvoiceService(database, InvoiceCache.of(10, 60000));
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(database.findById(invoice.getId())).thenReturn(Optional.of(invoice));
+
+    //when
+    cachingInvoiceService.getInvoice(invoice.getId());
+    Optional<Invoice> actual = cachingInvoiceService.getInvoice(invoice.getId());
+    boolean invoiceExists = cachingInvoiceService.invoiceExists(invoice.getId());
+
+    //then
+    assertEquals(Optional.of(invoice), actual);
+    assertTrue(invoiceExists);
+    verify(database).findById(invoice.getId());
+    verify(database, never()).existsById(invoice.getId());
+  }
+
+  @Test
+  void shouldReloadCachedInvoiceAfterUpdate() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceService cachingInvoiceService = new InvoiceService(database, InvoiceCache.of(10, 60000));
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    Invoice updatedInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId(invoice.getId());
+    when(database.findById(invoice.getId())).thenReturn(Optional.of(invoice), Optional.of(updatedInvoice));
+    when(database.existsById(invoice.getId())).thenReturn(true);
+    when(database.save(updatedInvoice)).thenReturn(updatedInvoice);
+    cachingInvoiceService.getInvoice(invoice.getId());
+
+    //when
+    cachingInvoiceService.updateInvoice(updatedInvoice);
+    Optional<Invoice> actual = cachingInvoiceService.getInvoice(invoice.getId());
+
+    //then
+    assertEquals(Optional.of(updatedInvoice), actual);
+    verify(database, times(2)).findById(invoice.getId());
+  }
+
+  @Test
+  void shouldNotReturnCachedInvoiceAfterDelete() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceService cachingInvoiceService = new InvoiceService(database, InvoiceCache.of(10, 60000));
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(database.findById(invoice.getId())).thenReturn(Optional.of(invoice), Optional.empty());
+    cachingInvoiceService.getInvoice(invoice.getId());
+
+    //when
+    cachingInvoiceService.deleteInvoice(invoice.getId());
+    Optional<Invoice> actual = cachingInvoiceService.getInvoice(invoice.getId());
+
+    //then
+    assertEquals(Optional.empty(), actual);
+    verify(database).deleteById(invoice.getId());
+  }
+
+  @Test
+  void shouldNotReturnCachedInvoicesAfterDeleteAll() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceService cachingInvoiceService = new InvoiceService(database, InvoiceCache.of(10, 60000));
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    when(database.findById(invoice.getId())).thenReturn(Optional.of(invoice), Optional.empty());
+    cachingInvoiceService.getInvoice(invoice.getId());
+
+    //when
+    cachingInvoiceService.deleteAllInvoices();
+    Optional<Invoice> actual = cachingInvoiceService.getInvoice(invoice.getId());
+
+    //then
+    assertEquals(Optional.empty(), actual);
+    verify(database).deleteAll();
+  }
+
+  @Test
+  void shouldReloadCachedInvoiceAfterSavingItAgain() throws DatabaseOperationException, ServiceOperationException {
+    //given
+    InvoiceService cachingInvoiceService = new InvoiceService(database, InvoiceCache.of(10, 60000));
+    Invoice invoice = InvoiceGenerator.getRandomInvoice();
+    Invoice updatedInvoice = InvoiceGenerator.getRandomInvoiceWithSpecificId(invoice.getId());
+    when(database.findById(invoice.getId())).thenReturn(Optional.of(invoice), Optional.of(updatedInvoice));
+    when(database.save(updatedInvoice)).thenReturn(updatedInvoice);
+    when(database.saveAll(Collections.singletonList(updatedInvoice))).thenReturn(Collections.singletonList(updatedInvoice));
+    cachingInvoiceService.getInvoice(invoice.getId());
+
+    //when
+    cachingInvoiceService.addInvoice(updatedInvoice);
+    Optional<Invoice> afterAdd = cachingInvoiceService.getInvoice(invoice.getId());
+    cachingInvoiceService.saveInvoices(Collections.singletonList(updatedInvoice));
+    Optional<Invoice> afterSaveAll = cachingInvoiceService.getInvoice(invoice.getId());
+
+    //then
+    assertEquals(Optional.of(updatedInvoice), afterAdd);
+    assertEquals(Optional.of(updatedInvoice), afterSaveAll);
+    verify(database, times(3)).findById(invoice.getId());
+  }
+
   @Test
   void shouldThrowExceptionWhenGettingAllInvoicesWentWrong() throws DatabaseOperationException {
     //given
@@ -346,11 +573,11 @@ class InvoiceServiceTest {
     //given
     LocalDate startDate = LocalDate.of(2019, 12, 1);
     LocalDate endDate = LocalDate.of(2019, 12, 5);
-    doThrow(DatabaseOperationException.class).when(database).findAll();
+    doThrow(DatabaseOperationException.class).when(database).findAllByIssueDateBetween(startDate, endDate);
 
     //then
     assertThrows(ServiceOperationException.class, () -> invoiceService.getAllInvoicesIssuedInGivenDateRange(startDate, endDate));
-    verify(database).findAll();
+    verify(database).findAllByIssueDateBetween(startDate, endDate);
   }
 
   @Test